@@ -0,0 +1,48 @@
+package br.com.labbs.monitor;
+
+import br.com.labbs.monitor.filter.MetricsCollectorFilter;
+import jakarta.servlet.FilterConfig;
+
+/**
+ * Shared setup of the benchmarks.
+ */
+public final class Benchmarks {
+
+    public static final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static boolean initialized;
+    private static MetricsCollectorFilter filter;
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Initializes the {@link MonitorMetrics} singleton once per benchmark JVM.
+     */
+    public static synchronized void initMetrics() {
+        if (!initialized) {
+            MonitorMetrics.INSTANCE.init(false, "benchmark", null, BUCKETS);
+            initialized = true;
+        }
+    }
+
+    /**
+     * Initializes a filter, and through it the {@link MonitorMetrics} singleton, once per benchmark JVM.
+     *
+     * @param config the configuration of the filter
+     * @return the initialized filter
+     * @throws IllegalStateException if the singleton has already been initialized by {@link #initMetrics()}, which
+     *                               happens only when the benchmarks are not forked
+     */
+    public static synchronized MetricsCollectorFilter initFilter(FilterConfig config) {
+        if (filter == null) {
+            if (initialized) {
+                throw new IllegalStateException("MonitorMetrics is already initialized, run the benchmarks forked");
+            }
+            filter = new MetricsCollectorFilter();
+            filter.init(config);
+            initialized = true;
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,69 @@
+package br.com.labbs.monitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of recording one request in {@link MonitorMetrics}.
+ *
+ * <p>Run with {@code -prof gc}: {@code collectRequest} must report {@code gc.alloc.rate.norm} of zero.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CollectRequestBenchmark {
+
+    private static final String[] ADDRS = {"/api/users", "/api/orders", "/api/items", "/health"};
+    private static final String[] METHODS = {"GET", "POST"};
+    private static final String[] STATUSES = {"200", "201", "404", "500"};
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        Benchmarks.initMetrics();
+    }
+
+    @Benchmark
+    public void collectRequest() {
+        int i = next++;
+        String status = STATUSES[i & 3];
+        MonitorMetrics.INSTANCE.collectRequest("http", status, METHODS[(i >> 2) & 1], ADDRS[(i >> 3) & 3],
+                status.charAt(0) == '5', "", 0.042, 1024);
+    }
+
+    @Benchmark
+    public void collectTimeAndSize() {
+        int i = next++;
+        String status = STATUSES[i & 3];
+        String method = METHODS[(i >> 2) & 1];
+        String addr = ADDRS[(i >> 3) & 3];
+        boolean isError = status.charAt(0) == '5';
+        MonitorMetrics.INSTANCE.collectTime("http", status, method, addr, isError, "", 0.042);
+        MonitorMetrics.INSTANCE.collectSize("http", status, method, addr, isError, "", 1024);
+    }
+
+    @Benchmark
+    public void labelsLookup() {
+        int i = next++;
+        String status = STATUSES[i & 3];
+        String method = METHODS[(i >> 2) & 1];
+        String addr = ADDRS[(i >> 3) & 3];
+        String isError = Boolean.toString(status.charAt(0) == '5');
+        MonitorMetrics.INSTANCE.requestSeconds.labels("http", status, method, addr, isError, "").observe(0.042);
+        MonitorMetrics.INSTANCE.responseSize.labels("http", status, method, addr, isError, "").inc(1024);
+    }
+}
@@ -0,0 +1,101 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.CollectorRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link LogLinearHistogram} quantile recorder with many series, cumulative or over a sliding window.
+ *
+ * <p>The setup creates the series, each observing latencies spread over 8 powers of two in every age bucket of the
+ * window, and prints the heap retained per series. The benchmarks record and scrape across all of them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuantileSeriesBenchmark {
+
+    private static final int AGE_BUCKETS = 5;
+    private static final double[] LATENCIES = {0.0013, 0.0042, 0.011, 0.027, 0.042, 0.09, 0.13, 0.3};
+
+    @Param({"1000", "10000"})
+    public int series;
+
+    @Param({"4", "7"})
+    public int precisionBits;
+
+    /**
+     * The window in seconds, 0 for cumulative quantiles.
+     */
+    @Param({"0", "60"})
+    public long window;
+
+    private CollectorRegistry registry;
+    private LogLinearHistogram.Child[] children;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        registry = new CollectorRegistry();
+        LogLinearHistogram.Builder builder = LogLinearHistogram.build("latency", "help").labelNames("addr")
+                .precisionBits(precisionBits).quantiles(0.5, 0.9, 0.99);
+        if (window > 0) {
+            builder.window(window, AGE_BUCKETS);
+        }
+        LogLinearHistogram histogram = builder.register(registry);
+        long before = usedHeap();
+        children = new LogLinearHistogram.Child[series];
+        for (int i = 0; i < series; i++) {
+            children[i] = histogram.labels("/route/" + i);
+        }
+        long labels = usedHeap();
+        // steadily loaded series, the same octaves being touched in every age bucket of the window
+        long now = System.nanoTime();
+        long slice = TimeUnit.SECONDS.toNanos(window) / AGE_BUCKETS;
+        for (int bucket = 0; bucket < (window > 0 ? AGE_BUCKETS : 1); bucket++) {
+            for (LogLinearHistogram.Child child : children) {
+                for (double latency : LATENCIES) {
+                    child.observeAt(latency, now + bucket * slice);
+                }
+            }
+        }
+        long after = usedHeap();
+        System.out.printf("%n%d series, precision bits %d, window %ds: %d bytes per series, %d with the labels%n",
+                series, precisionBits, window, (after - labels) / series, (after - before) / series);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public void observe() {
+        int i = next++;
+        children[(i * 31) % series].observe(LATENCIES[i & 7]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object scrape() {
+        return registry.metricFamilySamples().nextElement();
+    }
+}
@@ -0,0 +1,84 @@
+package br.com.labbs.monitor.exporter;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares one scrape of the request metrics rendered by {@link ExpositionEncoder} and by
+ * {@link TextFormat#write004(Writer, java.util.Enumeration)}.
+ *
+ * <p>Run with {@code -prof gc}: the {@code gc.alloc.rate.norm} of {@code encoder} grows with the number of samples
+ * collected, while {@code textFormat} also allocates for every name, label and value it writes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExpositionBenchmark {
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Param({"10", "100", "1000"})
+    public int routes;
+
+    private final CollectorRegistry registry = new CollectorRegistry();
+    private final ExpositionEncoder encoder = new ExpositionEncoder();
+    private final byte[] buffer = new byte[8192];
+
+    @Setup
+    public void setup() {
+        String[] labelNames = {"type", "status", "method", "addr", "isError", "errorMessage"};
+        Histogram requestSeconds = Histogram.build("request_seconds", "records in a histogram the number of "
+                + "http requests and their duration in seconds").labelNames(labelNames)
+                .buckets(0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10).register(registry);
+        Counter responseSize = Counter.build("response_size_bytes", "counts the size of each http response")
+                .labelNames(labelNames).register(registry);
+        for (int i = 0; i < routes; i++) {
+            String addr = "/api/resource" + i;
+            requestSeconds.labels("http", "200", "GET", addr, "false", "").observe(0.042 * (i % 7));
+            responseSize.labels("http", "200", "GET", addr, "false", "").inc(1024 * i);
+        }
+    }
+
+    @Benchmark
+    public void encoder() throws IOException {
+        encoder.write(DISCARD, buffer, registry.metricFamilySamples(), false);
+    }
+
+    @Benchmark
+    public void textFormat() throws IOException {
+        Writer writer = new OutputStreamWriter(DISCARD, StandardCharsets.UTF_8);
+        TextFormat.write004(writer, registry.metricFamilySamples());
+        writer.flush();
+    }
+}
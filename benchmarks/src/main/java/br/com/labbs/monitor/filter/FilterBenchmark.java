@@ -0,0 +1,246 @@
+package br.com.labbs.monitor.filter;
+
+import br.com.labbs.monitor.Benchmarks;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what {@link MetricsCollectorFilter} costs per request, through {@code doFilter} only, for each way a
+ * request goes through it: recorded, excluded, or failed with an error message to sanitize.
+ *
+ * <p>The request and response are stubs whose hot methods answer directly, and the chain writes a small body, so
+ * {@code doFilter} minus {@code chainOnly} is the overhead of the filter. Run with {@code -prof gc} to see the
+ * allocations per request, and with {@code -t} from 1 to the number of cores to see the contention between the
+ * requests of a shared filter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    private static final String ERROR_ATTRIBUTE = "error-info";
+    private static final String[] PATHS = {"/app/api/users/42", "/app/api/orders/7/items", "/app/api/items",
+            "/app/health"};
+    private static final byte[] BODY = new byte[128];
+
+    /**
+     * The filter shared by the benchmark threads, like the one of a container.
+     */
+    @State(Scope.Benchmark)
+    public static class FilterState {
+
+        MetricsCollectorFilter filter;
+
+        @Setup
+        public void setup() {
+            filter = Benchmarks.initFilter(config(
+                    "path-depth", "3",
+                    "exclusions", "/app/health",
+                    "error-message", ERROR_ATTRIBUTE,
+                    "export-jvm-metrics", "false",
+                    "application-version", "benchmark"));
+        }
+    }
+
+    /**
+     * The requests of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class RequestState {
+
+        final StubResponse response = new StubResponse();
+        StubRequest[] requests;
+        StubRequest excludedRequest;
+        StubRequest errorRequest;
+        int next;
+
+        @Setup
+        public void setup() {
+            requests = new StubRequest[PATHS.length - 1];
+            for (int i = 0; i < requests.length; i++) {
+                requests[i] = new StubRequest(PATHS[i], i % 2 == 0 ? "GET" : "POST");
+            }
+            excludedRequest = new StubRequest(PATHS[3], "GET");
+            errorRequest = new StubRequest(PATHS[0], "GET");
+            errorRequest.setAttribute(ERROR_ATTRIBUTE, "Connection refused by 10.0.0.12:5432 after 3000ms");
+        }
+
+        StubRequest nextRequest() {
+            return requests[next++ % requests.length];
+        }
+    }
+
+    private static final FilterChain CHAIN = new FilterChain() {
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+            ((HttpServletResponse) response).setStatus(HttpServletResponse.SC_OK);
+            response.getOutputStream().write(BODY);
+        }
+    };
+
+    private static final FilterChain ERROR_CHAIN = new FilterChain() {
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+            ((HttpServletResponse) response).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.getOutputStream().write(BODY);
+        }
+    };
+
+    @Benchmark
+    public void chainOnly(RequestState state) throws IOException, ServletException {
+        CHAIN.doFilter(state.nextRequest(), state.response);
+    }
+
+    @Benchmark
+    public void doFilter(FilterState filterState, RequestState state) throws IOException, ServletException {
+        filterState.filter.doFilter(state.nextRequest(), state.response, CHAIN);
+    }
+
+    @Benchmark
+    public void doFilterExcluded(FilterState filterState, RequestState state) throws IOException, ServletException {
+        filterState.filter.doFilter(state.excludedRequest, state.response, CHAIN);
+    }
+
+    @Benchmark
+    public void doFilterError(FilterState filterState, RequestState state) throws IOException, ServletException {
+        filterState.filter.doFilter(state.errorRequest, state.response, ERROR_CHAIN);
+    }
+
+    private static FilterConfig config(String... params) {
+        final Map<String, String> values = new HashMap<String, String>();
+        for (int i = 0; i < params.length; i += 2) {
+            values.put(params[i], params[i + 1]);
+        }
+        return (FilterConfig) Proxy.newProxyInstance(FilterConfig.class.getClassLoader(),
+                new Class<?>[]{FilterConfig.class}, (proxy, method, args) ->
+                        method.getName().equals("getInitParameter") ? values.get((String) args[0]) : null);
+    }
+
+    private static <T> T unsupported(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                }));
+    }
+
+    /**
+     * A request answering the methods called by the filter without reflection.
+     */
+    static final class StubRequest extends HttpServletRequestWrapper {
+
+        private final String path;
+        private final String method;
+        private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+        StubRequest(String path, String method) {
+            super(unsupported(HttpServletRequest.class));
+            this.path = path;
+            this.method = method;
+        }
+
+        @Override
+        public String getRequestURI() {
+            return path;
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public String getScheme() {
+            return "http";
+        }
+
+        @Override
+        public String getContextPath() {
+            return "/app";
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public DispatcherType getDispatcherType() {
+            return DispatcherType.REQUEST;
+        }
+
+        @Override
+        public boolean isAsyncStarted() {
+            return false;
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object o) {
+            attributes.put(name, o);
+        }
+    }
+
+    /**
+     * A response answering the methods called by the filter without reflection, its body going to a buffer.
+     */
+    static final class StubResponse extends HttpServletResponseWrapper {
+
+        private final ServletOutputStream output = new ResponseStreamBenchmark.BufferingOutputStream();
+        private int status = SC_OK;
+
+        StubResponse() {
+            super(unsupported(HttpServletResponse.class));
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return output;
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            status = sc;
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return "UTF-8";
+        }
+    }
+}
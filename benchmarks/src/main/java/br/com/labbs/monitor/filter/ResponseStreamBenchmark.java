@@ -0,0 +1,148 @@
+package br.com.labbs.monitor.filter;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of a 1 MiB response body written to the container's stream directly ({@code raw}) and
+ * through the stream of {@link CountingServletResponse} ({@code counted}), so the scores read as MiB/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseStreamBenchmark {
+
+    private static final int BODY_SIZE = 1 << 20;
+
+    @Param({"512", "8192"})
+    public int chunkSize;
+
+    private final ServletOutputStream container = new BufferingOutputStream();
+    private byte[] chunk;
+    private ByteBuffer byteBuffer;
+
+    @Setup
+    public void setup() {
+        chunk = new byte[chunkSize];
+        byteBuffer = ByteBuffer.allocateDirect(chunkSize);
+    }
+
+    @Benchmark
+    public void raw() throws IOException {
+        writeBody(container);
+    }
+
+    @Benchmark
+    public void counted() throws IOException {
+        writeBody(new CountingServletResponse(response(container)).getOutputStream());
+    }
+
+    @Benchmark
+    public void rawByteBuffer() throws IOException {
+        writeBodyBuffers(container);
+    }
+
+    @Benchmark
+    public void countedByteBuffer() throws IOException {
+        writeBodyBuffers(new CountingServletResponse(response(container)).getOutputStream());
+    }
+
+    private void writeBody(ServletOutputStream output) throws IOException {
+        for (int written = 0; written < BODY_SIZE; written += chunkSize) {
+            output.write(chunk, 0, chunkSize);
+        }
+    }
+
+    private void writeBodyBuffers(ServletOutputStream output) throws IOException {
+        for (int written = 0; written < BODY_SIZE; written += chunkSize) {
+            byteBuffer.clear();
+            output.write(byteBuffer);
+        }
+    }
+
+    static HttpServletResponse response(final ServletOutputStream output) {
+        return (HttpServletResponse) Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getOutputStream")) {
+                        return output;
+                    }
+                    Class<?> type = method.getReturnType();
+                    if (type == boolean.class) {
+                        return false;
+                    }
+                    return type == int.class ? 0 : type == long.class ? 0L : null;
+                });
+    }
+
+    /**
+     * A container stream copying the bytes into its buffer, as containers do before sending them.
+     */
+    static final class BufferingOutputStream extends ServletOutputStream {
+
+        private final byte[] buffer = new byte[8192];
+        private int position;
+
+        @Override
+        public void write(int b) {
+            if (position == buffer.length) {
+                position = 0;
+            }
+            buffer[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (position == buffer.length) {
+                    position = 0;
+                }
+                int n = Math.min(len, buffer.length - position);
+                System.arraycopy(b, off, buffer, position, n);
+                position += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void write(ByteBuffer b) {
+            while (b.hasRemaining()) {
+                if (position == buffer.length) {
+                    position = 0;
+                }
+                int n = Math.min(b.remaining(), buffer.length - position);
+                b.get(buffer, position, n);
+                position += n;
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    }
+}
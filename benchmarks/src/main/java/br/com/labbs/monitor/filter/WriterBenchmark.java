@@ -0,0 +1,132 @@
+package br.com.labbs.monitor.filter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the writes of a response body through the container's writer directly ({@code raw*}) and through
+ * {@link CountingPrintWriter} ({@code counted*}), for an ASCII and a non-ASCII text in the response encoding.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WriterBenchmark {
+
+    private static final String ASCII = "{\"id\":42,\"name\":\"servlet monitor\",\"tags\":[\"http\",\"metrics\"]}";
+    private static final String NON_ASCII = "{\"id\":42,\"name\":\"Monitoração de serviços\",\"emoji\":\"😀\"}";
+
+    @Param({"UTF-8", "ISO-8859-1", "UTF-16"})
+    public String encoding;
+
+    private PrintWriter raw;
+    private CountingPrintWriter counted;
+    private char[] chars;
+
+    @Setup
+    public void setup() {
+        raw = new PrintWriter(new BufferingWriter());
+        counted = new CountingPrintWriter(new PrintWriter(new BufferingWriter()), encoding);
+        chars = ASCII.toCharArray();
+    }
+
+    @Benchmark
+    public void rawAscii() {
+        raw.write(ASCII);
+    }
+
+    @Benchmark
+    public void countedAscii() {
+        counted.write(ASCII);
+    }
+
+    @Benchmark
+    public void rawNonAscii() {
+        raw.write(NON_ASCII);
+    }
+
+    @Benchmark
+    public void countedNonAscii() {
+        counted.write(NON_ASCII);
+    }
+
+    @Benchmark
+    public void rawChars() {
+        raw.write(chars, 0, chars.length);
+    }
+
+    @Benchmark
+    public void countedChars() {
+        counted.write(chars, 0, chars.length);
+    }
+
+    @Benchmark
+    public void rawPrintLong() {
+        raw.print(1234567890123L);
+    }
+
+    @Benchmark
+    public void countedPrintLong() {
+        counted.print(1234567890123L);
+    }
+
+    /**
+     * A container writer copying the chars into its buffer, as containers do before encoding them.
+     */
+    static final class BufferingWriter extends Writer {
+
+        private final char[] buffer = new char[8192];
+        private int position;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            while (len > 0) {
+                if (position == buffer.length) {
+                    position = 0;
+                }
+                int n = Math.min(len, buffer.length - position);
+                System.arraycopy(cbuf, off, buffer, position, n);
+                position += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            while (len > 0) {
+                if (position == buffer.length) {
+                    position = 0;
+                }
+                int n = Math.min(len, buffer.length - position);
+                str.getChars(off, off + n, buffer, position);
+                position += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
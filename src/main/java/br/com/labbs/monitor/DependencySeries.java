@@ -0,0 +1,46 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.Histogram;
+
+/**
+ * Holds the pre-resolved child of the dependency_request_seconds metric for one combination of label values,
+ * whichever latency recorder is enabled.
+ */
+final class DependencySeries {
+
+    private final Histogram.Child requestSeconds;
+    private final LogLinearHistogram.Child requestLatency;
+    private final boolean overflow;
+
+    DependencySeries(Histogram.Child requestSeconds, LogLinearHistogram.Child requestLatency) {
+        this(requestSeconds, requestLatency, false);
+    }
+
+    DependencySeries(Histogram.Child requestSeconds, LogLinearHistogram.Child requestLatency, boolean overflow) {
+        this.requestSeconds = requestSeconds;
+        this.requestLatency = requestLatency;
+        this.overflow = overflow;
+    }
+
+    /**
+     * @return <code>true</code> if this series folds the label combinations exceeding the max number of series, and
+     * must not be kept since each of its observations has to be reported to the limiter
+     */
+    boolean isOverflow() {
+        return overflow;
+    }
+
+    /**
+     * Records the dependency request duration.
+     *
+     * @param elapsedSeconds how long time did the request has executed
+     */
+    void observe(double elapsedSeconds) {
+        if (requestSeconds != null) {
+            requestSeconds.observe(elapsedSeconds);
+        }
+        if (requestLatency != null) {
+            requestLatency.observe(elapsedSeconds);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package br.com.labbs.monitor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records the requests of one dependency endpoint, identified by its name, type, method and address, on the
+ * dependency_request_seconds metric.
+ *
+ * <p>A handle is obtained once through {@link MonitorMetrics#dependencyTimer(String, String, String, String)} and
+ * shared by the callers. The series are resolved once per status, and per sanitized error message for the errors,
+ * and kept by the handle, except the overflow ones. {@link #observe(long, String)} and
+ * {@link #observeError(long, String, String)}, given the {@link System#nanoTime()} of the start of the request, are
+ * the API allocating nothing once the series is kept, the error message being sanitized from the cache of the
+ * sanitizer. {@link #start()} allocates a {@link Sample}, and {@link #time(TimedCall)} a sample along with the call
+ * passed by the caller, usually a lambda.
+ *
+ * <pre>
+ * {@code
+ * long start = System.nanoTime();
+ * Response response = client.call();
+ * timer.observe(start, String.valueOf(response.code()));
+ * }
+ * </pre>
+ *
+ * <pre>
+ * {@code
+ * try (DependencyTimer.Sample sample = timer.start()) {
+ *     Response response = client.call();
+ *     sample.success(String.valueOf(response.code()));
+ * }
+ *
+ * Response response = timer.time(sample -> {
+ *     Response r = client.call();
+ *     sample.success(String.valueOf(r.code()));
+ *     return r;
+ * });
+ * }
+ * </pre>
+ */
+public final class DependencyTimer {
+
+    private static final String NO_STATUS = "";
+
+    private final MonitorMetrics metrics;
+    private final String name;
+    private final String type;
+    private final String method;
+    private final String addr;
+    final ConcurrentMap<String, DependencySeries> successSeries =
+            new ConcurrentHashMap<String, DependencySeries>();
+    final ConcurrentMap<String, ConcurrentMap<String, DependencySeries>> errorSeries =
+            new ConcurrentHashMap<String, ConcurrentMap<String, DependencySeries>>();
+
+    DependencyTimer(MonitorMetrics metrics, String name, String type, String method, String addr) {
+        this.metrics = metrics;
+        this.name = name;
+        this.type = type;
+        this.method = method;
+        this.addr = addr;
+    }
+
+    /**
+     * Starts timing a request, allocating the sample. The returned sample records it when closed, as an error without status unless
+     * {@link Sample#success(String)} or {@link Sample#error(String, String)} was called.
+     *
+     * @return the started sample
+     */
+    public Sample start() {
+        return new Sample(this, System.nanoTime());
+    }
+
+    /**
+     * Times a call, allocating a sample. A call throwing an exception without setting the outcome is recorded as an error without
+     * status, whose message is the message of the exception.
+     *
+     * @param call the timed call, which sets the outcome of the request on the sample
+     * @param <T>  the type of the result of the call
+     * @return the result of the call
+     * @throws Exception the exception thrown by the call
+     */
+    public <T> T time(TimedCall<T> call) throws Exception {
+        Sample sample = start();
+        try {
+            return call.call(sample);
+        } catch (Exception e) {
+            if (!sample.outcomeSet) {
+                sample.error(NO_STATUS, e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+            }
+            throw e;
+        } finally {
+            sample.close();
+        }
+    }
+
+    /**
+     * Records a successful request, allocating nothing once the series of the status is kept.
+     *
+     * @param startNanos the {@link System#nanoTime()} when the request started
+     * @param status     the response status(e.g. response HTTP status code)
+     */
+    public void observe(long startNanos, String status) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        DependencySeries series = successSeries.get(status);
+        if (series == null) {
+            series = metrics.dependencySeries(name, type, status, method, addr, false, NO_STATUS);
+            if (series == null) {
+                // not initialized yet
+                return;
+            }
+            if (!series.isOverflow()) {
+                successSeries.putIfAbsent(status, series);
+            }
+        }
+        series.observe(elapsedNanos / 1e9);
+    }
+
+    /**
+     * Records a failed request, allocating nothing once the series of the status and sanitized message is kept.
+     *
+     * @param startNanos   the {@link System#nanoTime()} when the request started
+     * @param status       the response status(e.g. response HTTP status code)
+     * @param errorMessage the error message of the request
+     */
+    public void observeError(long startNanos, String status, String errorMessage) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        String sanitized = metrics.sanitizeDependencyError(errorMessage == null ? "" : errorMessage);
+        ConcurrentMap<String, DependencySeries> messageSeries = errorSeries.get(status);
+        DependencySeries series = messageSeries == null ? null : messageSeries.get(sanitized);
+        if (series == null) {
+            series = metrics.sanitizedDependencySeries(name, type, status, method, addr, true, sanitized);
+            if (series == null) {
+                // not initialized yet
+                return;
+            }
+            if (!series.isOverflow()) {
+                if (messageSeries == null) {
+                    messageSeries = new ConcurrentHashMap<String, DependencySeries>();
+                    ConcurrentMap<String, DependencySeries> previous = errorSeries.putIfAbsent(status, messageSeries);
+                    if (previous != null) {
+                        messageSeries = previous;
+                    }
+                }
+                messageSeries.putIfAbsent(sanitized, series);
+            }
+        }
+        series.observe(elapsedNanos / 1e9);
+    }
+
+    /**
+     * A call timed by {@link #time(TimedCall)}.
+     *
+     * @param <T> the type of the result of the call
+     */
+    public interface TimedCall<T> {
+
+        /**
+         * Performs the call.
+         *
+         * @param sample the sample on which the outcome of the request is set
+         * @return the result of the call
+         * @throws Exception if the call failed
+         */
+        T call(Sample sample) throws Exception;
+    }
+
+    /**
+     * A request being timed, recorded once when closed.
+     */
+    public static final class Sample implements AutoCloseable {
+
+        private final DependencyTimer timer;
+        private final long startNanos;
+        private String status = NO_STATUS;
+        private String errorMessage = "";
+        private boolean isError = true;
+        private boolean outcomeSet;
+        private boolean closed;
+
+        Sample(DependencyTimer timer, long startNanos) {
+            this.timer = timer;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Sets the outcome of the request as successful.
+         *
+         * @param status the response status(e.g. response HTTP status code)
+         */
+        public void success(String status) {
+            this.status = status;
+            this.errorMessage = "";
+            this.isError = false;
+            this.outcomeSet = true;
+        }
+
+        /**
+         * Sets the outcome of the request as failed.
+         *
+         * @param status       the response status(e.g. response HTTP status code)
+         * @param errorMessage the error message of the request
+         */
+        public void error(String status, String errorMessage) {
+            this.status = status;
+            this.errorMessage = errorMessage;
+            this.isError = true;
+            this.outcomeSet = true;
+        }
+
+        /**
+         * Records the request, only the first time it is called.
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (isError) {
+                timer.observeError(startNanos, status, errorMessage);
+            } else {
+                timer.observe(startNanos, status);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package br.com.labbs.monitor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Turns error messages into label values by removing the parts matching a regex and truncating the result.
+ *
+ * <p>The regex is compiled once, and the label values of the latest messages are kept in a bounded LRU cache, so
+ * the repeated messages of an error spike are sanitized once. The cache is split into segments locked separately.
+ * Messages longer than {@value #MAX_CACHED_LENGTH} chars are sanitized but not cached.
+ */
+public final class ErrorMessageSanitizer {
+
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    static final int MAX_CACHED_LENGTH = 1024;
+    private static final int SEGMENTS = 16;
+
+    private final Pattern pattern;
+    private final int maxLength;
+    private final Segment[] segments;
+
+    /**
+     * Creates a sanitizer.
+     *
+     * @param regex     the regex matching the parts to be removed from the messages
+     * @param maxLength the max length of the sanitized messages
+     * @param cacheSize the max number of sanitized messages cached, 0 to disable the cache
+     * @throws IllegalArgumentException if the regex is invalid
+     */
+    public ErrorMessageSanitizer(String regex, int maxLength, int cacheSize) {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("maxLength must not be negative but got " + maxLength);
+        }
+        try {
+            this.pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid error message regex: " + e.getMessage(), e);
+        }
+        this.maxLength = maxLength;
+        if (cacheSize > 0) {
+            int segmentCount = Math.min(SEGMENTS, cacheSize);
+            segments = new Segment[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                segments[i] = new Segment((cacheSize + segmentCount - 1) / segmentCount);
+            }
+        } else {
+            segments = null;
+        }
+    }
+
+    /**
+     * Returns the label value of an error message.
+     *
+     * @param message the error message, may be <code>null</code>
+     * @return the message without the parts matching the regex and truncated, or empty string for a
+     * <code>null</code> message
+     */
+    public String sanitize(String message) {
+        if (message == null || message.isEmpty()) {
+            return "";
+        }
+        if (segments == null || message.length() > MAX_CACHED_LENGTH) {
+            return doSanitize(message);
+        }
+        int hash = message.hashCode();
+        Segment segment = segments[((hash ^ (hash >>> 16)) & 0x7fffffff) % segments.length];
+        String sanitized;
+        synchronized (segment) {
+            sanitized = segment.get(message);
+        }
+        if (sanitized == null) {
+            sanitized = doSanitize(message);
+            synchronized (segment) {
+                segment.put(message, sanitized);
+            }
+        }
+        return sanitized;
+    }
+
+    private String doSanitize(String message) {
+        String result = pattern.matcher(message).replaceAll("");
+        if (result.length() > maxLength) {
+            result = result.substring(0, maxLength);
+        }
+        return result;
+    }
+
+    /**
+     * A part of the cache, evicting its least recently used message.
+     */
+    private static final class Segment extends LinkedHashMap<String, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The requests_in_flight{addr, method} gauge, counting the requests being handled.
+ *
+ * <p>Each series is a {@link LongAdder}, whose cells are striped across the threads, so the many threads entering
+ * and leaving the same route do not contend on a single cache line. A counter is looked up like the series of
+ * {@link RequestSeriesCache}, by address and then by a scan over the few methods seen for it, without allocating,
+ * and the same counter must be incremented when the request starts and decremented when it ends.
+ *
+ * <p>The number of series is bounded by a {@link SeriesLimiter}: once it is full, the requests to unknown addresses
+ * are counted on the {@link SeriesLimiter#OVERFLOW_ADDR} address.
+ */
+public final class InFlightRequests extends Collector {
+
+    private final String name;
+    private final String help;
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+    private final SeriesLimiter limiter;
+    private final Route overflow = new Route(SeriesLimiter.OVERFLOW_ADDR, true);
+
+    InFlightRequests(String name, String help, SeriesLimiter limiter) {
+        this.name = name;
+        this.help = help;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Returns the counter of the requests in flight for a route.
+     *
+     * @param method the request method(e.g. HTTP methods GET, POST, PUT)
+     * @param addr   the requested endpoint address
+     * @return the counter, to be incremented when the request starts and decremented when it ends
+     */
+    public LongAdder get(String method, String addr) {
+        Route route = routes.get(addr);
+        if (route == null) {
+            if (addr == null) {
+                throw new IllegalArgumentException("Label cannot be null.");
+            }
+            if (limiter.isFull()) {
+                return overflow.get(method);
+            }
+            route = new Route(addr, false);
+            Route previous = routes.putIfAbsent(addr, route);
+            if (previous != null) {
+                route = previous;
+            }
+        }
+        return route.get(method);
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        GaugeMetricFamily family = new GaugeMetricFamily(name, help, Arrays.asList("addr", "method"));
+        for (Route route : routes.values()) {
+            route.collect(family);
+        }
+        overflow.collect(family);
+        return Collections.<MetricFamilySamples>singletonList(family);
+    }
+
+    /**
+     * The counters of one address, published by copy-on-write.
+     */
+    private final class Route {
+
+        private final String addr;
+        private final boolean isOverflow;
+        private volatile String[] methods = new String[0];
+        private volatile LongAdder[] counters = new LongAdder[0];
+
+        Route(String addr, boolean isOverflow) {
+            this.addr = addr;
+            this.isOverflow = isOverflow;
+        }
+
+        LongAdder get(String method) {
+            LongAdder found = find(method);
+            if (found == null) {
+                if (method == null) {
+                    throw new IllegalArgumentException("Label cannot be null.");
+                }
+                if (!isOverflow && !limiter.tryAcquire()) {
+                    return overflow.get(method);
+                }
+                synchronized (this) {
+                    found = find(method);
+                    if (found != null) {
+                        if (!isOverflow) {
+                            limiter.release();
+                        }
+                        return found;
+                    }
+                    found = new LongAdder();
+                    String[] grownMethods = Arrays.copyOf(methods, methods.length + 1);
+                    LongAdder[] grownCounters = Arrays.copyOf(counters, counters.length + 1);
+                    grownMethods[methods.length] = method;
+                    grownCounters[counters.length] = found;
+                    // the counters are published first, so a reader seeing a method sees its counter
+                    counters = grownCounters;
+                    methods = grownMethods;
+                }
+            }
+            if (isOverflow) {
+                limiter.overflowed();
+            }
+            return found;
+        }
+
+        private LongAdder find(String method) {
+            String[] candidates = methods;
+            for (int i = 0; i < candidates.length; i++) {
+                if (candidates[i].equals(method)) {
+                    return counters[i];
+                }
+            }
+            return null;
+        }
+
+        void collect(GaugeMetricFamily family) {
+            String[] currentMethods = methods;
+            LongAdder[] currentCounters = counters;
+            for (int i = 0; i < currentMethods.length; i++) {
+                family.addMetric(Arrays.asList(addr, currentMethods[i]), currentCounters[i].sum());
+            }
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.SimpleCollector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LogLinearHistogram records observations without pre-defined buckets, with a fixed relative error.
+ *
+ * <p>Each power of two (octave) between 2<sup>-20</sup> (about 1 microsecond) and 2<sup>12</sup> (about 68 minutes)
+ * is split into 2<sup>precisionBits</sup> linear sub-buckets, so the bucket of a value is read directly from the
+ * exponent and the top mantissa bits of its {@code double} representation. The upper bound of a bucket is
+ * inclusive, as the {@code le} of the Prometheus buckets, so a power of two is recorded on the bucket it ends. Values
+ * outside that range are recorded on the first or last bucket. The sub-buckets of an octave are only allocated once a value falls into it, so a
+ * series holds at most {@code 32 * 2^precisionBits} counters whatever the observed range is, and usually much less.
+ * A quantile estimated from the recorded buckets has a relative error of at most 2<sup>-(precisionBits + 1)</sup>.
+ *
+ * <p>With {@link Builder#window(long, int)}, the quantiles are estimated over a sliding time window: the
+ * observations are recorded on the current of {@code ageBuckets} rotating windows, which are merged at scrape time,
+ * so the quantiles cover between {@code maxAgeSeconds * (ageBuckets - 1) / ageBuckets} and {@code maxAgeSeconds}.
+ * The counters of a window are reset in place when it is reused, so a windowed series holds at most
+ * {@code ageBuckets} times the counters of a cumulative one. The count and the sum remain cumulative.
+ *
+ * <p>At scrape time, the recorded buckets are exposed either:
+ * <ul>
+ * <li>as a summary with the configured quantiles, when {@link Builder#quantiles(double...)} is defined;</li>
+ * <li>otherwise as a histogram whose cumulative buckets are the octave boundaries of the range defined by
+ * {@link Builder#bucketRange(double, double)}, fixed at build time so that the series of a family do not change
+ * with the observed values. Those bucket counts are exact, the octave boundaries being boundaries of the recorded
+ * buckets.</li>
+ * </ul>
+ *
+ * <pre>
+ * {@code
+ * LogLinearHistogram latency = LogLinearHistogram.build().name("request_seconds").help("...")
+ *         .labelNames("addr").quantiles(0.5, 0.9, 0.99).register(registry);
+ * latency.labels("/users").observe(0.042);
+ * }
+ * </pre>
+ */
+public class LogLinearHistogram extends SimpleCollector<LogLinearHistogram.Child> implements Collector.Describable {
+
+    static final int MIN_EXPONENT = -20;
+    static final int MAX_EXPONENT = 11;
+    static final int OCTAVES = MAX_EXPONENT - MIN_EXPONENT + 1;
+    static final int DEFAULT_PRECISION_BITS = 4;
+    static final int MAX_PRECISION_BITS = 10;
+    static final double DEFAULT_LOWEST_BUCKET = Math.scalb(1.0, -10);
+    static final double DEFAULT_HIGHEST_BUCKET = Math.scalb(1.0, 6);
+
+    private static final double MIN_VALUE = Math.scalb(1.0, MIN_EXPONENT);
+    private static final double MAX_VALUE = Math.scalb(1.0, MAX_EXPONENT + 1);
+
+    private final int precisionBits;
+    private final double[] quantiles;
+    private final long windowNanos;
+    private final int ageBuckets;
+    private final int lowestOctave;
+    private final int highestOctave;
+
+    LogLinearHistogram(Builder b) {
+        super(b);
+        for (String label : labelNames) {
+            if (label.equals("quantile") || label.equals("le")) {
+                throw new IllegalStateException("LogLinearHistogram cannot have a label named '" + label + "'.");
+            }
+        }
+        this.precisionBits = b.precisionBits;
+        this.quantiles = b.quantiles;
+        // the windows only apply to the quantiles, the histogram buckets must be cumulative
+        this.windowNanos = quantiles.length > 0 ? TimeUnit.SECONDS.toNanos(b.maxAgeSeconds) : 0;
+        this.ageBuckets = b.ageBuckets;
+        this.lowestOctave = upperBoundOctave(b.lowestBucket);
+        this.highestOctave = Math.max(lowestOctave, upperBoundOctave(b.highestBucket));
+        initializeNoLabelsChild();
+    }
+
+    /**
+     * Returns the octave whose upper boundary is the lowest power of two greater than or equal to the value, within
+     * the recorded range.
+     */
+    private static int upperBoundOctave(double value) {
+        int exponent = Math.getExponent(value);
+        if (Math.scalb(1.0, exponent) < value) {
+            exponent++;
+        }
+        return Math.max(0, Math.min(OCTAVES - 1, exponent - MIN_EXPONENT - 1));
+    }
+
+    public static Builder build(String name, String help) {
+        return new Builder().name(name).help(help);
+    }
+
+    public static Builder build() {
+        return new Builder();
+    }
+
+    @Override
+    protected void initializeNoLabelsChild() {
+        // called by the super constructor before the precision is known
+        if (precisionBits > 0) {
+            super.initializeNoLabelsChild();
+        }
+    }
+
+    @Override
+    protected Child newChild() {
+        return new Child(precisionBits, windowNanos, ageBuckets);
+    }
+
+    /**
+     * Observe the given amount on the histogram with no labels.
+     *
+     * @param amt the amount to be observed
+     */
+    public void observe(double amt) {
+        noLabelsChild.observe(amt);
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples.Sample> samples = new ArrayList<MetricFamilySamples.Sample>();
+        if (quantiles.length > 0) {
+            List<String> quantileLabelNames = new ArrayList<String>(labelNames);
+            quantileLabelNames.add("quantile");
+            for (Map.Entry<List<String>, Child> c : children.entrySet()) {
+                Child.Value v = c.getValue().get();
+                for (double q : quantiles) {
+                    List<String> quantileLabelValues = new ArrayList<String>(c.getKey());
+                    quantileLabelValues.add(doubleToGoString(q));
+                    samples.add(new MetricFamilySamples.Sample(fullname, quantileLabelNames, quantileLabelValues,
+                            v.quantile(q)));
+                }
+                samples.add(new MetricFamilySamples.Sample(fullname + "_count", labelNames, c.getKey(), v.count));
+                samples.add(new MetricFamilySamples.Sample(fullname + "_sum", labelNames, c.getKey(), v.sum));
+            }
+            return familySamplesList(Type.SUMMARY, samples);
+        }
+
+        List<String> bucketLabelNames = new ArrayList<String>(labelNames);
+        bucketLabelNames.add("le");
+        for (Map.Entry<List<String>, Child> c : children.entrySet()) {
+            List<String> key = c.getKey();
+            Child.Value v = c.getValue().get();
+            for (int octave = lowestOctave; octave <= highestOctave; octave++) {
+                List<String> bucketLabelValues = new ArrayList<String>(key);
+                bucketLabelValues.add(doubleToGoString(Math.scalb(1.0, octave + MIN_EXPONENT + 1)));
+                samples.add(new MetricFamilySamples.Sample(fullname + "_bucket", bucketLabelNames,
+                        bucketLabelValues, v.cumulativeCount(octave)));
+            }
+            List<String> infLabelValues = new ArrayList<String>(key);
+            infLabelValues.add("+Inf");
+            samples.add(new MetricFamilySamples.Sample(fullname + "_bucket", bucketLabelNames, infLabelValues, v.count));
+            samples.add(new MetricFamilySamples.Sample(fullname + "_count", labelNames, key, v.count));
+            samples.add(new MetricFamilySamples.Sample(fullname + "_sum", labelNames, key, v.sum));
+        }
+        return familySamplesList(Type.HISTOGRAM, samples);
+    }
+
+    @Override
+    public List<MetricFamilySamples> describe() {
+        Type type = quantiles.length > 0 ? Type.SUMMARY : Type.HISTOGRAM;
+        return Collections.singletonList(new MetricFamilySamples(fullname, type, help,
+                Collections.<MetricFamilySamples.Sample>emptyList()));
+    }
+
+    public static class Builder extends SimpleCollector.Builder<Builder, LogLinearHistogram> {
+
+        private int precisionBits = DEFAULT_PRECISION_BITS;
+        private double[] quantiles = new double[0];
+        private long maxAgeSeconds;
+        private int ageBuckets = 1;
+        private double lowestBucket = DEFAULT_LOWEST_BUCKET;
+        private double highestBucket = DEFAULT_HIGHEST_BUCKET;
+
+        /**
+         * Defines the number of linear sub-buckets of each power of two, as a power of two.
+         *
+         * @param precisionBits from 1 to 10, the relative error is at most 2<sup>-(precisionBits + 1)</sup>
+         * @return the builder
+         */
+        public Builder precisionBits(int precisionBits) {
+            if (precisionBits < 1 || precisionBits > MAX_PRECISION_BITS) {
+                throw new IllegalArgumentException("precisionBits must be between 1 and " + MAX_PRECISION_BITS
+                        + " but got " + precisionBits);
+            }
+            this.precisionBits = precisionBits;
+            return this;
+        }
+
+        /**
+         * Defines the quantiles to be exposed. Without quantiles, the family is exposed as a histogram.
+         *
+         * @param quantiles quantiles between 0 and 1
+         * @return the builder
+         */
+        public Builder quantiles(double... quantiles) {
+            for (double q : quantiles) {
+                if (q < 0.0 || q > 1.0) {
+                    throw new IllegalArgumentException("Quantile " + q + " invalid: Expected number between 0.0 and 1.0.");
+                }
+            }
+            this.quantiles = quantiles.clone();
+            return this;
+        }
+
+        /**
+         * Estimates the quantiles over a sliding time window instead of since the start.
+         *
+         * @param maxAgeSeconds the duration of the window
+         * @param ageBuckets    the number of rotating windows, the window sliding by {@code maxAgeSeconds / ageBuckets}
+         * @return the builder
+         */
+        public Builder window(long maxAgeSeconds, int ageBuckets) {
+            if (maxAgeSeconds <= 0 || ageBuckets < 1) {
+                throw new IllegalArgumentException("maxAgeSeconds and ageBuckets must be positive but got "
+                        + maxAgeSeconds + " and " + ageBuckets);
+            }
+            this.maxAgeSeconds = maxAgeSeconds;
+            this.ageBuckets = ageBuckets;
+            return this;
+        }
+
+        /**
+         * Defines the buckets exposed without quantiles: one per power of two from the lowest to the highest bound,
+         * each rounded up to a power of two, plus {@code +Inf}. Defaults to 2<sup>-10</sup> (about 1 millisecond)
+         * to 2<sup>6</sup> (64) seconds.
+         *
+         * @param lowest  the upper bound of the lowest bucket
+         * @param highest the upper bound of the highest bucket before {@code +Inf}
+         * @return the builder
+         */
+        public Builder bucketRange(double lowest, double highest) {
+            if (!(lowest > 0) || !(highest >= lowest)) {
+                throw new IllegalArgumentException("The bucket range must be positive and ordered but got "
+                        + lowest + " to " + highest);
+            }
+            this.lowestBucket = lowest;
+            this.highestBucket = highest;
+            return this;
+        }
+
+        @Override
+        public LogLinearHistogram create() {
+            return new LogLinearHistogram(this);
+        }
+    }
+
+    /**
+     * The value of a single LogLinearHistogram.
+     */
+    public static class Child {
+
+        private final int precisionBits;
+        private final int subBuckets;
+        private final DoubleAdder sum = new DoubleAdder();
+        /**
+         * The cumulative buckets, <code>null</code> for a windowed child.
+         */
+        private final Buckets cumulative;
+        /**
+         * The rotating windows and the count since the start, <code>null</code> for a cumulative child.
+         */
+        private final Buckets[] windows;
+        private final LongAdder count;
+        private final long sliceNanos;
+        private volatile int current;
+        private volatile long rotateAtNanos;
+
+        Child(int precisionBits) {
+            this(precisionBits, 0, 1);
+        }
+
+        Child(int precisionBits, long windowNanos, int ageBuckets) {
+            this.precisionBits = precisionBits;
+            this.subBuckets = 1 << precisionBits;
+            if (windowNanos > 0) {
+                cumulative = null;
+                windows = new Buckets[ageBuckets];
+                for (int i = 0; i < ageBuckets; i++) {
+                    windows[i] = new Buckets(subBuckets);
+                }
+                count = new LongAdder();
+                sliceNanos = Math.max(1, windowNanos / ageBuckets);
+                rotateAtNanos = System.nanoTime() + sliceNanos;
+            } else {
+                cumulative = new Buckets(subBuckets);
+                windows = null;
+                count = null;
+                sliceNanos = 0;
+            }
+        }
+
+        /**
+         * Observe the given amount.
+         *
+         * @param amt the amount to be observed
+         */
+        public void observe(double amt) {
+            observe(amt, 1, windows == null ? 0 : System.nanoTime());
+        }
+
+        /**
+         * Observe the given amount as many times as the given weight, e.g. for a sampled value standing for
+         * {@code weight} values.
+         *
+         * @param amt    the amount to be observed
+         * @param weight the number of times the amount is counted
+         */
+        public void observe(double amt, long weight) {
+            observe(amt, weight, windows == null ? 0 : System.nanoTime());
+        }
+
+        /**
+         * Observe the given amount at the given time, which only matters for a windowed child.
+         */
+        void observeAt(double amt, long nanoTime) {
+            observe(amt, 1, nanoTime);
+        }
+
+        private void observe(double amt, long weight, long nanoTime) {
+            int octave;
+            int subBucket;
+            if (!(amt > MIN_VALUE)) {
+                octave = 0;
+                subBucket = 0;
+            } else if (amt >= MAX_VALUE) {
+                octave = OCTAVES - 1;
+                subBucket = subBuckets - 1;
+            } else {
+                // the bucket of the previous double, so that a value equal to a bound is recorded on the bucket it ends
+                long bits = Double.doubleToRawLongBits(amt) - 1;
+                octave = (int) (bits >>> 52) - 1023 - MIN_EXPONENT;
+                subBucket = (int) (bits >>> (52 - precisionBits)) & (subBuckets - 1);
+            }
+            if (cumulative != null) {
+                cumulative.add(octave, subBucket, weight);
+            } else {
+                currentWindow(nanoTime).add(octave, subBucket, weight);
+                count.add(weight);
+            }
+            sum.add(weight == 1 ? amt : amt * weight);
+        }
+
+        private Buckets currentWindow(long now) {
+            if (now - rotateAtNanos >= 0) {
+                rotate(now);
+            }
+            return windows[current];
+        }
+
+        /**
+         * Moves to the next window, resetting it, once per slice elapsed since the last rotation.
+         */
+        private synchronized void rotate(long now) {
+            if (now - rotateAtNanos - sliceNanos * windows.length >= 0) {
+                // idle for longer than the whole window
+                for (Buckets window : windows) {
+                    window.reset();
+                }
+                rotateAtNanos = now + sliceNanos;
+                return;
+            }
+            while (now - rotateAtNanos >= 0) {
+                int next = current + 1 == windows.length ? 0 : current + 1;
+                windows[next].reset();
+                current = next;
+                rotateAtNanos += sliceNanos;
+            }
+        }
+
+        /**
+         * Get a snapshot of the recorded buckets.
+         *
+         * @return the snapshot
+         */
+        public Value get() {
+            return get(windows == null ? 0 : System.nanoTime());
+        }
+
+        /**
+         * Get a snapshot of the recorded buckets at the given time, which only matters for a windowed child.
+         */
+        Value get(long nanoTime) {
+            long[][] counts = new long[OCTAVES][];
+            if (cumulative != null) {
+                cumulative.addTo(counts);
+            } else {
+                currentWindow(nanoTime);
+                for (Buckets window : windows) {
+                    window.addTo(counts);
+                }
+            }
+            long[] cumulativeCounts = new long[OCTAVES];
+            long recorded = 0;
+            for (int octave = 0; octave < OCTAVES; octave++) {
+                if (counts[octave] != null) {
+                    for (long c : counts[octave]) {
+                        recorded += c;
+                    }
+                }
+                cumulativeCounts[octave] = recorded;
+            }
+            return new Value(precisionBits, counts, cumulativeCounts, count != null ? count.sum() : recorded,
+                    sum.sum());
+        }
+
+        /**
+         * The counters of the sub-buckets, allocated per octave on the first value falling into it.
+         */
+        private static final class Buckets {
+
+            private final int subBuckets;
+            private final AtomicReferenceArray<AtomicLongArray> octaves =
+                    new AtomicReferenceArray<AtomicLongArray>(OCTAVES);
+
+            Buckets(int subBuckets) {
+                this.subBuckets = subBuckets;
+            }
+
+            void add(int octave, int subBucket, long weight) {
+                AtomicLongArray counts = octaves.get(octave);
+                if (counts == null) {
+                    counts = new AtomicLongArray(subBuckets);
+                    if (!octaves.compareAndSet(octave, null, counts)) {
+                        counts = octaves.get(octave);
+                    }
+                }
+                counts.addAndGet(subBucket, weight);
+            }
+
+            void addTo(long[][] counts) {
+                for (int octave = 0; octave < OCTAVES; octave++) {
+                    AtomicLongArray recorded = octaves.get(octave);
+                    if (recorded != null) {
+                        long[] snapshot = counts[octave];
+                        if (snapshot == null) {
+                            snapshot = new long[subBuckets];
+                            counts[octave] = snapshot;
+                        }
+                        for (int i = 0; i < subBuckets; i++) {
+                            snapshot[i] += recorded.get(i);
+                        }
+                    }
+                }
+            }
+
+            /**
+             * Resets the counters in place, keeping the octaves allocated for the next window.
+             */
+            void reset() {
+                for (int octave = 0; octave < OCTAVES; octave++) {
+                    AtomicLongArray recorded = octaves.get(octave);
+                    if (recorded != null) {
+                        for (int i = 0; i < subBuckets; i++) {
+                            recorded.set(i, 0);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * A snapshot of the recorded buckets of a {@link Child}.
+         */
+        public static class Value {
+
+            public final long count;
+            public final double sum;
+            private final int precisionBits;
+            private final long[][] counts;
+            private final long[] cumulativeCounts;
+            private final long recorded;
+
+            Value(int precisionBits, long[][] counts, long[] cumulativeCounts, long count, double sum) {
+                this.precisionBits = precisionBits;
+                this.counts = counts;
+                this.cumulativeCounts = cumulativeCounts;
+                this.recorded = cumulativeCounts[OCTAVES - 1];
+                this.count = count;
+                this.sum = sum;
+            }
+
+            /**
+             * Estimates a quantile as the middle of the bucket holding it.
+             *
+             * @param q quantile between 0 and 1
+             * @return the estimated value or {@link Double#NaN} if nothing was recorded, in the window if any
+             */
+            public double quantile(double q) {
+                if (recorded == 0) {
+                    return Double.NaN;
+                }
+                long rank = Math.max(1, (long) Math.ceil(q * recorded));
+                long seen = 0;
+                for (int octave = 0; octave < OCTAVES; octave++) {
+                    long[] subBuckets = counts[octave];
+                    if (subBuckets == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < subBuckets.length; i++) {
+                        seen += subBuckets[i];
+                        if (seen >= rank) {
+                            return middle(octave, i);
+                        }
+                    }
+                }
+                return middle(OCTAVES - 1, (1 << precisionBits) - 1);
+            }
+
+            /**
+             * Returns how many observations are lower than or equal to the upper boundary of the octave.
+             *
+             * @param octave octave index, from 0 to 31
+             * @return cumulative count
+             */
+            long cumulativeCount(int octave) {
+                return cumulativeCounts[octave];
+            }
+
+            private double middle(int octave, int subBucket) {
+                double base = Math.scalb(1.0, octave + MIN_EXPONENT);
+                double width = Math.scalb(base, -precisionBits);
+                return base + width * (subBucket + 0.5);
+            }
+        }
+    }
+}
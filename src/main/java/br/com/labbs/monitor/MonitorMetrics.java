@@ -1,7 +1,10 @@
 package br.com.labbs.monitor;
 
+import br.com.labbs.monitor.dependency.AsyncDependencyChecker;
+import br.com.labbs.monitor.dependency.DependencyCheckListener;
 import br.com.labbs.monitor.dependency.DependencyChecker;
 import br.com.labbs.monitor.dependency.DependencyCheckerExecutor;
+import br.com.labbs.monitor.dependency.DependencyHealthRegistry;
 import br.com.labbs.monitor.dependency.DependencyState;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Counter;
@@ -9,10 +12,15 @@ import io.prometheus.client.Gauge;
 import io.prometheus.client.Histogram;
 import io.prometheus.client.hotspot.DefaultExports;
 
-import java.util.TimerTask;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Singleton MonitorMetrics provides the four following Prometheus metrics:
+ * Singleton MonitorMetrics provides the following Prometheus metrics:
  *
  * <pre>
  * {@code
@@ -21,16 +29,53 @@ import java.util.TimerTask;
  *    request_seconds_count{type, status, method, addr, isError}
  *    request_seconds_sum{type, status, method, addr, isError}
  *
- * The Histogram only works if buckets param was defined in web.xml
- * 
+ * Without buckets, request_seconds is not recorded unless enabled by setLatencyWithoutBuckets. It is then recorded
+ * by a bucket-less LogLinearHistogram and exposed as a summary with the latency quantiles, or as a histogram whose
+ * buckets are fixed powers of two:
+ *    request_seconds{type, status, method, addr, isError, quantile}
+ *    request_seconds_count{type, status, method, addr, isError}
+ *    request_seconds_sum{type, status, method, addr, isError}
+ *
+ * With buckets and the quantiles enabled alongside them, request_seconds is also recorded by a LogLinearHistogram:
+ *    request_seconds_quantiles{type, status, method, addr, isError, quantile}
+ *    request_seconds_quantiles_count{type, status, method, addr, isError}
+ *    request_seconds_quantiles_sum{type, status, method, addr, isError}
+ *
  * Counter responseSize:
  *    response_size_bytes{type, status, method, addr, isError}
  *
+ * Counter requestSize:
+ *    request_size_bytes{type, status, method, addr, isError}
+ *
+ * Gauge requestsInFlight:
+ *    requests_in_flight{addr, method}
+ *
  * Gauge dependencyUp:
  *    dependency_up{name}
  *
+ * Histogram dependencyCheckSeconds:
+ *    dependency_check_seconds_bucket{name, le}
+ *    dependency_check_seconds_count{name}
+ *    dependency_check_seconds_sum{name}
+ *
+ * Counter dependencyCheckFailures:
+ *    dependency_check_failures_total{name, cause}
+ *
  * Gauge applicationInfo:
  *    application_info{version}
+ *
+ * Counter seriesOverflow:
+ *    servlet_monitor_series_overflow_total{metric}
+ *
+ * Gauge requestSampler, when the requests are sampled:
+ *    servlet_monitor_request_sample_rate
+ *
+ * SelfMetrics selfMetrics, the overhead of the monitor itself:
+ *    servlet_monitor_filter_seconds{quantile}
+ *    servlet_monitor_collect_seconds{quantile}
+ *    servlet_monitor_scrape_seconds{quantile}
+ *    servlet_monitor_scrape_bytes_total
+ *    servlet_monitor_series{family}
  * }
  * </pre>
  *
@@ -42,40 +87,261 @@ public enum MonitorMetrics {
 
     private static final String REQUESTS_SECONDS_METRIC_NAME = "request_seconds";
     private static final String RESPONSE_SIZE_METRIC_NAME = "response_size_bytes";
+    private static final String REQUEST_SIZE_METRIC_NAME = "request_size_bytes";
+    private static final String REQUESTS_IN_FLIGHT_METRIC_NAME = "requests_in_flight";
     private static final String DEPENDENCY_REQUESTS_SECONDS_METRIC_NAME = "dependency_request_seconds";
+    private static final String QUANTILES_SUFFIX = "_quantiles";
     private static final String DEPENDENCY_UP_METRIC_NAME = "dependency_up";
+    private static final String DEPENDENCY_CHECK_SECONDS_METRIC_NAME = "dependency_check_seconds";
+    private static final String DEPENDENCY_CHECK_FAILURES_METRIC_NAME = "dependency_check_failures_total";
     private static final String APPLICATION_INFO_METRIC_NAME = "application_info";
+    private static final String SERIES_OVERFLOW_METRIC_NAME = "servlet_monitor_series_overflow_total";
+    private static final String REQUEST_SAMPLE_RATE_METRIC_NAME = "servlet_monitor_request_sample_rate";
+    private static final double DEFAULT_SLOW_REQUEST_SECONDS = 1D;
+    private static final int DEFAULT_OVERHEAD_SAMPLE_ONE_IN = 100;
+    private static final String SAMPLE_RATE_HELP =
+            "records the fraction of the requests recorded on request_seconds and response_size_bytes";
 
     /* Not used anymore */
     private static double[] DEFAULT_BUCKETS = { 0.1D, 0.3D, 1.5D, 10.5D };
 
     public CollectorRegistry collectorRegistry = new CollectorRegistry(true);
 
+    /**
+     * @deprecated the requests are recorded on request_seconds by an internal histogram, which observes a sampled
+     * request once with its weight. The observations made on this histogram are still exposed, added to the
+     * recorded ones, but it does not hold the recorded ones.
+     */
+    @Deprecated
     public Histogram requestSeconds;
     public Counter responseSize;
+    public Counter requestSize;
+    public InFlightRequests requestsInFlight;
     public Histogram dependencyRequestSeconds;
+    public LogLinearHistogram requestLatency;
+    public LogLinearHistogram dependencyRequestLatency;
     public Gauge dependencyUp;
+    public Histogram dependencyCheckSeconds;
+    public Counter dependencyCheckFailures;
     public Gauge applicationInfo;
+    public Counter seriesOverflow;
+    public RequestSampler requestSampler;
+    public SelfMetrics selfMetrics;
 
+    private WeightedHistogram weightedRequestSeconds;
     private DependencyCheckerExecutor dependencyCheckerExecutor = new DependencyCheckerExecutor();
 
+    private final DependencyHealthRegistry dependencyHealth = new DependencyHealthRegistry();
+
+    private final DependencyCheckListener dependencyCheckListener = new DependencyCheckListener() {
+        @Override
+        public void onCheck(String dependencyName, DependencyState state, double elapsedSeconds, Throwable cause) {
+            dependencyHealth.onCheck(dependencyName, state, elapsedSeconds, cause);
+            if (!initialized) {
+                // skipping, the MonitorMetrics instance has not been initialized yet.
+                // MonitorMetrics.INSTANCE.init must be executed once.
+                return;
+            }
+            dependencyUp.labels(dependencyName).set(state.getValue());
+            dependencyCheckSeconds.labels(dependencyName).observe(elapsedSeconds);
+            if (cause != null) {
+                String causeLabel = cause instanceof TimeoutException ? "timeout" : cause.getClass().getSimpleName();
+                dependencyCheckFailures.labels(dependencyName, causeLabel).inc();
+            }
+        }
+    };
+
+    private RequestSeriesCache requestSeriesCache;
+    private final ConcurrentMap<List<String>, DependencySeries> dependencySeries =
+            new ConcurrentHashMap<List<String>, DependencySeries>();
+    private final ConcurrentMap<List<String>, DependencySeries> dependencyOverflowSeries =
+            new ConcurrentHashMap<List<String>, DependencySeries>();
+    private SeriesLimiter dependencyLimiter;
+    private int maxSeries;
+    private double[] latencyQuantiles = { 0.5D, 0.9D, 0.99D };
+    private int latencyPrecisionBits = LogLinearHistogram.DEFAULT_PRECISION_BITS;
+    private long latencyWindowSeconds;
+    private int latencyWindowAgeBuckets = 1;
+    private boolean latencyQuantilesWithBuckets;
+    private boolean latencyWithoutBuckets;
+    private int sampleOneIn = 1;
+    private double sampleRecordingsPerSecond;
+    private double slowRequestSeconds = DEFAULT_SLOW_REQUEST_SECONDS;
+    private int overheadSampleOneIn = DEFAULT_OVERHEAD_SAMPLE_ONE_IN;
+    private int errorMessageCacheSize = ErrorMessageSanitizer.DEFAULT_CACHE_SIZE;
+    private boolean requestSizeRecorded = true;
+
     private boolean noBuckets = false;
     private boolean initialized;
 
-    private String dependencyErrorRegex;
-    
+    private ErrorMessageSanitizer dependencyErrorSanitizer;
+
+    /**
+     * Defines the max number of series of each of the request_seconds, response_size_bytes, requests_in_flight and
+     * dependency_request_seconds metrics. Once a metric reaches it, new label combinations are recorded on a series
+     * whose addr label is {@code __overflow__}, and counted by servlet_monitor_series_overflow_total.
+     * Must be called before {@link #init(boolean, String, String, double...)}.
+     *
+     * @param maxSeries max number of series per metric, anything less than 1 means unlimited
+     */
+    public void setMaxSeries(int maxSeries) {
+        checkNotInitialized();
+        this.maxSeries = maxSeries;
+    }
+
+    /**
+     * Records request_seconds and dependency_request_seconds when no buckets are defined, which are otherwise not
+     * recorded at all. They are exposed as defined by {@link #setLatencyQuantiles(double...)}.
+     * Must be called before {@link #init(boolean, String, String, double...)}.
+     *
+     * @param enabled <code>true</code> to record the latencies without buckets
+     */
+    public void setLatencyWithoutBuckets(boolean enabled) {
+        checkNotInitialized();
+        this.latencyWithoutBuckets = enabled;
+    }
+
+    /**
+     * Defines how request_seconds and dependency_request_seconds are exposed when no buckets are defined.
+     * Must be called before {@link #init(boolean, String, String, double...)}.
+     *
+     * @param quantiles the quantiles exposed as a summary, or none to expose a histogram whose buckets are the powers
+     *                  of two from about 1 millisecond to 64 seconds
+     */
+    public void setLatencyQuantiles(double... quantiles) {
+        checkNotInitialized();
+        this.latencyQuantiles = quantiles == null ? new double[0] : quantiles.clone();
+    }
+
+    /**
+     * Defines the precision of request_seconds and dependency_request_seconds when no buckets are defined.
+     * Must be called before {@link #init(boolean, String, String, double...)}.
+     *
+     * @param precisionBits from 1 to 10, the relative error of the recorded values is at most
+     *                      2<sup>-(precisionBits + 1)</sup>
+     */
+    public void setLatencyPrecisionBits(int precisionBits) {
+        checkNotInitialized();
+        this.latencyPrecisionBits = precisionBits;
+    }
+
+    /**
+     * Estimates the latency quantiles over a sliding time window instead of since the start. The window is split
+     * into {@code ageBuckets} rotating parts, each holding its own counters, so a series takes up to
+     * {@code ageBuckets} times the memory of a cumulative one. The count and the sum remain cumulative.
+     * Must be called before {@link #init(boolean, String, String, double...)}.
+     *
+     * @param maxAgeSeconds the duration of the window, anything less than 1 for cumulative quantiles
+     * @param ageBuckets    the number of parts of the window, which slides by {@code maxAgeSeconds / ageBuckets}
+     */
+    public void setLatencyQuantileWindow(long maxAgeSeconds, int ageBuckets) {
+        checkNotInitialized();
+        if (maxAgeSeconds > 0 && ageBuckets < 1) {
+            throw new IllegalArgumentException("ageBuckets must be positive but got " + ageBuckets);
+        }
+        this.latencyWindowSeconds = Math.max(0, maxAgeSeconds);
+        this.latencyWindowAgeBuckets = ageBuckets;
+    }
+
+    /**
+     * Also records the latencies as quantiles when buckets are defined, on the request_seconds_quantiles and
+     * dependency_request_seconds_quantiles summaries, configured as the bucket-less recorder.
+     * Must be called before {@link #init(boolean, String, String, double...)}.
+     *
+     * @param enabled <code>true</code> to record the quantiles next to the histograms
+     */
+    public void setLatencyQuantilesWithBuckets(boolean enabled) {
+        checkNotInitialized();
+        this.latencyQuantilesWithBuckets = enabled;
+    }
+
+    /**
+     * Records 1 in {@code oneIn} requests on request_seconds and response_size_bytes, each recorded request standing
+     * for {@code oneIn} requests. The errors and the slow requests are always recorded.
+     * Must be called before {@link #init(boolean, String, String, double...)}.
+     *
+     * @param oneIn the sampling rate, 1 to record every request
+     * @see #setSlowRequestSeconds(double)
+     */
+    public void setRequestSampling(int oneIn) {
+        checkNotInitialized();
+        this.sampleOneIn = oneIn;
+    }
+
+    /**
+     * Adapts the sampling rate every second so that about {@code recordingsPerSecond} requests are recorded per
+     * second on request_seconds and response_size_bytes, besides the errors and the slow requests, which are always
+     * recorded. Takes precedence over {@link #setRequestSampling(int)}.
+     * Must be called before {@link #init(boolean, String, String, double...)}.
+     *
+     * @param recordingsPerSecond the budget of recordings, anything less than or equal to 0 to disable it
+     */
+    public void setAdaptiveRequestSampling(double recordingsPerSecond) {
+        checkNotInitialized();
+        this.sampleRecordingsPerSecond = recordingsPerSecond;
+    }
+
+    /**
+     * Defines the duration from which a request is always recorded when the requests are sampled.
+     * Must be called before {@link #init(boolean, String, String, double...)}.
+     *
+     * @param seconds the duration in seconds, defaults to 1
+     */
+    public void setSlowRequestSeconds(double seconds) {
+        checkNotInitialized();
+        this.slowRequestSeconds = seconds;
+    }
+
+    /**
+     * Defines how often the time spent by the filter and by the collect of a request is measured, exposed by the
+     * servlet_monitor_filter_seconds and servlet_monitor_collect_seconds metrics.
+     * Must be called before {@link #init(boolean, String, String, double...)}.
+     *
+     * @param oneIn 1 request in this many is timed, defaults to 100, anything less than 1 to never time them
+     */
+    public void setOverheadSampling(int oneIn) {
+        checkNotInitialized();
+        this.overheadSampleOneIn = oneIn;
+    }
+
+    /**
+     * Records request_size_bytes, which is recorded by default.
+     * Must be called before {@link #init(boolean, String, String, double...)}.
+     *
+     * @param enabled <code>false</code> not to register nor record request_size_bytes
+     */
+    public void setRequestSizeRecorded(boolean enabled) {
+        checkNotInitialized();
+        this.requestSizeRecorded = enabled;
+    }
+
+    /**
+     * Defines how many sanitized dependency error messages are cached.
+     * Must be called before {@link #init(boolean, String, String, double...)}.
+     *
+     * @param cacheSize the max number of cached messages, 0 to disable the cache
+     */
+    public void setErrorMessageCacheSize(int cacheSize) {
+        checkNotInitialized();
+        this.errorMessageCacheSize = cacheSize;
+    }
+
     /**
      * Initialize metric collectors
      *
-     * @param collectJvmMetrics  collect or not JVM metrics
-     * @param applicationVersion which version of your app handled the request
-     * @param dependencyErrorRegex 
-     * @param buckets            the numbers of buckets if defined
+     * @param collectJvmMetrics    collect or not JVM metrics
+     * @param applicationVersion   which version of your app handled the request
+     * @param dependencyErrorRegex the regex matching the parts removed from the dependency error messages,
+     *                             <code>null</code> to keep them unchanged
+     * @param buckets              the numbers of buckets if defined, otherwise latencies are recorded without buckets
+     *                             if enabled by {@link #setLatencyWithoutBuckets(boolean)}
+     * @throws IllegalArgumentException if the dependency error regex is invalid
      */
     public void init(boolean collectJvmMetrics, String applicationVersion, String dependencyErrorRegex, double... buckets) {
-        if (initialized) {
-            throw new IllegalStateException("The MonitorMetrics instance has already been initialized. "
-                    + "The MonitorMetrics.INSTANCE.init method must be executed only once");
+        checkNotInitialized();
+        if (dependencyErrorRegex != null) {
+            dependencyErrorSanitizer = new ErrorMessageSanitizer(dependencyErrorRegex, Integer.MAX_VALUE,
+                    errorMessageCacheSize);
         }
         if (buckets == null || buckets.length == 0) {
             noBuckets = true;
@@ -85,34 +351,96 @@ public enum MonitorMetrics {
             requestSeconds = Histogram.build().name(REQUESTS_SECONDS_METRIC_NAME)
                     .help("records in a histogram the number of http requests and their duration in seconds")
                     .labelNames("type", "status", "method", "addr", "isError", "errorMessage").buckets(buckets)
-                    .register(collectorRegistry);
+                    .create();
+            weightedRequestSeconds = WeightedHistogram.build().name(REQUESTS_SECONDS_METRIC_NAME)
+                    .help("records in a histogram the number of http requests and their duration in seconds")
+                    .labelNames("type", "status", "method", "addr", "isError", "errorMessage").buckets(buckets)
+                    .merging(requestSeconds).register(collectorRegistry);
 
             dependencyRequestSeconds = Histogram.build().name(DEPENDENCY_REQUESTS_SECONDS_METRIC_NAME)
                     .help("records in a histogram the number of requests of a dependency and their duration in seconds")
                     .labelNames("name", "type", "status", "method", "addr", "isError", "errorMessage").buckets(buckets)
                     .register(collectorRegistry);
         }
+        if ((noBuckets && latencyWithoutBuckets) || (!noBuckets && latencyQuantilesWithBuckets
+                && latencyQuantiles.length > 0)) {
+            String suffix = noBuckets ? "" : QUANTILES_SUFFIX;
+            requestLatency = latencyBuilder().name(REQUESTS_SECONDS_METRIC_NAME + suffix)
+                    .help("records the number of http requests and their duration in seconds")
+                    .labelNames("type", "status", "method", "addr", "isError", "errorMessage")
+                    .register(collectorRegistry);
+
+            dependencyRequestLatency = latencyBuilder().name(DEPENDENCY_REQUESTS_SECONDS_METRIC_NAME + suffix)
+                    .help("records the number of requests of a dependency and their duration in seconds")
+                    .labelNames("name", "type", "status", "method", "addr", "isError", "errorMessage")
+                    .register(collectorRegistry);
+        }
 
         responseSize = Counter.build().name(RESPONSE_SIZE_METRIC_NAME).help("counts the size of each http response")
                 .labelNames("type", "status", "method", "addr", "isError", "errorMessage").register(collectorRegistry);
 
+        if (requestSizeRecorded) {
+            requestSize = Counter.build().name(REQUEST_SIZE_METRIC_NAME)
+                    .help("counts the size of each http request body")
+                    .labelNames("type", "status", "method", "addr", "isError", "errorMessage")
+                    .register(collectorRegistry);
+        }
+
         dependencyUp = Gauge.build().name(DEPENDENCY_UP_METRIC_NAME)
                 .help("records if a dependency is up or down. 1 for up, 0 for down").labelNames("name")
                 .register(collectorRegistry);
 
+        dependencyCheckSeconds = Histogram.build().name(DEPENDENCY_CHECK_SECONDS_METRIC_NAME)
+                .help("records in a histogram the duration of the dependency checks in seconds").labelNames("name")
+                .register(collectorRegistry);
+
+        dependencyCheckFailures = Counter.build().name(DEPENDENCY_CHECK_FAILURES_METRIC_NAME)
+                .help("counts the dependency checks which failed or timed out, by cause").labelNames("name", "cause")
+                .register(collectorRegistry);
+
         applicationInfo = Gauge.build().name(APPLICATION_INFO_METRIC_NAME).help("static info of the application")
                 .labelNames("version").register(collectorRegistry);
         // register the application version on application_info metric
         applicationInfo.labels(applicationVersion).set(1);
 
+        seriesOverflow = Counter.build().name(SERIES_OVERFLOW_METRIC_NAME)
+                .help("counts the observations recorded on the __overflow__ series once a metric reached its max number of series")
+                .labelNames("metric").register(collectorRegistry);
+
+        if (sampleRecordingsPerSecond > 0) {
+            requestSampler = RequestSampler.adaptive(REQUEST_SAMPLE_RATE_METRIC_NAME, SAMPLE_RATE_HELP,
+                    sampleRecordingsPerSecond, slowRequestSeconds).register(collectorRegistry);
+        } else if (sampleOneIn != 1) {
+            requestSampler = RequestSampler.fixed(REQUEST_SAMPLE_RATE_METRIC_NAME, SAMPLE_RATE_HELP, sampleOneIn,
+                    slowRequestSeconds).register(collectorRegistry);
+        }
+
+        selfMetrics = new SelfMetrics(overheadSampleOneIn).register(collectorRegistry);
+
+        SeriesLimiter requestLimiter = new SeriesLimiter(maxSeries, seriesOverflow.labels(REQUESTS_SECONDS_METRIC_NAME),
+                seriesOverflow.labels(RESPONSE_SIZE_METRIC_NAME), seriesOverflow.labels(REQUEST_SIZE_METRIC_NAME));
+        requestSeriesCache = new RequestSeriesCache(weightedRequestSeconds, requestLatency, responseSize, requestSize,
+                requestLimiter);
+        dependencyLimiter = new SeriesLimiter(maxSeries, seriesOverflow.labels(DEPENDENCY_REQUESTS_SECONDS_METRIC_NAME));
+        requestsInFlight = new InFlightRequests(REQUESTS_IN_FLIGHT_METRIC_NAME,
+                "records the number of http requests being handled",
+                new SeriesLimiter(maxSeries, seriesOverflow.labels(REQUESTS_IN_FLIGHT_METRIC_NAME)))
+                .register(collectorRegistry);
+
         if (collectJvmMetrics) {
             DefaultExports.register(collectorRegistry);
         }
 
-        this.dependencyErrorRegex = dependencyErrorRegex;
         initialized = true;
     }
 
+    private void checkNotInitialized() {
+        if (initialized) {
+            throw new IllegalStateException("The MonitorMetrics instance has already been initialized. "
+                    + "The MonitorMetrics.INSTANCE.init method must be executed only once");
+        }
+    }
+
     /**
      * Collect latency metric request_seconds
      *
@@ -126,9 +454,8 @@ public enum MonitorMetrics {
      */
     public void collectTime(String type, String status, String method, String addr, boolean isError,
             String errorMessage, double elapsedSeconds) {
-        if (initialized && !noBuckets) {
-            requestSeconds.labels(type, status, method, addr, Boolean.toString(isError), errorMessage)
-                    .observe(elapsedSeconds);
+        if (initialized) {
+            requestSeriesCache.get(type, status, method, addr, isError, errorMessage).observe(elapsedSeconds);
         }
     }
 
@@ -146,11 +473,74 @@ public enum MonitorMetrics {
     public void collectSize(String type, String status, String method, String addr, boolean isError,
             String errorMessage, final long size) {
         if (initialized) {
-            MonitorMetrics.INSTANCE.responseSize
-                    .labels(type, status, method, addr, Boolean.toString(isError), errorMessage).inc(size);
+            requestSeriesCache.get(type, status, method, addr, isError, errorMessage).inc(size);
         }
     }
 
+    /**
+     * Collect both request_seconds and response_size_bytes metrics of a request with a single series lookup.
+     * When the requests are sampled, only the sampled ones are recorded, each standing for the requests skipped.
+     *
+     * @param type           which request protocol was used (e.g. grpc or http)
+     * @param status         the response status(e.g. response HTTP status code)
+     * @param method         the request method(e.g. HTTP methods GET, POST, PUT)
+     * @param addr           the requested endpoint address
+     * @param isError        if the status code reported is an error or not
+     * @param errorMessage   the error message from a request with error
+     * @param elapsedSeconds how long time did the request has executed
+     * @param size           the response content size
+     */
+    public void collectRequest(String type, String status, String method, String addr, boolean isError,
+            String errorMessage, double elapsedSeconds, long size) {
+        collectRequest(type, status, method, addr, isError, errorMessage, elapsedSeconds, size, -1);
+    }
+
+    /**
+     * Collect the request_seconds, response_size_bytes and request_size_bytes metrics of a request with a single
+     * series lookup.
+     * When the requests are sampled, only the sampled ones are recorded, each standing for the requests skipped.
+     *
+     * @param type           which request protocol was used (e.g. grpc or http)
+     * @param status         the response status(e.g. response HTTP status code)
+     * @param method         the request method(e.g. HTTP methods GET, POST, PUT)
+     * @param addr           the requested endpoint address
+     * @param isError        if the status code reported is an error or not
+     * @param errorMessage   the error message from a request with error
+     * @param elapsedSeconds how long time did the request has executed
+     * @param size           the response content size
+     * @param requestSize    the request body size, negative if unknown
+     */
+    public void collectRequest(String type, String status, String method, String addr, boolean isError,
+            String errorMessage, double elapsedSeconds, long size, long requestSize) {
+        if (initialized) {
+            int weight = requestSampler == null ? 1 : requestSampler.weight(isError, elapsedSeconds);
+            if (weight == 0) {
+                return;
+            }
+            RequestSeries series = requestSeriesCache.get(type, status, method, addr, isError, errorMessage);
+            series.observe(elapsedSeconds, weight);
+            series.inc(size, weight);
+            if (requestSize >= 0) {
+                series.incRequestSize(requestSize, weight);
+            }
+        }
+    }
+
+    /**
+     * Returns the counter of the requests in flight of a route, exposed by the requests_in_flight metric.
+     *
+     * @param method the request method(e.g. HTTP methods GET, POST, PUT)
+     * @param addr   the requested endpoint address
+     * @return the counter, to be incremented when the request starts and decremented when it ends, or
+     * <code>null</code> if the instance has not been initialized yet
+     */
+    public LongAdder inFlight(String method, String addr) {
+        if (initialized) {
+            return requestsInFlight.get(method, addr);
+        }
+        return null;
+    }
+
     /**
      * Collect latency metric dependency_request_seconds
      *
@@ -165,23 +555,152 @@ public enum MonitorMetrics {
      */
     public void collectDependencyTime(String name, String type, String status, String method, String addr,
             boolean isError, String errorMessage, double elapsedSeconds) {
-        if (initialized && !noBuckets) {
-        	String errorToWrite = errorMessage;
-        	if (dependencyErrorRegex != null) {
-        		errorToWrite = sanitizeError(errorMessage);
-        	}
-            dependencyRequestSeconds.labels(name, type, status, method, addr, Boolean.toString(isError), errorToWrite)
-                    .observe(elapsedSeconds);
+        DependencySeries series = dependencySeries(name, type, status, method, addr, isError, errorMessage);
+        if (series != null) {
+            series.observe(elapsedSeconds);
+        }
+    }
+
+    /**
+     * Returns a handle recording the requests of a dependency endpoint, timing them and resolving their series
+     * once per outcome. The handle may be obtained before the instance is initialized, it records nothing until then.
+     *
+     * @param name   the name of the dependency
+     * @param type   which request protocol is used (e.g. http, grpc, etc)
+     * @param method the request method(e.g. HTTP methods GET, POST, PUT)
+     * @param addr   the requested endpoint address
+     * @return a reusable handle, to be kept by the caller
+     */
+    public DependencyTimer dependencyTimer(String name, String type, String method, String addr) {
+        return new DependencyTimer(this, name, type, method, addr);
+    }
+
+    /**
+     * Returns the dependency_request_seconds series of the label values, the error message being sanitized, or
+     * <code>null</code> if the instance has not been initialized yet.
+     */
+    DependencySeries dependencySeries(String name, String type, String status, String method, String addr,
+            boolean isError, String errorMessage) {
+        return sanitizedDependencySeries(name, type, status, method, addr, isError,
+                sanitizeDependencyError(errorMessage));
+    }
+
+    /**
+     * Returns the dependency_request_seconds series of the label values, the error message being already sanitized,
+     * or <code>null</code> if the instance has not been initialized yet.
+     */
+    DependencySeries sanitizedDependencySeries(String name, String type, String status, String method, String addr,
+            boolean isError, String errorMessage) {
+        if (!initialized) {
+            return null;
+        }
+        return dependencyChild(name, type, status, method, addr, Boolean.toString(isError), errorMessage);
+    }
+
+    /**
+     * Returns the error message as written on the dependency_request_seconds metric.
+     */
+    String sanitizeDependencyError(String errorMessage) {
+        if (dependencyErrorSanitizer == null) {
+            return errorMessage;
+        }
+        return dependencyErrorSanitizer.sanitize(errorMessage);
+    }
+
+    /**
+     * Returns the dependency_request_seconds series of the label values, or the overflow one if the metric has
+     * reached its max number of series.
+     */
+    private DependencySeries dependencyChild(String name, String type, String status, String method, String addr,
+            String isError, String errorMessage) {
+        List<String> key = Arrays.asList(name, type, status, method, addr, isError, errorMessage);
+        DependencySeries series = dependencySeries.get(key);
+        if (series != null) {
+            return series;
         }
+        if (dependencyLimiter.tryAcquire()) {
+            series = newDependencySeries(name, type, status, method, addr, isError, errorMessage);
+            DependencySeries previous = dependencySeries.putIfAbsent(key, series);
+            if (previous != null) {
+                dependencyLimiter.release();
+                return previous;
+            }
+            return series;
+        }
+        dependencyLimiter.overflowed();
+        return dependencyOverflowChild(name, type, status, method, isError);
     }
 
-	private String sanitizeError(String errorMessage) {
-		try {
-            return errorMessage.replaceAll(this.dependencyErrorRegex, "");
-        } catch (Exception e) {
-            return "#ERROR INVALID REGEX#";
+    /**
+     * Returns the overflow series of the label values left once the addr and errorMessage labels are folded,
+     * created once so that the lookups exceeding the max number of series do not resolve it again.
+     */
+    private DependencySeries dependencyOverflowChild(String name, String type, String status, String method,
+            String isError) {
+        List<String> key = Arrays.asList(name, type, status, method, isError);
+        DependencySeries series = dependencyOverflowSeries.get(key);
+        if (series == null) {
+            series = newDependencySeries(true, name, type, status, method, SeriesLimiter.OVERFLOW_ADDR, isError, "");
+            DependencySeries previous = dependencyOverflowSeries.putIfAbsent(key, series);
+            if (previous != null) {
+                return previous;
+            }
         }
-	}
+        return series;
+    }
+
+    private DependencySeries newDependencySeries(String... labelValues) {
+        return newDependencySeries(false, labelValues);
+    }
+
+    private DependencySeries newDependencySeries(boolean overflow, String... labelValues) {
+        return new DependencySeries(
+                dependencyRequestSeconds == null ? null : dependencyRequestSeconds.labels(labelValues),
+                dependencyRequestLatency == null ? null : dependencyRequestLatency.labels(labelValues), overflow);
+    }
+
+    private LogLinearHistogram.Builder latencyBuilder() {
+        LogLinearHistogram.Builder builder = LogLinearHistogram.build()
+                .precisionBits(latencyPrecisionBits).quantiles(latencyQuantiles);
+        if (latencyWindowSeconds > 0) {
+            builder.window(latencyWindowSeconds, latencyWindowAgeBuckets);
+        }
+        return builder;
+    }
+
+    /**
+     * Add dependency to be checked asynchronously successive between the period, each check timing out after the
+     * period
+     *
+     * @param checker asynchronous dependency checker
+     * @param period  time in milliseconds between the end of a check and the start of the next one
+     */
+    public void addDependencyChecker(final AsyncDependencyChecker checker, final long period) {
+        addDependencyChecker(checker, period, period);
+    }
+
+    /**
+     * Add dependency to be checked asynchronously successive between the period. A check failing or still pending
+     * after the timeout reports the dependency down.
+     *
+     * @param checker asynchronous dependency checker
+     * @param period  time in milliseconds between the end of a check and the start of the next one
+     * @param timeout time in milliseconds after which a pending check is cancelled
+     */
+    public void addDependencyChecker(final AsyncDependencyChecker checker, final long period, final long timeout) {
+        dependencyHealth.register(checker.getDependencyName());
+        dependencyCheckerExecutor.schedule(checker, period, timeout, dependencyCheckListener);
+    }
+
+    /**
+     * Returns the results of the last checks of the dependencies added by
+     * {@link #addDependencyChecker(DependencyChecker, long, long)}, read by the health endpoint.
+     *
+     * @return the last check results
+     */
+    public DependencyHealthRegistry getDependencyHealth() {
+        return dependencyHealth;
+    }
 
 	/**
      * Cancel all scheduled dependency checkers and terminates the executor timer.
@@ -191,24 +710,26 @@ public enum MonitorMetrics {
     }
 
     /**
-     * Add dependency to be checked successive between the period
+     * Add dependency to be checked successive between the period, each check timing out after the period
      *
      * @param checker dependency checker
-     * @param period  time in milliseconds between successive task executions.
+     * @param period  time in milliseconds between the end of a check and the start of the next one
      */
     public void addDependencyChecker(final DependencyChecker checker, final long period) {
-        TimerTask task = new TimerTask() {
-            public void run() {
-                if (!initialized) {
-                    // skipping, the MonitorMetrics instance has not been initialized yet.
-                    // MonitorMetrics.INSTANCE.init must be executed once.
-                    return;
-                }
-                DependencyState state = checker.run();
-                dependencyUp.labels(checker.getDependencyName()).set(state.getValue());
-            }
-        };
-        dependencyCheckerExecutor.schedule(task, period);
+        addDependencyChecker(checker, period, period);
+    }
+
+    /**
+     * Add dependency to be checked successive between the period. A check failing or lasting more than the timeout
+     * reports the dependency down.
+     *
+     * @param checker dependency checker
+     * @param period  time in milliseconds between the end of a check and the start of the next one
+     * @param timeout time in milliseconds after which a check is interrupted
+     */
+    public void addDependencyChecker(final DependencyChecker checker, final long period, final long timeout) {
+        dependencyHealth.register(checker.getDependencyName());
+        dependencyCheckerExecutor.schedule(checker, period, timeout, dependencyCheckListener);
     }
 
     /**
@@ -0,0 +1,130 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which requests are recorded, and the servlet_monitor_request_sample_rate gauge exposing the fraction of
+ * the requests being recorded.
+ *
+ * <p>A request is recorded with a probability of 1 in N, and then stands for the N requests of its kind: its
+ * latency is observed N times and its size counted N times, so the counts, sums and rates stay unbiased. The errors
+ * and the requests slower than a threshold are always recorded, each standing for itself.
+ *
+ * <p>N is either fixed or adapted once per second to a budget of recordings per second. The adaptive rate is
+ * estimated from the weights of the recorded requests, so the requests which are not recorded cost a random number
+ * only.
+ */
+public final class RequestSampler extends Collector {
+
+    static final int MAX_ONE_IN = 1 << 20;
+    private static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+    private final String help;
+    private final double slowSeconds;
+    private final double recordingsPerSecond;
+    private final LongAdder recorded;
+    private volatile int oneIn;
+    private volatile long intervalStart;
+
+    private RequestSampler(String name, String help, int oneIn, double recordingsPerSecond, double slowSeconds) {
+        this.name = name;
+        this.help = help;
+        this.oneIn = oneIn;
+        this.recordingsPerSecond = recordingsPerSecond;
+        this.slowSeconds = slowSeconds;
+        this.recorded = recordingsPerSecond > 0 ? new LongAdder() : null;
+        this.intervalStart = System.nanoTime();
+    }
+
+    /**
+     * Creates a sampler recording 1 in {@code oneIn} requests.
+     *
+     * @param name        the name of the sample rate gauge
+     * @param help        the help of the sample rate gauge
+     * @param oneIn       the sampling rate, 1 to record every request
+     * @param slowSeconds the duration from which a request is always recorded
+     * @throws IllegalArgumentException if the rate is not positive
+     */
+    static RequestSampler fixed(String name, String help, int oneIn, double slowSeconds) {
+        if (oneIn < 1 || oneIn > MAX_ONE_IN) {
+            throw new IllegalArgumentException("oneIn must be from 1 to " + MAX_ONE_IN + " but got " + oneIn);
+        }
+        return new RequestSampler(name, help, oneIn, 0, slowSeconds);
+    }
+
+    /**
+     * Creates a sampler adapting its rate to record about {@code recordingsPerSecond} requests per second, besides
+     * the errors and the slow requests.
+     *
+     * @param name                the name of the sample rate gauge
+     * @param help                the help of the sample rate gauge
+     * @param recordingsPerSecond the budget of recordings
+     * @param slowSeconds         the duration from which a request is always recorded
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    static RequestSampler adaptive(String name, String help, double recordingsPerSecond, double slowSeconds) {
+        if (!(recordingsPerSecond > 0)) {
+            throw new IllegalArgumentException("recordingsPerSecond must be positive but got " + recordingsPerSecond);
+        }
+        return new RequestSampler(name, help, 1, recordingsPerSecond, slowSeconds);
+    }
+
+    /**
+     * Decides whether a request is recorded.
+     *
+     * @param isError        if the request ended with an error
+     * @param elapsedSeconds how long time did the request has executed
+     * @return the number of requests the recorded one stands for, or 0 if it must not be recorded
+     */
+    public int weight(boolean isError, double elapsedSeconds) {
+        if (isError || elapsedSeconds >= slowSeconds) {
+            return 1;
+        }
+        int n = oneIn;
+        if (n > 1 && ThreadLocalRandom.current().nextInt(n) != 0) {
+            return 0;
+        }
+        if (recorded != null) {
+            recorded(n, System.nanoTime());
+        }
+        return n;
+    }
+
+    /**
+     * Accounts a sampled recording of the adaptive mode, and adapts the rate once the interval is over.
+     */
+    void recorded(int weight, long now) {
+        recorded.add(weight);
+        long start = intervalStart;
+        if (now - start >= INTERVAL_NANOS) {
+            synchronized (this) {
+                if (intervalStart == start) {
+                    double rate = recorded.sumThenReset() * (double) TimeUnit.SECONDS.toNanos(1) / (now - start);
+                    oneIn = (int) Math.max(1, Math.min(MAX_ONE_IN, Math.ceil(rate / recordingsPerSecond)));
+                    intervalStart = now;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the current sampling rate, 1 in this many requests being recorded
+     */
+    int getOneIn() {
+        return oneIn;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        GaugeMetricFamily family = new GaugeMetricFamily(name, help, 1.0 / oneIn);
+        return Collections.<MetricFamilySamples>singletonList(family);
+    }
+}
@@ -0,0 +1,116 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.Counter;
+
+/**
+ * Holds the pre-resolved children of the request metrics for one combination of label values, so recording a
+ * request does not have to go through {@link io.prometheus.client.SimpleCollector#labels(String...)} again.
+ *
+ * @see RequestSeriesCache
+ */
+final class RequestSeries {
+
+    final String type;
+    final String status;
+    final String method;
+    final boolean isError;
+    final String errorMessage;
+
+    private final WeightedHistogram.Child requestSeconds;
+    private final LogLinearHistogram.Child requestLatency;
+    private final Counter.Child responseSize;
+    private final Counter.Child requestSize;
+    private final SeriesLimiter overflowLimiter;
+
+    RequestSeries(String type, String status, String method, boolean isError, String errorMessage,
+                  WeightedHistogram.Child requestSeconds, LogLinearHistogram.Child requestLatency,
+                  Counter.Child responseSize, Counter.Child requestSize, SeriesLimiter overflowLimiter) {
+        this.type = type;
+        this.status = status;
+        this.method = method;
+        this.isError = isError;
+        this.errorMessage = errorMessage;
+        this.requestSeconds = requestSeconds;
+        this.requestLatency = requestLatency;
+        this.responseSize = responseSize;
+        this.requestSize = requestSize;
+        this.overflowLimiter = overflowLimiter;
+    }
+
+    /**
+     * Checks whether this series was resolved for the given label values.
+     * The route address is not compared, it is the key of the enclosing route.
+     *
+     * @return <code>true</code> if all the label values are equal
+     */
+    boolean matches(String type, String status, String method, boolean isError, String errorMessage) {
+        return this.isError == isError
+                && equal(this.status, status)
+                && equal(this.method, method)
+                && equal(this.type, type)
+                && equal(this.errorMessage, errorMessage);
+    }
+
+    /**
+     * Records the request duration, on the request_seconds histogram and/or on its bucket-less recorder.
+     *
+     * @param elapsedSeconds how long time did the request has executed
+     */
+    void observe(double elapsedSeconds) {
+        observe(elapsedSeconds, 1);
+    }
+
+    /**
+     * Records the duration of a sampled request standing for {@code weight} requests, in a single observation.
+     *
+     * @param elapsedSeconds how long time did the request has executed
+     * @param weight         the number of requests the sampled one stands for
+     */
+    void observe(double elapsedSeconds, int weight) {
+        if (requestSeconds != null) {
+            requestSeconds.observe(elapsedSeconds, weight);
+        }
+        if (requestLatency != null) {
+            requestLatency.observe(elapsedSeconds, weight);
+        }
+    }
+
+    /**
+     * Records the response size. As it is recorded once per request, this is also where a request folded into the
+     * overflow series is reported.
+     *
+     * @param size the response content size
+     */
+    void inc(long size) {
+        inc(size, 1);
+    }
+
+    /**
+     * Records the response size of a sampled request standing for {@code weight} requests.
+     *
+     * @param size   the response content size
+     * @param weight the number of requests the sampled one stands for
+     */
+    void inc(long size, int weight) {
+        responseSize.inc(weight == 1 ? size : (double) size * weight);
+        if (overflowLimiter != null) {
+            overflowLimiter.overflowed(weight);
+        }
+    }
+
+    /**
+     * Records the request body size of a request standing for {@code weight} requests, if recorded.
+     *
+     * @param size   the request body size
+     * @param weight the number of requests the recorded one stands for
+     */
+    void incRequestSize(long size, int weight) {
+        if (requestSize != null) {
+            requestSize.inc(weight == 1 ? size : (double) size * weight);
+        }
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == b || (a != null && a.equals(b));
+    }
+}
@@ -0,0 +1,176 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.Counter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of {@link RequestSeries} keyed by route address and then by the remaining label values.
+ *
+ * <p>A lookup is a single {@link ConcurrentMap#get(Object)} by address followed by a linear scan over the few
+ * type/status/method combinations seen for that address, so recording a request in steady state allocates nothing.
+ * The series with an error message are keyed by their message first, in a map of the address, so that an address
+ * with many distinct error messages does not make every lookup scan all of them. New series are resolved once
+ * through {@link io.prometheus.client.SimpleCollector#labels(String...)} and published by copy-on-write of the
+ * combinations of their address, or of their address and error message.
+ *
+ * <p>The number of series is bounded by a {@link SeriesLimiter}: once it is full, unknown addresses and new label
+ * combinations are folded into the series of the {@link SeriesLimiter#OVERFLOW_ADDR} address, without error
+ * message, and no new route is cached.
+ */
+final class RequestSeriesCache {
+
+    private static final RequestSeries[] EMPTY = new RequestSeries[0];
+
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+    private final WeightedHistogram requestSeconds;
+    private final LogLinearHistogram requestLatency;
+    private final Counter responseSize;
+    private final Counter requestSize;
+    private final SeriesLimiter limiter;
+    private final Route overflow = new Route(SeriesLimiter.OVERFLOW_ADDR, true);
+
+    /**
+     * Creates a cache over the request metrics.
+     *
+     * @param requestSeconds the request_seconds histogram, <code>null</code> if no buckets were defined
+     * @param requestLatency the request_seconds bucket-less recorder, <code>null</code> if buckets were defined and
+     *                       no quantiles are recorded alongside them
+     * @param responseSize   the response_size_bytes counter
+     * @param limiter        bounds the number of series
+     */
+    RequestSeriesCache(WeightedHistogram requestSeconds, LogLinearHistogram requestLatency, Counter responseSize,
+                       SeriesLimiter limiter) {
+        this(requestSeconds, requestLatency, responseSize, null, limiter);
+    }
+
+    /**
+     * Creates a cache over the request metrics.
+     *
+     * @param requestSeconds the request_seconds histogram, <code>null</code> if no buckets were defined
+     * @param requestLatency the request_seconds bucket-less recorder, <code>null</code> if buckets were defined and
+     *                       no quantiles are recorded alongside them
+     * @param responseSize   the response_size_bytes counter
+     * @param requestSize    the request_size_bytes counter, <code>null</code> if not recorded
+     * @param limiter        bounds the number of series
+     */
+    RequestSeriesCache(WeightedHistogram requestSeconds, LogLinearHistogram requestLatency, Counter responseSize,
+                       Counter requestSize, SeriesLimiter limiter) {
+        this.requestSeconds = requestSeconds;
+        this.requestLatency = requestLatency;
+        this.responseSize = responseSize;
+        this.requestSize = requestSize;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Returns the series for the given label values, resolving it on the first use.
+     *
+     * @param type         which request protocol was used (e.g. grpc or http)
+     * @param status       the response status(e.g. response HTTP status code)
+     * @param method       the request method(e.g. HTTP methods GET, POST, PUT)
+     * @param addr         the requested endpoint address
+     * @param isError      if the status code reported is an error or not
+     * @param errorMessage the error message from a request with error
+     * @return the pre-resolved series
+     */
+    RequestSeries get(String type, String status, String method, String addr, boolean isError, String errorMessage) {
+        Route route = routes.get(addr);
+        if (route == null) {
+            if (addr == null) {
+                throw new IllegalArgumentException("Label cannot be null.");
+            }
+            if (limiter.isFull()) {
+                return overflow.get(type, status, method, isError, "");
+            }
+            route = new Route(addr, false);
+            Route previous = routes.putIfAbsent(addr, route);
+            if (previous != null) {
+                route = previous;
+            }
+        }
+        return route.get(type, status, method, isError, errorMessage);
+    }
+
+    /**
+     * The series already resolved for one address.
+     */
+    private final class Route {
+
+        private final String addr;
+        private final boolean isOverflow;
+        /**
+         * The series without error message.
+         */
+        private volatile RequestSeries[] series = EMPTY;
+        /**
+         * The series with an error message, by message.
+         */
+        private final ConcurrentMap<String, RequestSeries[]> errorSeries =
+                new ConcurrentHashMap<String, RequestSeries[]>();
+
+        Route(String addr, boolean isOverflow) {
+            this.addr = addr;
+            this.isOverflow = isOverflow;
+        }
+
+        RequestSeries get(String type, String status, String method, boolean isError, String errorMessage) {
+            boolean byMessage = errorMessage != null && !errorMessage.isEmpty();
+            RequestSeries found = find(byMessage ? errorSeries.get(errorMessage) : series, type, status, method,
+                    isError, errorMessage);
+            if (found != null) {
+                return found;
+            }
+            if (!isOverflow && !limiter.tryAcquire()) {
+                return overflow.get(type, status, method, isError, "");
+            }
+            synchronized (this) {
+                RequestSeries[] current = byMessage ? errorSeries.get(errorMessage) : series;
+                if (current == null) {
+                    current = EMPTY;
+                }
+                found = find(current, type, status, method, isError, errorMessage);
+                if (found != null) {
+                    if (!isOverflow) {
+                        limiter.release();
+                    }
+                    return found;
+                }
+                String isErrorLabel = Boolean.toString(isError);
+                WeightedHistogram.Child seconds = requestSeconds == null ? null
+                        : requestSeconds.labels(type, status, method, addr, isErrorLabel, errorMessage);
+                LogLinearHistogram.Child latency = requestLatency == null ? null
+                        : requestLatency.labels(type, status, method, addr, isErrorLabel, errorMessage);
+                Counter.Child size = responseSize.labels(type, status, method, addr, isErrorLabel, errorMessage);
+                Counter.Child bodySize = requestSize == null ? null
+                        : requestSize.labels(type, status, method, addr, isErrorLabel, errorMessage);
+                found = new RequestSeries(type, status, method, isError, errorMessage, seconds, latency, size,
+                        bodySize, isOverflow ? limiter : null);
+
+                RequestSeries[] grown = new RequestSeries[current.length + 1];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                grown[current.length] = found;
+                if (byMessage) {
+                    errorSeries.put(errorMessage, grown);
+                } else {
+                    series = grown;
+                }
+                return found;
+            }
+        }
+
+        private RequestSeries find(RequestSeries[] candidates, String type, String status, String method,
+                                   boolean isError, String errorMessage) {
+            if (candidates == null) {
+                return null;
+            }
+            for (RequestSeries candidate : candidates) {
+                if (candidate.matches(type, status, method, isError, errorMessage)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * The servlet_monitor_* metrics measuring the overhead of the monitor itself:
+ * <pre>
+ * {@code
+ * servlet_monitor_filter_seconds{quantile}        time spent in the filter, excluding the rest of the chain
+ * servlet_monitor_collect_seconds{quantile}       time spent recording a request
+ * servlet_monitor_scrape_seconds{quantile}        time spent rendering a scrape, excluding the writes to the scraper
+ * servlet_monitor_scrape_write_seconds{quantile}  time spent writing a scrape to the scraper
+ * servlet_monitor_scrape_bytes_total              bytes rendered by the scrapes
+ * servlet_monitor_series{family}                  series of each metric family, as of the last scrape
+ * }
+ * </pre>
+ *
+ * <p>Reading the clock costs more than most of the filter, so the filter and the collect are timed on 1 request in
+ * {@code sampleOneIn}, picked at random, each timed request standing for {@code sampleOneIn} requests. The counts
+ * and the sums therefore estimate all the requests, and the rate of a sum estimates the share of a CPU spent there.
+ * The scrapes are rare enough to be all timed.
+ *
+ * <p>The series are counted while the scrape is encoded, without collecting the metrics again: a series is a
+ * sample of a counter or a gauge, or the {@code _count} sample of a histogram or a summary.
+ */
+public final class SelfMetrics extends Collector {
+
+    private static final double[] QUANTILES = {0.5D, 0.9D, 0.99D};
+
+    private final int sampleOneIn;
+    private final LogLinearHistogram filterSeconds = histogram("servlet_monitor_filter_seconds",
+            "records the time spent in the filter, excluding the rest of the filter chain, on sampled requests");
+    private final LogLinearHistogram collectSeconds = histogram("servlet_monitor_collect_seconds",
+            "records the time spent recording the metrics of a request, on sampled requests");
+    private final LogLinearHistogram scrapeSeconds = histogram("servlet_monitor_scrape_seconds",
+            "records the time spent rendering the metrics of a scrape, excluding the writes to the scraper");
+    private final LogLinearHistogram scrapeWriteSeconds = histogram("servlet_monitor_scrape_write_seconds",
+            "records the time spent writing the metrics of a scrape to the scraper");
+    private final DoubleAdder scrapeBytes = new DoubleAdder();
+    private volatile SeriesCounts series;
+
+    /**
+     * Creates the metrics.
+     *
+     * @param sampleOneIn the filter and the collect are timed on 1 request in this many, anything less than 1 to
+     *                    never time them
+     */
+    SelfMetrics(int sampleOneIn) {
+        this.sampleOneIn = sampleOneIn;
+    }
+
+    private static LogLinearHistogram histogram(String name, String help) {
+        return LogLinearHistogram.build(name, help).quantiles(QUANTILES).create();
+    }
+
+    /**
+     * Decides whether the overhead of a request is timed.
+     *
+     * @return the number of requests the timed one stands for, or 0 if it must not be timed
+     */
+    public int sample() {
+        if (sampleOneIn < 1 || (sampleOneIn > 1 && ThreadLocalRandom.current().nextInt(sampleOneIn) != 0)) {
+            return 0;
+        }
+        return sampleOneIn;
+    }
+
+    /**
+     * Records the time spent in the filter by a timed request.
+     *
+     * @param nanos  the time spent in the filter, excluding the rest of the filter chain
+     * @param weight the number of requests the timed one stands for
+     */
+    public void observeFilter(long nanos, int weight) {
+        filterSeconds.labels().observe(nanos / NANOSECONDS_PER_SECOND, weight);
+    }
+
+    /**
+     * Records the time spent recording the metrics of a timed request.
+     *
+     * @param nanos  the time spent recording
+     * @param weight the number of requests the timed one stands for
+     */
+    public void observeCollect(long nanos, int weight) {
+        collectSeconds.labels().observe(nanos / NANOSECONDS_PER_SECOND, weight);
+    }
+
+    /**
+     * Records the render of a scrape.
+     *
+     * @param nanos  the time spent rendering, excluding the writes to the scraper
+     * @param bytes  the number of bytes rendered
+     * @param series the number of series of each metric family rendered, read when these metrics are collected
+     */
+    public void observeScrape(long nanos, long bytes, SeriesCounts series) {
+        scrapeSeconds.labels().observe(nanos / NANOSECONDS_PER_SECOND);
+        scrapeBytes.add(bytes);
+        this.series = series;
+    }
+
+    /**
+     * Records the writes of a scrape to the scraper, which depend on the network and on the scraper reading.
+     *
+     * @param nanos the time spent writing
+     */
+    public void observeScrapeWrite(long nanos) {
+        scrapeWriteSeconds.labels().observe(nanos / NANOSECONDS_PER_SECOND);
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
+        mfs.addAll(filterSeconds.collect());
+        mfs.addAll(collectSeconds.collect());
+        mfs.addAll(scrapeSeconds.collect());
+        mfs.addAll(scrapeWriteSeconds.collect());
+        mfs.add(new CounterMetricFamily("servlet_monitor_scrape_bytes_total",
+                "counts the bytes rendered by the scrapes", scrapeBytes.sum()));
+        GaugeMetricFamily seriesFamily = new GaugeMetricFamily("servlet_monitor_series",
+                "records the number of series of each metric family, as of the last scrape",
+                Collections.singletonList("family"));
+        SeriesCounts counts = series;
+        if (counts != null) {
+            counts.addTo(seriesFamily);
+        }
+        mfs.add(seriesFamily);
+        return mfs;
+    }
+
+    /**
+     * The number of series of each metric family, as counted by the last scrape.
+     */
+    public interface SeriesCounts {
+
+        /**
+         * Adds the number of series of each metric family to the gauge, labelled by the family name.
+         *
+         * @param gauge the servlet_monitor_series gauge
+         */
+        void addTo(GaugeMetricFamily gauge);
+    }
+}
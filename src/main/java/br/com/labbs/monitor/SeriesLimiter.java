@@ -0,0 +1,95 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.Counter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounds the number of series a metric family may create.
+ *
+ * <p>Once the limit is reached, new label combinations must be folded into a series whose {@code addr} label is
+ * {@link #OVERFLOW_ADDR}, and every observation recorded that way must be reported through {@link #overflowed()}.
+ */
+final class SeriesLimiter {
+
+    static final String OVERFLOW_ADDR = "__overflow__";
+
+    private final int maxSeries;
+    private final AtomicInteger series = new AtomicInteger();
+    private final Counter.Child[] overflowCounters;
+
+    /**
+     * Creates a limiter.
+     *
+     * @param maxSeries        max number of series, anything less than 1 means unlimited
+     * @param overflowCounters counters incremented for each observation folded into the overflow series
+     */
+    SeriesLimiter(int maxSeries, Counter.Child... overflowCounters) {
+        this.maxSeries = maxSeries;
+        this.overflowCounters = overflowCounters;
+    }
+
+    /**
+     * Reserves room for a new series.
+     *
+     * @return <code>false</code> if the limit has been reached and the series must be folded into the overflow one
+     */
+    boolean tryAcquire() {
+        if (maxSeries < 1) {
+            series.incrementAndGet();
+            return true;
+        }
+        for (; ; ) {
+            int current = series.get();
+            if (current >= maxSeries) {
+                return false;
+            }
+            if (series.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a reservation that was not used, e.g. when another thread created the same series first.
+     */
+    void release() {
+        series.decrementAndGet();
+    }
+
+    /**
+     * Checks whether no more series can be created.
+     *
+     * @return <code>true</code> if the limit has been reached
+     */
+    boolean isFull() {
+        return maxSeries > 0 && series.get() >= maxSeries;
+    }
+
+    /**
+     * Returns the number of series created.
+     *
+     * @return number of series, not counting the overflow ones
+     */
+    int size() {
+        return series.get();
+    }
+
+    /**
+     * Reports one observation folded into the overflow series.
+     */
+    void overflowed() {
+        overflowed(1);
+    }
+
+    /**
+     * Reports a sampled observation standing for {@code weight} observations folded into the overflow series.
+     *
+     * @param weight the number of observations the recorded one stands for
+     */
+    void overflowed(long weight) {
+        for (Counter.Child counter : overflowCounters) {
+            counter.inc(weight);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.SimpleCollector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WeightedHistogram records observations on pre-defined buckets, like {@link io.prometheus.client.Histogram}, and
+ * also records an observation standing for several ones in a single step.
+ *
+ * <p>A sampled request stands for the requests skipped around it: observing it with its weight adds the weight to its
+ * bucket and the weighted value to the sum, so the cost of a recording does not depend on the sampling rate. The
+ * family is exposed exactly as a {@link io.prometheus.client.Histogram} with the same buckets. The observations of a
+ * histogram built with the same name, labels and buckets but not registered, see {@link Builder#merging(Histogram)},
+ * can be exposed along with its own, added to the series with the same label values.
+ *
+ * <pre>
+ * {@code
+ * WeightedHistogram latency = WeightedHistogram.build().name("request_seconds").help("...")
+ *         .labelNames("addr").buckets(0.1, 0.5, 1).register(registry);
+ * latency.labels("/users").observe(0.042, 100);
+ * }
+ * </pre>
+ */
+final class WeightedHistogram extends SimpleCollector<WeightedHistogram.Child> implements Collector.Describable {
+
+    private final double[] buckets;
+    private final Histogram merged;
+
+    WeightedHistogram(Builder b) {
+        super(b);
+        for (String label : labelNames) {
+            if (label.equals("le")) {
+                throw new IllegalStateException("WeightedHistogram cannot have a label named 'le'.");
+            }
+        }
+        this.buckets = b.buckets;
+        this.merged = b.merged;
+        initializeNoLabelsChild();
+    }
+
+    public static Builder build(String name, String help) {
+        return new Builder().name(name).help(help);
+    }
+
+    public static Builder build() {
+        return new Builder();
+    }
+
+    @Override
+    protected void initializeNoLabelsChild() {
+        // called by the super constructor before the buckets are known
+        if (buckets != null) {
+            super.initializeNoLabelsChild();
+        }
+    }
+
+    @Override
+    protected Child newChild() {
+        return new Child(buckets);
+    }
+
+    /**
+     * Observe the given amount on the histogram with no labels.
+     *
+     * @param amt the amount to be observed
+     */
+    public void observe(double amt) {
+        noLabelsChild.observe(amt);
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples.Sample> samples = new ArrayList<MetricFamilySamples.Sample>();
+        List<String> bucketLabelNames = new ArrayList<String>(labelNames);
+        bucketLabelNames.add("le");
+        for (Map.Entry<List<String>, Child> c : children.entrySet()) {
+            List<String> key = c.getKey();
+            Child child = c.getValue();
+            double count = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                count += child.counts[i].sum();
+                List<String> bucketLabelValues = new ArrayList<String>(key);
+                bucketLabelValues.add(doubleToGoString(buckets[i]));
+                samples.add(new MetricFamilySamples.Sample(fullname + "_bucket", bucketLabelNames,
+                        bucketLabelValues, count));
+            }
+            samples.add(new MetricFamilySamples.Sample(fullname + "_count", labelNames, key, count));
+            samples.add(new MetricFamilySamples.Sample(fullname + "_sum", labelNames, key, child.sum.sum()));
+        }
+        if (merged != null) {
+            merge(samples, merged.collect());
+        }
+        return familySamplesList(Type.HISTOGRAM, samples);
+    }
+
+    /**
+     * Adds the value of each merged sample to the sample with the same name and label values, or appends it.
+     */
+    private static void merge(List<MetricFamilySamples.Sample> samples, List<MetricFamilySamples> mergedFamilies) {
+        Map<List<String>, Integer> indexes = null;
+        for (MetricFamilySamples family : mergedFamilies) {
+            for (MetricFamilySamples.Sample sample : family.samples) {
+                if (indexes == null) {
+                    indexes = new HashMap<List<String>, Integer>();
+                    for (int i = 0; i < samples.size(); i++) {
+                        indexes.put(key(samples.get(i)), i);
+                    }
+                }
+                Integer index = indexes.get(key(sample));
+                if (index == null) {
+                    samples.add(sample);
+                } else {
+                    MetricFamilySamples.Sample own = samples.get(index);
+                    samples.set(index, new MetricFamilySamples.Sample(own.name, own.labelNames, own.labelValues,
+                            own.value + sample.value));
+                }
+            }
+        }
+    }
+
+    private static List<String> key(MetricFamilySamples.Sample sample) {
+        List<String> key = new ArrayList<String>(sample.labelValues.size() + 1);
+        key.add(sample.name);
+        key.addAll(sample.labelValues);
+        return key;
+    }
+
+    @Override
+    public List<MetricFamilySamples> describe() {
+        return Collections.singletonList(new MetricFamilySamples(fullname, Type.HISTOGRAM, help,
+                Collections.<MetricFamilySamples.Sample>emptyList()));
+    }
+
+    public static class Builder extends SimpleCollector.Builder<Builder, WeightedHistogram> {
+
+        private double[] buckets = {.005, .01, .025, .05, .075, .1, .25, .5, .75, 1, 2.5, 5, 7.5, 10};
+        private Histogram merged;
+
+        /**
+         * Defines the upper bounds of the buckets, {@code +Inf} being added if missing.
+         *
+         * @param buckets the upper bounds in increasing order
+         * @return the builder
+         */
+        public Builder buckets(double... buckets) {
+            for (int i = 0; i < buckets.length - 1; i++) {
+                if (buckets[i] >= buckets[i + 1]) {
+                    throw new IllegalStateException("Histogram buckets must be in increasing order: "
+                            + buckets[i] + " >= " + buckets[i + 1]);
+                }
+            }
+            this.buckets = buckets.clone();
+            return this;
+        }
+
+        /**
+         * Exposes the observations of the given histogram along with the weighted ones. It must have the same name,
+         * label names and buckets, and must not be registered itself.
+         *
+         * @param histogram the histogram whose samples are added to this one's
+         * @return the builder
+         */
+        Builder merging(Histogram histogram) {
+            this.merged = histogram;
+            return this;
+        }
+
+        @Override
+        public WeightedHistogram create() {
+            if (buckets.length == 0 || buckets[buckets.length - 1] != Double.POSITIVE_INFINITY) {
+                double[] withInf = new double[buckets.length + 1];
+                System.arraycopy(buckets, 0, withInf, 0, buckets.length);
+                withInf[buckets.length] = Double.POSITIVE_INFINITY;
+                buckets = withInf;
+            }
+            return new WeightedHistogram(this);
+        }
+    }
+
+    /**
+     * The value of a single WeightedHistogram.
+     */
+    public static class Child {
+
+        private final double[] upperBounds;
+        private final LongAdder[] counts;
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Child(double[] upperBounds) {
+            this.upperBounds = upperBounds;
+            this.counts = new LongAdder[upperBounds.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Observe the given amount.
+         *
+         * @param amt the amount to be observed
+         */
+        public void observe(double amt) {
+            observe(amt, 1);
+        }
+
+        /**
+         * Observe the given amount as many times as the weight, in a single step.
+         *
+         * @param amt    the amount to be observed
+         * @param weight the number of observations the amount stands for
+         */
+        public void observe(double amt, long weight) {
+            for (int i = 0; i < upperBounds.length; i++) {
+                // +Inf is the last bucket, NaN is recorded on it
+                if (amt <= upperBounds[i] || i == upperBounds.length - 1) {
+                    counts[i].add(weight);
+                    break;
+                }
+            }
+            sum.add(weight == 1 ? amt : amt * weight);
+        }
+    }
+}
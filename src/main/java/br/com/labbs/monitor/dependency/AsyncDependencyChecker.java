@@ -0,0 +1,26 @@
+package br.com.labbs.monitor.dependency;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Defines methods that the dependency checkers performing their check asynchronously must implement, so that no
+ * thread is held while the check is in flight.
+ */
+public interface AsyncDependencyChecker {
+
+    /**
+     * Starts the check, without waiting for it, and returns the future state of the dependency.
+     *
+     * @return a stage completed with UP or DOWN, the state of the dependency, or completed exceptionally if the check
+     * failed.
+     */
+    CompletionStage<DependencyState> check();
+
+    /**
+     * Returns the name of the dependency
+     *
+     * @return The name of the dependency
+     */
+    String getDependencyName();
+
+}
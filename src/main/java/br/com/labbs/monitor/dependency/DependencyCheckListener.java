@@ -0,0 +1,17 @@
+package br.com.labbs.monitor.dependency;
+
+/**
+ * Receives the results of the dependency checks scheduled by a {@link DependencyCheckerExecutor}.
+ */
+public interface DependencyCheckListener {
+
+    /**
+     * Called once per check, when it completes, fails or times out.
+     *
+     * @param dependencyName the name of the checked dependency
+     * @param state          the state of the dependency, {@link DependencyState#DOWN} if the check failed or timed out
+     * @param elapsedSeconds how long the check lasted in seconds
+     * @param cause          why the check failed or timed out, <code>null</code> if it returned a state
+     */
+    void onCheck(String dependencyName, DependencyState state, double elapsedSeconds, Throwable cause);
+}
@@ -1,38 +1,325 @@
 package br.com.labbs.monitor.dependency;
 
-import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Executes scheduled dependency checkers.
  *
+ * <p>A single scheduler thread only triggers the checks, which run on a bounded pool of worker threads, so a slow
+ * check does not delay the others. Each checker is run with a fixed delay between the end of a check and the start
+ * of the next one, the first check being delayed by a random jitter up to its period so the checkers do not all
+ * fire together. A check lasting longer than its timeout is interrupted and reported {@link DependencyState#DOWN},
+ * as is a check throwing an exception; neither stops the following checks. The timeout and the reported duration
+ * count from the start of the check on a worker thread, not from its wait for a free worker. While an interrupted check is still
+ * running, the checks of that dependency are reported down without being run again.
+ *
+ * <p>The asynchronous checkers hold a worker thread only while starting their check. Their result is reported when
+ * the returned stage completes, and a stage still pending at the timeout is cancelled.
+ *
  * @see DependencyChecker
  */
 public class DependencyCheckerExecutor {
     private static final long START_DELAY_MILLIS = 10000L;
+    private static final int DEFAULT_THREADS = 4;
+    private static final Logger LOGGER = Logger.getLogger(DependencyCheckerExecutor.class.getName());
 
-    private Timer timer;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ThreadPoolExecutor workers;
+    private final long startDelayMillis;
 
     public DependencyCheckerExecutor() {
-        timer = new Timer("monitor-metrics-dependency-checker");
+        this(DEFAULT_THREADS);
+    }
+
+    /**
+     * Creates an executor.
+     *
+     * @param threads max number of checks running at the same time
+     */
+    public DependencyCheckerExecutor(int threads) {
+        this(threads, START_DELAY_MILLIS);
+    }
+
+    DependencyCheckerExecutor(int threads, long startDelayMillis) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1 but got " + threads);
+        }
+        this.startDelayMillis = startDelayMillis;
+        scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("monitor-metrics-dependency-scheduler"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        // at most one check per checker is queued, so the queue is bounded by the number of checkers
+        workers = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new DaemonThreadFactory("monitor-metrics-dependency-checker"));
+        workers.allowCoreThreadTimeOut(true);
     }
 
     /**
-     * Terminates the executor timer, discarding any currently scheduled tasks.
-     * Removes all cancelled tasks from the executor timer's task queue.
+     * Terminates the executor, discarding any currently scheduled tasks and interrupting the running checks.
      */
     public void cancelTasks() {
-        timer.cancel();
-        timer.purge();
+        scheduler.shutdownNow();
+        workers.shutdownNow();
     }
 
     /**
-     * Schedules the specified task for repeated <i>fixed-rate execution period</i>.
+     * Schedules the specified task for repeated <i>fixed-delay execution</i>, without timeout.
      *
      * @param task   task to be executed
-     * @param period time in milliseconds between successive task executions.
+     * @param period time in milliseconds between the end of an execution and the start of the next one
+     * @deprecated use {@link #schedule(DependencyChecker, long, long, DependencyCheckListener)}, which times the
+     * checks out
      */
+    @Deprecated
     public void schedule(final TimerTask task, final long period) {
-        timer.scheduleAtFixedRate(task, START_DELAY_MILLIS, period);
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // keeps the task scheduled
+                    LOGGER.log(Level.WARNING, "Dependency check task failed", e);
+                }
+            }
+        }, startDelayMillis + jitter(period), period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules the checker for repeated <i>fixed-delay execution</i>.
+     *
+     * @param checker  the dependency checker
+     * @param period   time in milliseconds between the end of a check and the start of the next one
+     * @param timeout  time in milliseconds after which a check is interrupted and the dependency reported down
+     * @param listener receives the result of every check
+     */
+    public void schedule(DependencyChecker checker, long period, long timeout, DependencyCheckListener listener) {
+        scheduleCheck(new ScheduledCheck(checker, null, period, timeout, listener));
+    }
+
+    /**
+     * Schedules the asynchronous checker for repeated <i>fixed-delay execution</i>.
+     *
+     * @param checker  the asynchronous dependency checker
+     * @param period   time in milliseconds between the end of a check and the start of the next one
+     * @param timeout  time in milliseconds after which a pending check is cancelled and the dependency reported down
+     * @param listener receives the result of every check
+     */
+    public void schedule(AsyncDependencyChecker checker, long period, long timeout,
+            DependencyCheckListener listener) {
+        scheduleCheck(new ScheduledCheck(null, checker, period, timeout, listener));
+    }
+
+    private void scheduleCheck(ScheduledCheck check) {
+        if (check.period <= 0 || check.timeout <= 0) {
+            throw new IllegalArgumentException("period and timeout must be positive but got " + check.period
+                    + " and " + check.timeout);
+        }
+        scheduler.schedule(check, startDelayMillis + jitter(check.period), TimeUnit.MILLISECONDS);
+    }
+
+    private static long jitter(long period) {
+        return period > 1 ? ThreadLocalRandom.current().nextLong(period) : 0;
+    }
+
+    /**
+     * Starts the checks of one checker, on the scheduler thread.
+     */
+    private final class ScheduledCheck implements Runnable {
+
+        private final DependencyChecker checker;
+        private final AsyncDependencyChecker asyncChecker;
+        private final String name;
+        private final long period;
+        private final long timeout;
+        private final DependencyCheckListener listener;
+        private CheckRun previous;
+
+        ScheduledCheck(DependencyChecker checker, AsyncDependencyChecker asyncChecker, long period, long timeout,
+                DependencyCheckListener listener) {
+            this.checker = checker;
+            this.asyncChecker = asyncChecker;
+            this.name = checker != null ? checker.getDependencyName() : asyncChecker.getDependencyName();
+            this.period = period;
+            this.timeout = timeout;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            if (previous != null && previous.running) {
+                // the previous check ignored its interruption, do not pile up another one
+                new CheckRun(this).complete(DependencyState.DOWN,
+                        new TimeoutException("The previous check is still running"), timeout / 1000D);
+                return;
+            }
+            final CheckRun checkRun = new CheckRun(this);
+            previous = checkRun;
+            try {
+                checkRun.future = workers.submit(checkRun);
+            } catch (RejectedExecutionException e) {
+                // the executor has been cancelled
+            }
+        }
+
+        /**
+         * Schedules the timeout of a check, once it has started on a worker thread.
+         */
+        ScheduledFuture<?> scheduleTimeout(final CheckRun checkRun) {
+            return scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    checkRun.timeOut();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+
+        void reschedule() {
+            try {
+                scheduler.schedule(this, period, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // the executor has been cancelled
+            }
+        }
+    }
+
+    /**
+     * One check, completed exactly once by its result or by its timeout.
+     */
+    private static final class CheckRun implements Runnable, BiConsumer<DependencyState, Throwable> {
+
+        private final ScheduledCheck check;
+        private volatile long startNanos;
+        private final AtomicBoolean completed = new AtomicBoolean();
+        volatile Future<?> future;
+        volatile ScheduledFuture<?> timeoutTask;
+        volatile boolean running;
+        volatile CompletionStage<DependencyState> stage;
+
+        CheckRun(ScheduledCheck check) {
+            this.check = check;
+        }
+
+        @Override
+        public void run() {
+            startNanos = System.nanoTime();
+            try {
+                // scheduled before the check so that its completion cancels it
+                timeoutTask = check.scheduleTimeout(this);
+            } catch (RejectedExecutionException e) {
+                // the executor has been cancelled
+                return;
+            }
+            running = true;
+            DependencyState state = null;
+            Throwable cause = null;
+            try {
+                if (check.asyncChecker != null) {
+                    CompletionStage<DependencyState> stage = check.asyncChecker.check();
+                    if (stage != null) {
+                        this.stage = stage;
+                        // reported on completion, holding no thread meanwhile
+                        stage.whenComplete(this);
+                        return;
+                    }
+                } else {
+                    state = check.checker.run();
+                }
+            } catch (Throwable t) {
+                cause = t;
+            } finally {
+                running = false;
+            }
+            accept(state, cause);
+        }
+
+        /**
+         * Completes the check with the state returned by the checker, or the exception it threw.
+         */
+        @Override
+        public void accept(DependencyState state, Throwable cause) {
+            if (cause instanceof CompletionException || cause instanceof ExecutionException) {
+                if (cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+            }
+            if (cause == null && state == null) {
+                cause = new IllegalStateException("The checker returned no state");
+            }
+            complete(cause == null ? state : DependencyState.DOWN, cause, (System.nanoTime() - startNanos) / 1e9);
+        }
+
+        void timeOut() {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            Future<?> running = future;
+            if (running != null) {
+                running.cancel(true);
+            }
+            CompletionStage<DependencyState> pending = stage;
+            if (pending != null) {
+                try {
+                    pending.toCompletableFuture().cancel(true);
+                } catch (UnsupportedOperationException e) {
+                    // the stage cannot be cancelled, its late result is ignored
+                }
+            }
+            report(DependencyState.DOWN, new TimeoutException("The check lasted more than " + check.timeout + " ms"),
+                    check.timeout / 1000D);
+        }
+
+        void complete(DependencyState state, Throwable cause, double elapsedSeconds) {
+            if (completed.compareAndSet(false, true)) {
+                report(state, cause, elapsedSeconds);
+            }
+        }
+
+        private void report(DependencyState state, Throwable cause, double elapsedSeconds) {
+            ScheduledFuture<?> timeoutTask = this.timeoutTask;
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+            }
+            try {
+                check.listener.onCheck(check.name, state, elapsedSeconds, cause);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Dependency check listener failed", e);
+            }
+            check.reschedule();
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
@@ -0,0 +1,62 @@
+package br.com.labbs.monitor.dependency;
+
+/**
+ * The result of the last check of a dependency.
+ */
+public final class DependencyHealth {
+
+    private final String name;
+    private final DependencyState state;
+    private final long checkedAtMillis;
+    private final double elapsedSeconds;
+    private final Throwable cause;
+
+    DependencyHealth(String name, DependencyState state, long checkedAtMillis, double elapsedSeconds,
+            Throwable cause) {
+        this.name = name;
+        this.state = state;
+        this.checkedAtMillis = checkedAtMillis;
+        this.elapsedSeconds = elapsedSeconds;
+        this.cause = cause;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the state of the dependency, <code>null</code> if it has not been checked yet
+     */
+    public DependencyState getState() {
+        return state;
+    }
+
+    /**
+     * @return when the last check completed, in milliseconds since the epoch, or -1 if it has not been checked yet
+     */
+    public long getCheckedAtMillis() {
+        return checkedAtMillis;
+    }
+
+    /**
+     * @param nowMillis the current time in milliseconds since the epoch
+     * @return how long ago the last check completed in milliseconds, or -1 if it has not been checked yet
+     */
+    public long getAgeMillis(long nowMillis) {
+        return checkedAtMillis < 0 ? -1 : Math.max(0, nowMillis - checkedAtMillis);
+    }
+
+    /**
+     * @return how long the last check lasted in seconds
+     */
+    public double getElapsedSeconds() {
+        return elapsedSeconds;
+    }
+
+    /**
+     * @return why the last check failed, <code>null</code> if it returned a state
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+}
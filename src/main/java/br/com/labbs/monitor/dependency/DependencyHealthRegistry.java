@@ -0,0 +1,44 @@
+package br.com.labbs.monitor.dependency;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the result of the last check of each dependency, so it can be read without checking the dependency again.
+ */
+public final class DependencyHealthRegistry implements DependencyCheckListener {
+
+    private final ConcurrentMap<String, DependencyHealth> healths = new ConcurrentHashMap<String, DependencyHealth>();
+
+    /**
+     * Registers a dependency which has not been checked yet, keeping its last result if it has.
+     *
+     * @param dependencyName the name of the dependency
+     */
+    public void register(String dependencyName) {
+        healths.putIfAbsent(dependencyName, new DependencyHealth(dependencyName, null, -1, 0, null));
+    }
+
+    @Override
+    public void onCheck(String dependencyName, DependencyState state, double elapsedSeconds, Throwable cause) {
+        healths.put(dependencyName,
+                new DependencyHealth(dependencyName, state, System.currentTimeMillis(), elapsedSeconds, cause));
+    }
+
+    /**
+     * @param dependencyName the name of the dependency
+     * @return the last result of the dependency, <code>null</code> if it is not registered
+     */
+    public DependencyHealth get(String dependencyName) {
+        return healths.get(dependencyName);
+    }
+
+    /**
+     * @return the last result of every registered dependency
+     */
+    public Collection<DependencyHealth> getAll() {
+        return Collections.unmodifiableCollection(healths.values());
+    }
+}
@@ -0,0 +1,443 @@
+package br.com.labbs.monitor.exporter;
+
+import br.com.labbs.monitor.SelfMetrics;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.GaugeMetricFamily;
+import io.prometheus.client.exporter.common.TextFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encodes metric families as UTF-8 bytes in the 0.0.4 text format or in the OpenMetrics 1.0.0 text format.
+ *
+ * <p>The family headers and the escaped name and labels of each series are encoded once, the first time they are
+ * written, and cached as bytes. A scrape then only copies those bytes and formats the sample values into the
+ * buffer, so it allocates per sample, not per name, label or char. Integral values are formatted without
+ * allocating at all. A cached series not written for {@value #SWEEP_INTERVAL} scrapes is evicted.
+ *
+ * <p>Both formats are written from the same cache: the name and labels of a series are cached once, and only the
+ * separators that differ between the formats are written per scrape.
+ *
+ * <p>The series of each family are counted while it is written, and kept on the cached family until the next
+ * scrape: a series is a sample of a counter or a gauge, or the {@code _count} sample of a histogram or a summary.
+ *
+ * <p>In the OpenMetrics format, counter families are named without their {@code _total} suffix, which is carried
+ * by their samples. The client library does not record when a series is created, so no {@code _created} sample is
+ * exposed.
+ */
+final class ExpositionEncoder implements SelfMetrics.SeriesCounts {
+
+    static final String OPEN_METRICS_CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    static final int SWEEP_INTERVAL = 16;
+
+    private static final String TOTAL_SUFFIX = "_total";
+    private static final byte[] TOTAL = ascii(TOTAL_SUFFIX);
+    private static final byte[] TEXT_LABELS_END = ascii(",} ");
+    private static final byte[] OPEN_METRICS_LABELS_END = ascii("} ");
+    private static final byte[] EOF = ascii("# EOF\n");
+    private static final byte[] NAN = ascii("NaN");
+    private static final byte[] POSITIVE_INFINITY = ascii("+Inf");
+    private static final byte[] NEGATIVE_INFINITY = ascii("-Inf");
+    private static final byte[] LONG_MIN_VALUE = ascii(Long.toString(Long.MIN_VALUE));
+    /**
+     * Integral values up to 2<sup>53</sup> are exactly representable as longs.
+     */
+    private static final double MAX_INTEGRAL = 9007199254740992D;
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<String, Family>();
+    private final ConcurrentMap<String, ConcurrentMap<List<String>, Series>> series =
+            new ConcurrentHashMap<String, ConcurrentMap<List<String>, Series>>();
+    private final AtomicLong scrapes = new AtomicLong();
+    private volatile long lastWritten;
+
+    /**
+     * @param openMetrics <code>true</code> for the OpenMetrics text format, <code>false</code> for the 0.0.4 one
+     * @return the content type of the encoded exposition
+     */
+    static String contentType(boolean openMetrics) {
+        return openMetrics ? OPEN_METRICS_CONTENT_TYPE : TextFormat.CONTENT_TYPE_004;
+    }
+
+    /**
+     * Writes the given metric families.
+     *
+     * @param out         the stream the bytes are written to, not flushed nor closed
+     * @param buffer      the buffer the bytes are encoded into before being written to the stream, at least 32 bytes
+     * @param mfs         the metric families
+     * @param openMetrics <code>true</code> for the OpenMetrics text format, <code>false</code> for the 0.0.4 one
+     * @throws IOException if the stream fails
+     */
+    void write(OutputStream out, byte[] buffer, Enumeration<MetricFamilySamples> mfs, boolean openMetrics)
+            throws IOException {
+        long scrape = scrapes.incrementAndGet();
+        Sink sink = new Sink(out, buffer);
+        while (mfs.hasMoreElements()) {
+            MetricFamilySamples metricFamilySamples = mfs.nextElement();
+            Family family = family(metricFamilySamples);
+            family.lastScrape = scrape;
+            sink.write(family.header(openMetrics));
+            boolean counter = openMetrics && family.type == Collector.Type.COUNTER;
+            boolean countSamplesOnly = family.type == Collector.Type.HISTOGRAM
+                    || family.type == Collector.Type.SUMMARY;
+            long seriesCount = 0;
+            for (MetricFamilySamples.Sample sample : metricFamilySamples.samples) {
+                Series s = series(family, sample);
+                if (!countSamplesOnly || s.countSample) {
+                    seriesCount++;
+                }
+                s.lastScrape = scrape;
+                sink.write(s.name);
+                if (counter && !s.total) {
+                    sink.write(TOTAL);
+                }
+                if (s.labels == null) {
+                    sink.write((byte) ' ');
+                } else {
+                    sink.write(s.labels);
+                    sink.write(openMetrics ? OPEN_METRICS_LABELS_END : TEXT_LABELS_END);
+                }
+                writeDouble(sink, sample.value);
+                if (sample.timestampMs != null) {
+                    sink.write((byte) ' ');
+                    writeTimestamp(sink, sample.timestampMs, openMetrics);
+                }
+                sink.write((byte) '\n');
+            }
+            family.series = seriesCount;
+        }
+        if (openMetrics) {
+            sink.write(EOF);
+        }
+        sink.flush();
+        lastWritten = scrape;
+        if (scrape % SWEEP_INTERVAL == 0) {
+            sweep(scrape - SWEEP_INTERVAL);
+        }
+    }
+
+    private Family family(MetricFamilySamples metricFamilySamples) {
+        Family family = families.get(metricFamilySamples.name);
+        if (family == null || !family.describes(metricFamilySamples)) {
+            family = new Family(metricFamilySamples);
+            families.put(metricFamilySamples.name, family);
+        }
+        return family;
+    }
+
+    /**
+     * Adds the series counted by the last scrape of the families it wrote.
+     */
+    @Override
+    public void addTo(GaugeMetricFamily gauge) {
+        long last = lastWritten;
+        for (Family family : families.values()) {
+            if (family.lastScrape >= last) {
+                gauge.addMetric(Collections.singletonList(family.name), family.series);
+            }
+        }
+    }
+
+    private Series series(Family family, MetricFamilySamples.Sample sample) {
+        ConcurrentMap<List<String>, Series> byLabels = series.get(sample.name);
+        if (byLabels == null) {
+            byLabels = new ConcurrentHashMap<List<String>, Series>();
+            ConcurrentMap<List<String>, Series> previous = series.putIfAbsent(sample.name, byLabels);
+            if (previous != null) {
+                byLabels = previous;
+            }
+        }
+        Series s = byLabels.get(sample.labelValues);
+        if (s == null || !s.labelNames.equals(sample.labelNames)) {
+            s = new Series(family, sample);
+            byLabels.put(sample.labelValues, s);
+        }
+        return s;
+    }
+
+    private void sweep(long before) {
+        for (Iterator<Family> it = families.values().iterator(); it.hasNext(); ) {
+            if (it.next().lastScrape < before) {
+                it.remove();
+            }
+        }
+        for (Iterator<ConcurrentMap<List<String>, Series>> byName = series.values().iterator(); byName.hasNext(); ) {
+            ConcurrentMap<List<String>, Series> byLabels = byName.next();
+            for (Iterator<Series> it = byLabels.values().iterator(); it.hasNext(); ) {
+                if (it.next().lastScrape < before) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static void writeTimestamp(Sink sink, long timestampMs, boolean openMetrics) throws IOException {
+        if (!openMetrics) {
+            writeLong(sink, timestampMs);
+            return;
+        }
+        // OpenMetrics timestamps are in seconds
+        long seconds = Math.floorDiv(timestampMs, 1000L);
+        int millis = (int) Math.floorMod(timestampMs, 1000L);
+        writeLong(sink, seconds);
+        sink.ensure(4);
+        byte[] buf = sink.buffer;
+        int pos = sink.position;
+        buf[pos++] = '.';
+        buf[pos++] = (byte) ('0' + millis / 100);
+        buf[pos++] = (byte) ('0' + millis / 10 % 10);
+        buf[pos++] = (byte) ('0' + millis % 10);
+        sink.position = pos;
+    }
+
+    /**
+     * Writes a value as a Go float: integral values as {@code 42.0}, the special values as {@code NaN}, {@code +Inf}
+     * and {@code -Inf}, and the others as {@link Double#toString(double)} does.
+     */
+    static void writeDouble(Sink sink, double value) throws IOException {
+        if (value == Math.rint(value) && Math.abs(value) <= MAX_INTEGRAL) {
+            if (value == 0 && Double.doubleToRawLongBits(value) != 0) {
+                sink.write((byte) '-');
+            }
+            writeLong(sink, (long) value);
+            sink.ensure(2);
+            sink.buffer[sink.position++] = '.';
+            sink.buffer[sink.position++] = '0';
+        } else if (value != value) {
+            sink.write(NAN);
+        } else if (value == Double.POSITIVE_INFINITY) {
+            sink.write(POSITIVE_INFINITY);
+        } else if (value == Double.NEGATIVE_INFINITY) {
+            sink.write(NEGATIVE_INFINITY);
+        } else {
+            String formatted = Double.toString(value);
+            sink.ensure(formatted.length());
+            byte[] buf = sink.buffer;
+            int pos = sink.position;
+            for (int i = 0; i < formatted.length(); i++) {
+                buf[pos++] = (byte) formatted.charAt(i);
+            }
+            sink.position = pos;
+        }
+    }
+
+    static void writeLong(Sink sink, long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            sink.write(LONG_MIN_VALUE);
+            return;
+        }
+        sink.ensure(20);
+        byte[] buf = sink.buffer;
+        int pos = sink.position;
+        if (value < 0) {
+            buf[pos++] = '-';
+            value = -value;
+        }
+        int start = pos;
+        do {
+            buf[pos++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte digit = buf[i];
+            buf[i] = buf[j];
+            buf[j] = digit;
+        }
+        sink.position = pos;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * The cached headers of a metric family, encoded in each format the first time it is written in it.
+     */
+    private static final class Family {
+
+        final String name;
+        final String help;
+        final Collector.Type type;
+        private volatile byte[] textHeader;
+        private volatile byte[] openMetricsHeader;
+        volatile long lastScrape;
+        volatile long series;
+
+        Family(MetricFamilySamples metricFamilySamples) {
+            this.name = metricFamilySamples.name;
+            this.help = metricFamilySamples.help;
+            this.type = metricFamilySamples.type;
+        }
+
+        byte[] header(boolean openMetrics) {
+            byte[] header = openMetrics ? openMetricsHeader : textHeader;
+            if (header == null) {
+                header = encodeHeader(openMetrics);
+                if (openMetrics) {
+                    openMetricsHeader = header;
+                } else {
+                    textHeader = header;
+                }
+            }
+            return header;
+        }
+
+        private byte[] encodeHeader(boolean openMetrics) {
+            StringBuilder sb = new StringBuilder();
+            if (openMetrics) {
+                String familyName = name;
+                if (type == Collector.Type.COUNTER && familyName.endsWith(TOTAL_SUFFIX)) {
+                    familyName = familyName.substring(0, familyName.length() - TOTAL_SUFFIX.length());
+                }
+                sb.append("# TYPE ").append(familyName).append(' ').append(typeString(type, true)).append('\n');
+                sb.append("# HELP ").append(familyName).append(' ');
+                appendEscaped(sb, help, true);
+                sb.append('\n');
+            } else {
+                sb.append("# HELP ").append(name).append(' ');
+                appendEscaped(sb, help, false);
+                sb.append('\n');
+                sb.append("# TYPE ").append(name).append(' ').append(typeString(type, false)).append('\n');
+            }
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        boolean describes(MetricFamilySamples metricFamilySamples) {
+            return type == metricFamilySamples.type && help.equals(metricFamilySamples.help);
+        }
+    }
+
+    /**
+     * The cached name of a sample and its labels, from the opening brace to the last label value, without the
+     * separators that differ between the formats.
+     */
+    private static final class Series {
+
+        final List<String> labelNames;
+        final byte[] name;
+        final boolean total;
+        final byte[] labels;
+        final boolean countSample;
+        volatile long lastScrape;
+
+        Series(Family family, MetricFamilySamples.Sample sample) {
+            this.labelNames = sample.labelNames;
+            this.countSample = sample.name.equals(family.name + "_count");
+            this.name = sample.name.getBytes(StandardCharsets.UTF_8);
+            this.total = sample.name.endsWith(TOTAL_SUFFIX);
+            if (sample.labelNames.isEmpty()) {
+                this.labels = null;
+            } else {
+                StringBuilder sb = new StringBuilder();
+                sb.append('{');
+                for (int i = 0; i < sample.labelNames.size(); ++i) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    sb.append(sample.labelNames.get(i)).append("=\"");
+                    appendEscaped(sb, sample.labelValues.get(i), true);
+                    sb.append('"');
+                }
+                this.labels = sb.toString().getBytes(StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private static void appendEscaped(StringBuilder sb, String s, boolean escapeQuotes) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\"':
+                    sb.append(escapeQuotes ? "\\\"" : "\"");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+
+    private static String typeString(Collector.Type type, boolean openMetrics) {
+        switch (type) {
+            case GAUGE:
+                return "gauge";
+            case COUNTER:
+                return "counter";
+            case SUMMARY:
+                return "summary";
+            case HISTOGRAM:
+                return "histogram";
+            default:
+                return openMetrics ? "unknown" : "untyped";
+        }
+    }
+
+    /**
+     * The buffer the bytes of one scrape are encoded into, written to the stream when full.
+     */
+    static final class Sink {
+
+        private final OutputStream out;
+        final byte[] buffer;
+        int position;
+
+        Sink(OutputStream out, byte[] buffer) {
+            this.out = out;
+            this.buffer = buffer;
+        }
+
+        void write(byte b) throws IOException {
+            if (position == buffer.length) {
+                flushBuffer();
+            }
+            buffer[position++] = b;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            if (bytes.length > buffer.length - position) {
+                flushBuffer();
+                if (bytes.length > buffer.length) {
+                    out.write(bytes);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        /**
+         * Makes room for the given number of bytes, at most the buffer length.
+         */
+        void ensure(int length) throws IOException {
+            if (length > buffer.length - position) {
+                flushBuffer();
+            }
+        }
+
+        void flush() throws IOException {
+            flushBuffer();
+        }
+
+        private void flushBuffer() throws IOException {
+            if (position > 0) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+    }
+}
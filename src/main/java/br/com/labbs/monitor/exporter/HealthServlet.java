@@ -0,0 +1,170 @@
+package br.com.labbs.monitor.exporter;
+
+import br.com.labbs.monitor.MonitorMetrics;
+import br.com.labbs.monitor.dependency.DependencyHealth;
+import br.com.labbs.monitor.dependency.DependencyHealthRegistry;
+import br.com.labbs.monitor.dependency.DependencyState;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Answers health and readiness probes from the results of the last dependency checks, without checking the
+ * dependencies again.
+ *
+ * <p>The response is {@code 200 OK} when every critical dependency was up at its last check, and
+ * {@code 503 Service Unavailable} otherwise. The {@code critical-dependencies} init parameter lists the names of
+ * the critical dependencies separated by commas, all the dependencies being critical by default. With the
+ * {@code max-age} init parameter, in milliseconds, a critical dependency whose last check is older is also counted
+ * as down.
+ *
+ * <p>A dependency is not checked before the start delay of the checker executor and the jitter of its first check
+ * have elapsed. Until then, a critical dependency counts as down, so the response is
+ * {@code 503 Service Unavailable} at startup, as a readiness probe expects. With {@code UP} as the
+ * {@code unchecked-state} init parameter, e.g. for a liveness probe, it counts as up until its first check. A
+ * critical dependency listed without checker counts as down in both cases.
+ *
+ * <p>The body lists the state, the age of the last check and the criticality of every dependency as JSON.
+ */
+public class HealthServlet extends HttpServlet {
+
+    private static final String CRITICAL_DEPENDENCIES_PARAM = "critical-dependencies";
+    private static final String MAX_AGE_PARAM = "max-age";
+    private static final String UNCHECKED_STATE_PARAM = "unchecked-state";
+    private static final String UNKNOWN = "UNKNOWN";
+
+    private Set<String> criticalDependencies;
+    private long maxAgeMillis = -1;
+    private DependencyState uncheckedState = DependencyState.DOWN;
+
+    /**
+     * {@inheritDoc}
+     * {@link HttpServlet#init()}
+     */
+    @Override
+    public void init() {
+        String critical = getInitParameter(CRITICAL_DEPENDENCIES_PARAM);
+        if (isNotEmpty(critical)) {
+            criticalDependencies = new LinkedHashSet<String>();
+            for (String name : critical.split(",")) {
+                if (isNotEmpty(name)) {
+                    criticalDependencies.add(name.trim());
+                }
+            }
+        }
+        String maxAge = getInitParameter(MAX_AGE_PARAM);
+        if (isNotEmpty(maxAge)) {
+            maxAgeMillis = Long.parseLong(maxAge.trim());
+        }
+        String unchecked = getInitParameter(UNCHECKED_STATE_PARAM);
+        if (isNotEmpty(unchecked)) {
+            uncheckedState = DependencyState.valueOf(unchecked.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link HttpServlet#doGet(HttpServletRequest, HttpServletResponse)}
+     */
+    @Override
+    protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+        DependencyHealthRegistry registry = MonitorMetrics.INSTANCE.getDependencyHealth();
+        long now = System.currentTimeMillis();
+        List<DependencyHealth> healths = new ArrayList<DependencyHealth>(registry.getAll());
+        Collections.sort(healths, new Comparator<DependencyHealth>() {
+            @Override
+            public int compare(DependencyHealth a, DependencyHealth b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+
+        boolean up = true;
+        StringBuilder dependencies = new StringBuilder();
+        for (DependencyHealth health : healths) {
+            boolean critical = isCritical(health.getName());
+            boolean stale = isStale(health, now);
+            DependencyState state = health.getState() == null ? uncheckedState : health.getState();
+            if (critical && (state != DependencyState.UP || stale)) {
+                up = false;
+            }
+            appendDependency(dependencies, health.getName(), health.getState(), health.getAgeMillis(now), stale,
+                    critical);
+        }
+        if (criticalDependencies != null) {
+            // a critical dependency without checker is never up
+            for (String name : criticalDependencies) {
+                if (registry.get(name) == null) {
+                    up = false;
+                    appendDependency(dependencies, name, null, -1, false, true);
+                }
+            }
+        }
+
+        resp.setStatus(up ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        resp.setContentType("application/json;charset=utf-8");
+        resp.setHeader("Cache-Control", "no-store");
+        PrintWriter writer = resp.getWriter();
+        try {
+            writer.write("{\"status\":\"");
+            writer.write(up ? DependencyState.UP.name() : DependencyState.DOWN.name());
+            writer.write("\",\"dependencies\":[");
+            writer.write(dependencies.toString());
+            writer.write("]}");
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private boolean isCritical(String name) {
+        return criticalDependencies == null || criticalDependencies.contains(name);
+    }
+
+    private boolean isStale(DependencyHealth health, long now) {
+        return maxAgeMillis >= 0 && health.getState() != null && health.getAgeMillis(now) > maxAgeMillis;
+    }
+
+    private static void appendDependency(StringBuilder sb, String name, DependencyState state, long ageMillis,
+            boolean stale, boolean critical) {
+        if (sb.length() > 0) {
+            sb.append(',');
+        }
+        sb.append("{\"name\":");
+        appendJsonString(sb, name);
+        sb.append(",\"state\":\"").append(state == null ? UNKNOWN : state.name()).append('"');
+        if (ageMillis >= 0) {
+            sb.append(",\"ageMillis\":").append(ageMillis);
+        }
+        sb.append(",\"stale\":").append(stale);
+        sb.append(",\"critical\":").append(critical).append('}');
+    }
+
+    private static void appendJsonString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    private static boolean isNotEmpty(String s) {
+        return s != null && s.trim().length() != 0;
+    }
+}
@@ -1,34 +1,112 @@
 package br.com.labbs.monitor.exporter;
 
 import br.com.labbs.monitor.MonitorMetrics;
-import io.prometheus.client.exporter.common.TextFormat;
+import br.com.labbs.monitor.SelfMetrics;
+import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Provides a simple way of exposing the metrics values.
+ *
+ * <p>By default every scrape renders the metrics. With the {@code cache-ttl} init parameter, in milliseconds,
+ * concurrent scrapes share a single render and its bytes are reused for that long. The
+ * {@code max-concurrent-scrapes} init parameter answers {@code 503 Service Unavailable} to the scrapes exceeding it.
+ *
+ * <p>The exposition is encoded as UTF-8 straight to the response output stream, through a buffer reused by the
+ * scrapes served on the same thread. It is compressed with gzip when the scraper accepts it.
+ *
+ * <p>The OpenMetrics text format is served to the scrapers whose {@code Accept} header prefers it to the 0.0.4
+ * text format, which remains the default.
  */
 public class MetricsServlet extends HttpServlet {
 
+    private static final String CACHE_TTL_PARAM = "cache-ttl";
+    private static final String MAX_CONCURRENT_SCRAPES_PARAM = "max-concurrent-scrapes";
+    private static final String GZIP = "gzip";
+    private static final String OPEN_METRICS_MEDIA_TYPE = "application/openmetrics-text";
+    private static final String TEXT_MEDIA_TYPE = "text/plain";
+    private static final int GZIPPED = 1;
+    private static final int OPEN_METRICS = 2;
+    private static final int BUFFER_SIZE = 8192;
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>();
+
+    private final ExpositionEncoder encoder = new ExpositionEncoder();
+    /**
+     * Indexed by the combination of the {@link #GZIPPED} and {@link #OPEN_METRICS} flags of the variant.
+     */
+    private SharedRender[] sharedRenders;
+    private Semaphore scrapePermits;
+
+    /**
+     * {@inheritDoc}
+     * {@link HttpServlet#init()}
+     */
+    @Override
+    public void init() {
+        String cacheTtl = getInitParameter(CACHE_TTL_PARAM);
+        if (isNotEmpty(cacheTtl)) {
+            long ttlMillis = Long.parseLong(cacheTtl.trim());
+            sharedRenders = new SharedRender[(GZIPPED | OPEN_METRICS) + 1];
+            for (int i = 0; i < sharedRenders.length; i++) {
+                final int variant = i;
+                sharedRenders[i] = new SharedRender(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException {
+                        return render(variant);
+                    }
+                }, ttlMillis);
+            }
+        }
+        String maxConcurrentScrapes = getInitParameter(MAX_CONCURRENT_SCRAPES_PARAM);
+        if (isNotEmpty(maxConcurrentScrapes)) {
+            int permits = Integer.parseInt(maxConcurrentScrapes.trim());
+            if (permits > 0) {
+                scrapePermits = new Semaphore(permits);
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      * {@link HttpServlet#doGet(HttpServletRequest, HttpServletResponse)}
      */
     @Override
     protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
-        resp.setStatus(HttpServletResponse.SC_OK);
-        resp.setContentType(TextFormat.CONTENT_TYPE_004);
-
-        Writer writer = resp.getWriter();
+        if (scrapePermits != null && !scrapePermits.tryAcquire()) {
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many concurrent scrapes");
+            return;
+        }
         try {
-            TextFormat.write004(writer, MonitorMetrics.INSTANCE.collectorRegistry.metricFamilySamples());
-            writer.flush();
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.addHeader("Vary", "Accept, Accept-Encoding");
+            int variant = 0;
+            if (prefersOpenMetrics(req.getHeader("Accept"))) {
+                variant |= OPEN_METRICS;
+            }
+            resp.setContentType(ExpositionEncoder.contentType((variant & OPEN_METRICS) != 0));
+            if (acceptsGzip(req.getHeader("Accept-Encoding"))) {
+                variant |= GZIPPED;
+                resp.setHeader("Content-Encoding", GZIP);
+            }
+            if (sharedRenders != null) {
+                writeShared(resp, sharedRenders[variant]);
+            } else {
+                write(resp, variant);
+            }
         } finally {
-            writer.close();
+            if (scrapePermits != null) {
+                scrapePermits.release();
+            }
         }
     }
 
@@ -41,4 +119,187 @@ public class MetricsServlet extends HttpServlet {
         doGet(req, resp);
     }
 
+    private void write(final HttpServletResponse resp, int variant) throws IOException {
+        ServletOutputStream output = resp.getOutputStream();
+        long writeNanos = 0;
+        try {
+            writeNanos = writeExposition(output, variant, true);
+        } finally {
+            long closeStart = System.nanoTime();
+            output.close();
+            writeNanos += System.nanoTime() - closeStart;
+        }
+        observeWrite(writeNanos);
+    }
+
+    private void writeShared(final HttpServletResponse resp, SharedRender render) throws IOException {
+        byte[] body = render.get();
+        resp.setContentLength(body.length);
+        ServletOutputStream output = resp.getOutputStream();
+        long start = System.nanoTime();
+        try {
+            output.write(body);
+            output.flush();
+        } finally {
+            output.close();
+        }
+        observeWrite(System.nanoTime() - start);
+    }
+
+    private static void observeWrite(long nanos) {
+        SelfMetrics selfMetrics = MonitorMetrics.INSTANCE.selfMetrics;
+        if (selfMetrics != null) {
+            selfMetrics.observeScrapeWrite(nanos);
+        }
+    }
+
+    private byte[] render(int variant) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        writeExposition(bytes, variant, false);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the exposition of all the registered metrics, without closing the output, and records its render on
+     * the servlet_monitor_scrape_* metrics. When streamed to the scraper, the render is encoded and written in
+     * turns, so the time spent writing to the output is timed and left out of the render.
+     *
+     * @return the time spent writing to the output if timed, otherwise 0
+     */
+    private long writeExposition(OutputStream output, int variant, boolean timeWrites) throws IOException {
+        long start = System.nanoTime();
+        byte[] buffer = BUFFERS.get();
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+            BUFFERS.set(buffer);
+        }
+        CountingOutputStream counted = new CountingOutputStream(output, timeWrites);
+        GZIPOutputStream compressed = (variant & GZIPPED) != 0 ? new GZIPOutputStream(counted, BUFFER_SIZE) : null;
+        try {
+            encoder.write(compressed != null ? compressed : counted, buffer,
+                    MonitorMetrics.INSTANCE.collectorRegistry.metricFamilySamples(), (variant & OPEN_METRICS) != 0);
+            if (compressed != null) {
+                compressed.finish();
+            }
+        } finally {
+            if (compressed != null) {
+                // releases the native deflater
+                compressed.close();
+            }
+        }
+        SelfMetrics selfMetrics = MonitorMetrics.INSTANCE.selfMetrics;
+        if (selfMetrics != null) {
+            selfMetrics.observeScrape(System.nanoTime() - start - counted.writeNanos, counted.count, encoder);
+        }
+        return counted.writeNanos;
+    }
+
+    /**
+     * Checks whether an {@code Accept-Encoding} header value accepts gzip, i.e. lists it without a zero weight.
+     *
+     * @param acceptEncoding the header value, may be <code>null</code>
+     * @return <code>true</code> if the response may be compressed with gzip
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        return Math.max(weight(acceptEncoding, GZIP), weight(acceptEncoding, "x-gzip")) > 0;
+    }
+
+    /**
+     * Checks whether an {@code Accept} header value prefers the OpenMetrics text format to the 0.0.4 text format.
+     *
+     * @param accept the header value, may be <code>null</code>
+     * @return <code>true</code> if the OpenMetrics text format is to be served
+     */
+    static boolean prefersOpenMetrics(String accept) {
+        double openMetrics = weight(accept, OPEN_METRICS_MEDIA_TYPE);
+        return openMetrics > 0 && openMetrics >= weight(accept, TEXT_MEDIA_TYPE);
+    }
+
+    /**
+     * Returns the highest weight given to a value in a header listing weighted values, such as {@code Accept} or
+     * {@code Accept-Encoding}.
+     *
+     * @param header the header value, may be <code>null</code>
+     * @param value  the value, compared ignoring case and parameters other than the weight
+     * @return the weight from 0 to 1, 1 if the value is listed without weight, or -1 if it is not listed
+     */
+    private static double weight(String header, String value) {
+        double weight = -1;
+        if (header == null) {
+            return weight;
+        }
+        for (String element : header.split(",")) {
+            String[] params = element.split(";");
+            if (!value.equalsIgnoreCase(params[0].trim())) {
+                continue;
+            }
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            weight = Math.max(weight, q);
+        }
+        return weight;
+    }
+
+    private static boolean isNotEmpty(String s) {
+        return s != null && s.trim().length() != 0;
+    }
+
+    /**
+     * Counts the bytes written, optionally timing the writes, and lets the gzip stream be closed, to release its
+     * deflater, without closing the response output stream.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private final boolean timed;
+        private long count;
+        private long writeNanos;
+
+        CountingOutputStream(OutputStream out, boolean timed) {
+            super(out);
+            this.timed = timed;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = timed ? System.nanoTime() : 0;
+            out.write(b);
+            count++;
+            if (timed) {
+                writeNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = timed ? System.nanoTime() : 0;
+            out.write(b, off, len);
+            count += len;
+            if (timed) {
+                writeNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = timed ? System.nanoTime() : 0;
+            out.flush();
+            if (timed) {
+                writeNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
 }
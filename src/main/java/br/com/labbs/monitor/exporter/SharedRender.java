@@ -0,0 +1,95 @@
+package br.com.labbs.monitor.exporter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Shares the rendering of the exposition between concurrent scrapes.
+ *
+ * <p>The first scrape arriving when there is no usable render performs it, while the scrapes arriving in the
+ * meantime wait for its result instead of rendering again. The rendered bytes are then reused until the TTL
+ * expires. A failed render is not reused.
+ */
+final class SharedRender {
+
+    private final Callable<byte[]> renderer;
+    private final long ttlNanos;
+    private Render current;
+
+    /**
+     * Creates a shared render.
+     *
+     * @param renderer  renders the exposition
+     * @param ttlMillis how long the rendered bytes are reused, 0 to share only the render in flight
+     */
+    SharedRender(Callable<byte[]> renderer, long ttlMillis) {
+        this.renderer = renderer;
+        this.ttlNanos = ttlMillis * 1000000L;
+    }
+
+    /**
+     * Returns the rendered exposition, rendering it if there is none in flight or still fresh.
+     *
+     * @return the rendered bytes, shared by concurrent callers and not to be modified
+     * @throws IOException if the render fails or the thread is interrupted while waiting for it
+     */
+    byte[] get() throws IOException {
+        Render render;
+        boolean owner = false;
+        synchronized (this) {
+            render = current;
+            if (render == null || render.isExpired(System.nanoTime())) {
+                render = new Render(renderer);
+                current = render;
+                owner = true;
+            }
+        }
+        if (owner) {
+            render.run();
+        }
+        try {
+            return render.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the metrics render");
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                if (current == render) {
+                    current = null;
+                }
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private final class Render extends FutureTask<byte[]> {
+
+        private volatile long completedAt;
+
+        Render(Callable<byte[]> renderer) {
+            super(renderer);
+        }
+
+        @Override
+        protected void done() {
+            completedAt = System.nanoTime();
+        }
+
+        boolean isExpired(long now) {
+            return isDone() && now - completedAt >= ttlNanos;
+        }
+    }
+}
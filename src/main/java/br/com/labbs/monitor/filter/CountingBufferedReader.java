@@ -0,0 +1,122 @@
+package br.com.labbs.monitor.filter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * A {@link BufferedReader} that counts the bytes the chars read from the request body were decoded from, and
+ * provide methods to retrieve that amount.
+ *
+ * <p>Every read is delegated to the container's reader in a single call, and the chars read are counted as encoded
+ * in the character encoding of the request, as the {@link CountingPrintWriter} counts the chars written. The
+ * terminator of a line read by {@link #readLine()} is counted as a single {@code '\n'}, and a skipped char as a
+ * single byte, so those counts are estimates. The chars read again after a {@link #reset()} are not counted twice.
+ */
+public class CountingBufferedReader extends BufferedReader {
+
+    private final BufferedReader reader;
+    private final EncodedByteCounter counter;
+    private long markedCount;
+    private boolean finished;
+
+    /**
+     * Creates an instance of {@link CountingBufferedReader}
+     *
+     * @param reader            {@link BufferedReader}
+     * @param characterEncoding the encoding of the request, UTF-8 if <code>null</code> or unsupported
+     */
+    public CountingBufferedReader(BufferedReader reader, String characterEncoding) {
+        // the chars are buffered by the container's reader
+        super(reader, 1);
+        this.reader = reader;
+        this.counter = new EncodedByteCounter(characterEncoding);
+        DebugUtil.debug("CountingBufferedReader init");
+    }
+
+    /**
+     * Returns the number of bytes read.
+     *
+     * @return amount of bytes read
+     */
+    public long getCount() {
+        return counter.getCount();
+    }
+
+    /**
+     * @return <code>true</code> once the end of the body has been read
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = reader.read();
+        if (c >= 0) {
+            counter.add((char) c);
+        } else {
+            finished = true;
+        }
+        return c;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = reader.read(cbuf, off, len);
+        if (n > 0) {
+            counter.add(cbuf, off, n);
+        } else if (n < 0) {
+            finished = true;
+        }
+        return n;
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        String line = reader.readLine();
+        if (line != null) {
+            counter.add(line, 0, line.length());
+            counter.add('\n');
+        } else {
+            finished = true;
+        }
+        return line;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = reader.skip(n);
+        if (skipped > 0) {
+            counter.addBytes(skipped);
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return reader.ready();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return reader.markSupported();
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        reader.mark(readAheadLimit);
+        markedCount = counter.getCount();
+    }
+
+    @Override
+    public void reset() throws IOException {
+        reader.reset();
+        counter.rewind(markedCount);
+        finished = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
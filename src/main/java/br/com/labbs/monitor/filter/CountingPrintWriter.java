@@ -1,27 +1,46 @@
 package br.com.labbs.monitor.filter;
 
 import java.io.PrintWriter;
-import java.util.Locale;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A {@link PrintWriter} that counts the bytes written and provide methods to retrieve that amount.
  *
+ * <p>The bytes are counted for the character encoding of the response. UTF-8 and the single-byte encodings are
+ * counted without encoding the chars, ASCII chars being counted by blocks, and surrogate pairs, even split between
+ * two writes, as the 4 bytes they are encoded into. Unpaired surrogates count as the single byte of their
+ * replacement. Integers, longs, booleans and chars are counted without allocating, and so are the doubles and
+ * floats printed as an integral value below 10<sup>7</sup> or as a special value. The other doubles and floats are
+ * formatted to be counted. The other encodings are counted by encoding the chars into a scratch buffer.
+ *
  * @author rogerio
  */
 public class CountingPrintWriter extends PrintWriter {
 
-    private final int newLine = count(System.getProperty("line.separator"));
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
     private final PrintWriter writer;
-    private long count;
+    private final EncodedByteCounter counter;
 
     /**
-     * Creates an instance of {@link CountingPrintWriter}
+     * Creates an instance of {@link CountingPrintWriter} counting the bytes as encoded in UTF-8
      *
      * @param writer {@link PrintWriter}
      */
     public CountingPrintWriter(PrintWriter writer) {
+        this(writer, StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * Creates an instance of {@link CountingPrintWriter}
+     *
+     * @param writer            {@link PrintWriter}
+     * @param characterEncoding the encoding of the response, UTF-8 if <code>null</code> or unsupported
+     */
+    public CountingPrintWriter(PrintWriter writer, String characterEncoding) {
         super(writer);
         this.writer = writer;
+        this.counter = new EncodedByteCounter(characterEncoding);
         DebugUtil.debug("CountingPrintWriter init");
     }
 
@@ -31,113 +50,124 @@ public class CountingPrintWriter extends PrintWriter {
      * @return amount of bytes written
      */
     public long getCount() {
-        return count;
+        return counter.getCount();
     }
 
-    private void sum(CharSequence str) {
-        if (str == null) {
-            return;
-        }
-        int sum = 0;
-        for (int i = 0; i < str.length(); i++) {
-            char aChar = str.charAt(i);
-            sum += CountingPrintWriter.this.count(aChar);
-        }
-        count += sum;
+    private void sum(CharSequence s, int start, int end) {
+        counter.add(s, start, end);
     }
 
-    private void sum(char[] chars) {
-        if (chars == null) {
-            return;
-        }
-
-        int sum = 0;
-        for (char aChar : chars) {
-            sum += CountingPrintWriter.this.count(aChar);
-        }
-        count += sum;
+    private void sum(char[] chars, int off, int len) {
+        counter.add(chars, off, len);
     }
 
-    private void sumNewLine() {
-        count += newLine;
+    private void sum(char c) {
+        counter.add(c);
     }
 
-    private void sumPrintLn(CharSequence s) {
-        sum(s);
-        sumNewLine();
+    private void sumNewLine() {
+        if (counter.isAsciiCompatible()) {
+            counter.addBytes(LINE_SEPARATOR.length());
+        } else {
+            counter.addEncoded(LINE_SEPARATOR);
+        }
     }
 
-    private void sumPrintLn(char[] chars) {
-        sum(chars);
-        sumNewLine();
+    private static int stringSize(long l) {
+        if (l == Long.MIN_VALUE) {
+            return 20;
+        }
+        long abs = Math.abs(l);
+        int size = l < 0 ? 2 : 1;
+        for (long p = 10; p <= abs; p *= 10) {
+            size++;
+            if (p > Long.MAX_VALUE / 10) {
+                break;
+            }
+        }
+        return size;
     }
 
-    private int count(CharSequence str) {
-        if (str == null) {
-            return 0;
+    /**
+     * Returns the length of {@link Double#toString(double)}, which {@link Float#toString(float)} shares for the same
+     * values, when it is an integral value below 10<sup>7</sup> followed by {@code .0} or a special value, or -1 for
+     * the values that must be formatted to be counted.
+     */
+    private static int integralStringSize(double d) {
+        if (d != d) {
+            return 3;
+        }
+        if (Double.isInfinite(d)) {
+            return d > 0 ? 8 : 9;
         }
-        int sum = 0;
-        for (int i = 0; i < str.length(); i++) {
-            char aChar = str.charAt(i);
-            sum += CountingPrintWriter.this.count(aChar);
+        if (d == Math.rint(d) && Math.abs(d) < 1e7) {
+            int size = stringSize((long) d) + 2;
+            return d == 0 && Double.doubleToRawLongBits(d) != 0 ? size + 1 : size;
         }
-        return sum;
+        return -1;
     }
 
-    private int count(char aChar) {
-        if ((aChar >= 0x0001) && (aChar <= 0x007F)) {
-            return 1;
+    private void sumFloating(double d, boolean isFloat) {
+        int size = integralStringSize(d);
+        if (size >= 0 && counter.isAsciiCompatible()) {
+            counter.addBytes(size);
         } else {
-            return (aChar > 0x07FF) ? 3 : 2;
+            String s = isFloat ? String.valueOf((float) d) : String.valueOf(d);
+            sum(s, 0, s.length());
         }
     }
 
     @Override
     public void write(String s) {
         this.writer.write(s);
-        sum(s);
+        sum(s, 0, s.length());
     }
 
     @Override
     public void write(char[] buf) {
         this.writer.write(buf);
-        sum(buf);
+        sum(buf, 0, buf.length);
     }
 
     @Override
     public void write(int c) {
         this.writer.write(c);
-        count += CountingPrintWriter.this.count((char) c);
+        sum((char) c);
     }
 
     @Override
     public void write(String s, int off, int len) {
         this.writer.write(s, off, len);
-        sum(s);
+        sum(s, off, off + len);
     }
 
     @Override
     public void write(char[] buf, int off, int len) {
         this.writer.write(buf, off, len);
-        sum(buf);
+        sum(buf, off, len);
     }
 
     @Override
     public PrintWriter append(CharSequence csq) {
-        sum(csq);
-        return this.writer.append(csq);
+        CharSequence s = csq == null ? "null" : csq;
+        this.writer.append(s);
+        sum(s, 0, s.length());
+        return this;
     }
 
     @Override
     public PrintWriter append(char c) {
-        count += CountingPrintWriter.this.count(c);
-        return this.writer.append(c);
+        this.writer.append(c);
+        sum(c);
+        return this;
     }
 
     @Override
     public PrintWriter append(CharSequence csq, int start, int end) {
-        sum(csq);
-        return this.writer.append(csq, start, end);
+        CharSequence s = csq == null ? "null" : csq;
+        this.writer.append(s, start, end);
+        sum(s, start, end);
+        return this;
     }
 
     @Override
@@ -155,78 +185,68 @@ public class CountingPrintWriter extends PrintWriter {
         this.writer.flush();
     }
 
-    @Override
-    public PrintWriter format(String format, Object... args) {
-        return this.writer.format(format, args);
-    }
-
-    @Override
-    public PrintWriter format(Locale l, String format, Object... args) {
-        return this.writer.format(l, format, args);
-    }
-
     @Override
     public void print(Object obj) {
-        this.writer.print(obj);
-        sum(String.valueOf(obj));
+        write(String.valueOf(obj));
     }
 
     @Override
     public void print(String s) {
-        this.writer.print(s);
-        sum(s);
+        write(String.valueOf(s));
     }
 
     @Override
     public void print(boolean b) {
         this.writer.print(b);
-        sum(String.valueOf(b));
+        if (counter.isAsciiCompatible()) {
+            counter.addBytes(b ? 4 : 5);
+        } else {
+            counter.addEncoded(String.valueOf(b));
+        }
     }
 
     @Override
     public void print(char c) {
         this.writer.print(c);
-        count += count(c);
+        sum(c);
     }
 
     @Override
     public void print(char[] s) {
         this.writer.print(s);
-        sum(s);
+        sum(s, 0, s.length);
     }
 
     @Override
     public void print(double d) {
         this.writer.print(d);
-        sum(String.valueOf(d));
+        sumFloating(d, false);
     }
 
     @Override
     public void print(float f) {
         this.writer.print(f);
-        sum(String.valueOf(f));
+        sumFloating(f, true);
     }
 
     @Override
     public void print(int i) {
         this.writer.print(i);
-        sum(String.valueOf(i));
+        if (counter.isAsciiCompatible()) {
+            counter.addBytes(stringSize(i));
+        } else {
+            counter.addEncoded(String.valueOf(i));
+        }
     }
 
     @Override
     public void print(long l) {
         this.writer.print(l);
-        sum(String.valueOf(l));
-    }
-
-    @Override
-    public PrintWriter printf(String format, Object... args) {
-        return this.writer.printf(format, args);
-    }
-
-    @Override
-    public PrintWriter printf(Locale l, String format, Object... args) {
-        return this.writer.printf(l, format, args);
+        if (counter.isAsciiCompatible()) {
+            counter.addBytes(stringSize(l));
+        } else {
+            counter.addEncoded(String.valueOf(l));
+        }
     }
 
     @Override
@@ -237,56 +257,57 @@ public class CountingPrintWriter extends PrintWriter {
 
     @Override
     public void println(Object x) {
-        this.writer.println(x);
-        sumPrintLn(String.valueOf(x));
+        println(String.valueOf(x));
     }
 
     @Override
     public void println(String x) {
-        this.writer.println(x);
-        sumPrintLn(String.valueOf(x));
+        String s = String.valueOf(x);
+        this.writer.println(s);
+        sum(s, 0, s.length());
+        sumNewLine();
     }
 
     @Override
     public void println(boolean x) {
-        this.writer.println(x);
-        sumPrintLn(String.valueOf(x));
+        print(x);
+        println();
     }
 
     @Override
     public void println(char x) {
-        this.writer.println(x);
-        sumPrintLn(String.valueOf(x));
+        print(x);
+        println();
     }
 
     @Override
     public void println(char[] x) {
-        this.writer.println(x);
-        sumPrintLn(x);
+        print(x);
+        println();
     }
 
     @Override
     public void println(double x) {
-        this.writer.println(x);
-        sumPrintLn(String.valueOf(x));
+        print(x);
+        println();
     }
 
     @Override
     public void println(float x) {
-        this.writer.println(x);
-        sumPrintLn(String.valueOf(x));
+        print(x);
+        println();
     }
 
     @Override
     public void println(int x) {
-        this.writer.println(x);
-        sumPrintLn(String.valueOf(x));
+        print(x);
+        println();
     }
 
     @Override
     public void println(long x) {
-        this.writer.println(x);
-        sumPrintLn(String.valueOf(x));
+        print(x);
+        println();
     }
 
     @Override
@@ -0,0 +1,209 @@
+package br.com.labbs.monitor.filter;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ServletInputStream} that counts the bytes read from the request body and provide methods to retrieve
+ * that amount.
+ *
+ * <p>Every read is delegated to the container's stream in a single call and counted from its result, so bulk
+ * reads, line reads and {@link ByteBuffer} reads reach it unchanged. A {@link ReadListener} is registered on the
+ * container's stream as is: it is notified by the container and reads through this stream, where it is counted.
+ * The bytes read again after a {@link #reset()} are not counted twice.
+ */
+public class CountingServletInputStream extends ServletInputStream {
+
+    private final ServletInputStream servletInputStream;
+    private long count;
+    private long markedCount;
+
+    public CountingServletInputStream(ServletInputStream input) {
+        this.servletInputStream = input;
+        DebugUtil.debug("CountingServletInputStream init");
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#read()}
+     */
+    @Override
+    public int read() throws IOException {
+        int b = servletInputStream.read();
+        if (b >= 0) {
+            count++;
+        }
+        return b;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#read(byte[], int, int)}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = servletInputStream.read(b, off, len);
+        if (n > 0) {
+            count += n;
+        }
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#read(ByteBuffer)}
+     */
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        int n = servletInputStream.read(buffer);
+        if (n > 0) {
+            count += n;
+        }
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#readLine(byte[], int, int)}
+     */
+    @Override
+    public int readLine(byte[] b, int off, int len) throws IOException {
+        int n = servletInputStream.readLine(b, off, len);
+        if (n > 0) {
+            count += n;
+        }
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#readAllBytes()}
+     */
+    @Override
+    public byte[] readAllBytes() throws IOException {
+        byte[] bytes = servletInputStream.readAllBytes();
+        count += bytes.length;
+        return bytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#readNBytes(int)}
+     */
+    @Override
+    public byte[] readNBytes(int len) throws IOException {
+        byte[] bytes = servletInputStream.readNBytes(len);
+        count += bytes.length;
+        return bytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#readNBytes(byte[], int, int)}
+     */
+    @Override
+    public int readNBytes(byte[] b, int off, int len) throws IOException {
+        int n = servletInputStream.readNBytes(b, off, len);
+        count += n;
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#skip(long)}
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = servletInputStream.skip(n);
+        if (skipped > 0) {
+            count += skipped;
+        }
+        return skipped;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#available()}
+     */
+    @Override
+    public int available() throws IOException {
+        return servletInputStream.available();
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#markSupported()}
+     */
+    @Override
+    public boolean markSupported() {
+        return servletInputStream.markSupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#mark(int)}
+     */
+    @Override
+    public synchronized void mark(int readlimit) {
+        servletInputStream.mark(readlimit);
+        markedCount = count;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#reset()}
+     */
+    @Override
+    public synchronized void reset() throws IOException {
+        servletInputStream.reset();
+        count = markedCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#isFinished()}
+     */
+    @Override
+    public boolean isFinished() {
+        return servletInputStream.isFinished();
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#isReady()}
+     */
+    @Override
+    public boolean isReady() {
+        return servletInputStream.isReady();
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#setReadListener(ReadListener)}
+     */
+    @Override
+    public void setReadListener(ReadListener readListener) {
+        servletInputStream.setReadListener(readListener);
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletInputStream#close()}
+     */
+    @Override
+    public void close() throws IOException {
+        servletInputStream.close();
+    }
+
+    /**
+     * Returns the number of bytes read from the {@link ServletInputStream}
+     *
+     * @return number of bytes read from the request body
+     */
+    public long getByteCount() {
+        return count;
+    }
+}
@@ -3,22 +3,23 @@ package br.com.labbs.monitor.filter;
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.WriteListener;
 
-import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * A {@link ServletOutputStream} that counts the bytes written in the response and provide
  * methods to retrieve that amount.
+ *
+ * <p>Every write is counted and delegated to the container's stream in a single call, so bulk writes and
+ * {@link ByteBuffer} writes reach it unchanged.
  */
 public class CountingServletOutputStream extends ServletOutputStream {
 
-    private final CountingOutputStream output;
     private final ServletOutputStream servletOutputStream;
+    private long count;
 
     public CountingServletOutputStream(ServletOutputStream output) {
         this.servletOutputStream = output;
-        this.output = new CountingOutputStream(output);
         DebugUtil.debug("CountingServletOutputStream init");
     }
 
@@ -28,7 +29,33 @@ public class CountingServletOutputStream extends ServletOutputStream {
      */
     @Override
     public void write(int b) throws IOException {
-        output.write(b);
+        servletOutputStream.write(b);
+        count++;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletOutputStream#write(byte[], int, int)}
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        servletOutputStream.write(b, off, len);
+        count += len;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link ServletOutputStream#write(ByteBuffer)}
+     */
+    @Override
+    public void write(ByteBuffer buffer) throws IOException {
+        int remaining = buffer.remaining();
+        try {
+            servletOutputStream.write(buffer);
+        } finally {
+            // a non-blocking write may not consume the whole buffer
+            count += remaining - buffer.remaining();
+        }
     }
 
     /**
@@ -37,7 +64,7 @@ public class CountingServletOutputStream extends ServletOutputStream {
      */
     @Override
     public void flush() throws IOException {
-        output.flush();
+        servletOutputStream.flush();
     }
 
     /**
@@ -66,7 +93,7 @@ public class CountingServletOutputStream extends ServletOutputStream {
      */
     @Override
     public void close() throws IOException {
-        output.close();
+        servletOutputStream.close();
     }
 
     /**
@@ -75,56 +102,6 @@ public class CountingServletOutputStream extends ServletOutputStream {
      * @return number of bytes written to the response
      */
     public long getByteCount() {
-        return output.getCount();
-    }
-
-    /**
-     * Copyright (C) 2007 The Guava Authors
-     * An OutputStream that counts the number of bytes written.
-     *
-     * @author Chris Nokleberg
-     * @since 1.0
-     */
-    static final class CountingOutputStream extends FilterOutputStream {
-
-        private long count;
-
-        /**
-         * Wraps another output stream, counting the number of bytes written.
-         *
-         * @param out the output stream to be wrapped
-         */
-        public CountingOutputStream(OutputStream out) {
-            //check not null
-            super(out);
-        }
-
-        /**
-         * Returns the number of bytes written.
-         */
-        public long getCount() {
-            return count;
-        }
-
-        @Override
-        public void write(byte[] b, int off, int len) throws IOException {
-            out.write(b, off, len);
-            count += len;
-        }
-
-        @Override
-        public void write(int b) throws IOException {
-            out.write(b);
-            count++;
-        }
-
-        // Overriding close() because FilterOutputStream's close() method pre-JDK8 has bad behavior:
-        // it silently ignores any exception thrown by flush(). Instead, just close the delegate stream.
-        // It should flush itself if necessary.
-        @Override
-        public void close() throws IOException {
-            out.close();
-        }
+        return count;
     }
-
 }
@@ -13,6 +13,8 @@ import java.io.PrintWriter;
  */
 public class CountingServletResponse extends HttpServletResponseWrapper {
 
+    private static final String CONTENT_LENGTH = "Content-Length";
+
     private final HttpServletResponse response;
     private CountingServletOutputStream output;
     private CountingPrintWriter writer;
@@ -46,7 +48,7 @@ public class CountingServletResponse extends HttpServletResponseWrapper {
     @Override
     public PrintWriter getWriter() throws IOException {
         if (writer == null) {
-            writer = new CountingPrintWriter(response.getWriter());
+            writer = new CountingPrintWriter(response.getWriter(), response.getCharacterEncoding());
         }
         return writer;
     }
@@ -75,6 +77,27 @@ public class CountingServletResponse extends HttpServletResponseWrapper {
         return count;
     }
 
+    /**
+     * Returns the {@code Content-Length} of a response not wrapped for counting, as reported by its header.
+     *
+     * @param response response
+     * @return the declared length, or -1 if the header is missing or invalid
+     */
+    static long getDeclaredLength(HttpServletResponse response) {
+        return parseLength(response.getHeader(CONTENT_LENGTH));
+    }
+
+    private static long parseLength(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     /**
      * Returns the range of status code.
      * The first digit of the status code followed by XX suffix.
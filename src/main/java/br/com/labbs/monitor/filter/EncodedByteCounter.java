@@ -0,0 +1,260 @@
+package br.com.labbs.monitor.filter;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * Counts the bytes chars are encoded into, without encoding them for UTF-8 and the single-byte encodings.
+ *
+ * <p>ASCII chars are counted by blocks, and surrogate pairs, even split between two calls, as the 4 bytes they are
+ * encoded into in UTF-8. Unpaired surrogates count as the single byte of their replacement. The other encodings are
+ * counted by encoding the chars into a scratch buffer.
+ */
+final class EncodedByteCounter {
+
+    private final Charset charset;
+    private final boolean utf8;
+    private final boolean singleByte;
+    private CharsetEncoder encoder;
+    private ByteBuffer scratch;
+    private long count;
+    private boolean pendingHighSurrogate;
+
+    /**
+     * Creates a counter.
+     *
+     * @param characterEncoding the encoding of the chars, UTF-8 if <code>null</code> or unsupported
+     */
+    EncodedByteCounter(String characterEncoding) {
+        this.charset = charset(characterEncoding);
+        this.utf8 = StandardCharsets.UTF_8.equals(charset);
+        this.singleByte = !utf8 && charset.newEncoder().maxBytesPerChar() == 1;
+    }
+
+    /**
+     * @return the number of bytes counted
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * Restores a previous count, e.g. when the chars counted since are about to be read again.
+     *
+     * @param count the count to restore
+     */
+    void rewind(long count) {
+        this.count = count;
+        this.pendingHighSurrogate = false;
+    }
+
+    /**
+     * @return <code>true</code> if an ASCII char is encoded into one byte, so ASCII text may be counted by its length
+     */
+    boolean isAsciiCompatible() {
+        return utf8 || singleByte;
+    }
+
+    /**
+     * Counts bytes known without encoding, such as the length of ASCII text in an ASCII compatible encoding.
+     *
+     * @param bytes the number of bytes
+     */
+    void addBytes(long bytes) {
+        count += bytes;
+    }
+
+    /**
+     * Counts the bytes of a string encoded, as such, in any encoding.
+     *
+     * @param s the string
+     */
+    void addEncoded(String s) {
+        count += countEncoded(CharBuffer.wrap(s));
+    }
+
+    private static Charset charset(String characterEncoding) {
+        if (characterEncoding != null) {
+            try {
+                return Charset.forName(characterEncoding);
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                DebugUtil.debug("Unsupported encoding ", characterEncoding);
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Counts the bytes of a range of chars.
+     *
+     * @param s     the chars
+     * @param start the index of the first char
+     * @param end   the index after the last char
+     */
+    void add(CharSequence s, int start, int end) {
+        if (utf8) {
+            count += countUtf8(s, start, end);
+        } else if (singleByte) {
+            count += countSingleByte(s, start, end);
+        } else {
+            count += countEncoded(CharBuffer.wrap(s, start, end));
+        }
+    }
+
+    /**
+     * Counts the bytes of a range of chars.
+     *
+     * @param chars the chars
+     * @param off   the index of the first char
+     * @param len   the number of chars
+     */
+    void add(char[] chars, int off, int len) {
+        if (utf8) {
+            count += countUtf8(chars, off, off + len);
+        } else if (singleByte) {
+            count += countSingleByte(chars, off, off + len);
+        } else {
+            count += countEncoded(CharBuffer.wrap(chars, off, len));
+        }
+    }
+
+    /**
+     * Counts the bytes of a char, a high surrogate being counted with the char following it.
+     *
+     * @param c the char
+     */
+    void add(char c) {
+        if (utf8) {
+            count += countUtf8(c);
+        } else if (singleByte) {
+            count += countSingleByte(c);
+        } else {
+            count += countEncoded(CharBuffer.wrap(String.valueOf(c)));
+        }
+    }
+
+    private long countUtf8(CharSequence s, int start, int end) {
+        long sum = 0;
+        int i = start;
+        while (i < end) {
+            // ASCII fast path, 4 chars at a time
+            while (i + 4 <= end && !pendingHighSurrogate
+                    && (s.charAt(i) | s.charAt(i + 1) | s.charAt(i + 2) | s.charAt(i + 3)) < 0x80) {
+                sum += 4;
+                i += 4;
+            }
+            if (i < end) {
+                sum += countUtf8(s.charAt(i++));
+            }
+        }
+        return sum;
+    }
+
+    private long countUtf8(char[] chars, int start, int end) {
+        long sum = 0;
+        int i = start;
+        while (i < end) {
+            // ASCII fast path, 4 chars at a time
+            while (i + 4 <= end && !pendingHighSurrogate
+                    && (chars[i] | chars[i + 1] | chars[i + 2] | chars[i + 3]) < 0x80) {
+                sum += 4;
+                i += 4;
+            }
+            if (i < end) {
+                sum += countUtf8(chars[i++]);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Counts the bytes of a char encoded in UTF-8. A high surrogate is counted with the char following it, as the 4
+     * bytes of the pair, or as the replacement byte if it is not followed by a low surrogate.
+     */
+    private int countUtf8(char c) {
+        if (pendingHighSurrogate) {
+            pendingHighSurrogate = false;
+            if (Character.isLowSurrogate(c)) {
+                return 4;
+            }
+            return 1 + countUtf8(c);
+        }
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800) {
+            return 2;
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = true;
+            return 0;
+        } else if (Character.isLowSurrogate(c)) {
+            return 1;
+        }
+        return 3;
+    }
+
+    private long countSingleByte(CharSequence s, int start, int end) {
+        long sum = end - start;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (Character.isSurrogate(c) || pendingHighSurrogate) {
+                sum += countSingleByte(c) - 1;
+            }
+        }
+        return sum;
+    }
+
+    private long countSingleByte(char[] chars, int start, int end) {
+        long sum = end - start;
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            if (Character.isSurrogate(c) || pendingHighSurrogate) {
+                sum += countSingleByte(c) - 1;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Counts the bytes of a char encoded in a single-byte encoding, where a surrogate pair is replaced by one byte.
+     */
+    private int countSingleByte(char c) {
+        if (pendingHighSurrogate) {
+            pendingHighSurrogate = false;
+            if (Character.isLowSurrogate(c)) {
+                return 0;
+            }
+        }
+        if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = true;
+        }
+        return 1;
+    }
+
+    /**
+     * Counts the bytes of chars encoded with the response encoding. The encoder keeps its state between calls, so
+     * a byte order mark is counted once and a surrogate pair split between two writes is counted as a pair.
+     */
+    private long countEncoded(CharBuffer in) {
+        if (encoder == null) {
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            scratch = ByteBuffer.allocate(1024);
+        }
+        long sum = 0;
+        CoderResult result;
+        do {
+            result = encoder.encode(in, scratch, false);
+            sum += scratch.position();
+            scratch.clear();
+        } while (result.isOverflow());
+        return sum;
+    }
+}
@@ -5,9 +5,11 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import java.util.logging.Logger;
+import java.util.concurrent.atomic.LongAdder;
 
+import br.com.labbs.monitor.ErrorMessageSanitizer;
 import br.com.labbs.monitor.MonitorMetrics;
+import br.com.labbs.monitor.SelfMetrics;
 import io.prometheus.client.SimpleTimer;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
@@ -47,8 +49,25 @@ public class MetricsCollectorFilter implements Filter {
 
     private static final String EXPORT_JVM_METRICS_PARAM = "export-jvm-metrics";
     private static final String BUCKET_CONFIG_PARAM = "buckets";
+    private static final String LATENCY_EXPOSITION_PARAM = "latency-exposition";
+    private static final String LATENCY_QUANTILES_PARAM = "latency-quantiles";
+    private static final String LATENCY_PRECISION_BITS_PARAM = "latency-precision-bits";
+    private static final String LATENCY_QUANTILES_WINDOW_PARAM = "latency-quantiles-window";
+    private static final String LATENCY_QUANTILES_AGE_BUCKETS_PARAM = "latency-quantiles-age-buckets";
+    private static final String LATENCY_QUANTILES_WITH_BUCKETS_PARAM = "latency-quantiles-with-buckets";
+    private static final int DEFAULT_LATENCY_QUANTILES_AGE_BUCKETS = 5;
+    private static final String SAMPLE_ONE_IN_PARAM = "sample-one-in";
+    private static final String SAMPLE_BUDGET_PARAM = "sample-budget";
+    private static final String SAMPLE_SLOW_SECONDS_PARAM = "sample-slow-seconds";
+    private static final String OVERHEAD_SAMPLE_ONE_IN_PARAM = "overhead-sample-one-in";
     private static final String PATH_DEPTH_PARAM = "path-depth";
+    private static final String PATH_TEMPLATES_PARAM = "path-templates";
+    private static final String PATH_DETECT_IDS_PARAM = "path-detect-ids";
     private static final String EXCLUSIONS = "exclusions";
+    private static final String MAX_SERIES_PARAM = "max-series";
+    private static final String SIZE_MODE_PARAM = "size-mode";
+    private static final String CONTENT_LENGTH_SIZE_MODE = "content-length";
+    private static final String REQUEST_SIZE_PARAM = "request-size";
     private static final String ERROR_MESSAGE_PARAM = "error-message";
     private static final String DEBUG = "debug";
     private static final String APPLICATION_VERSION = "application-version";
@@ -56,14 +75,26 @@ public class MetricsCollectorFilter implements Filter {
     private static final String FILTER_REGEX_PARAM = "error-info-regex";
     private static final String ENABLE_ERROR_REGEX_DEPENDENCY = "enable-error-regex-dependency";
     private static final String FILTER_MAX_SIZE_PARAM = "error-info-max-size";
-    private static final Logger LOGGER = Logger.getLogger(MetricsCollectorFilter.class.getName());
-    private final List<String> exclusions = new ArrayList<String>();
+    private static final String FILTER_CACHE_SIZE_PARAM = "error-info-cache-size";
+    private static final String ASYNC_TIMEOUT_ERROR_MESSAGE = "async timeout";
+    private static final String[] STATUS_LABELS = new String[1000];
+    static {
+        for (int i = 0; i < STATUS_LABELS.length; i++) {
+            STATUS_LABELS[i] = Integer.toString(i);
+        }
+    }
+    private PathExclusionMatcher exclusions;
     private int filter_max_size = 50;
     private String filter_regex = "";
+    private int filter_cache_size = ErrorMessageSanitizer.DEFAULT_CACHE_SIZE;
+    private ErrorMessageSanitizer errorMessageSanitizer;
     private boolean enableErrorDependencyRegex = true; //defaut
 
 
     private int pathDepth = 0;
+    private PathTemplateMatcher pathTemplates;
+    private boolean useDeclaredLength;
+    private boolean countRequestSize = true;
     private String errorMessageParam = "";
 
     /**
@@ -89,22 +120,128 @@ public class MetricsCollectorFilter implements Filter {
                     DebugUtil.debug("Error: " + PATH_DEPTH_PARAM + " must be an int value but got '" + pathDepthStr + "'.");
                 }
             }
+            // Allow users to normalize paths into route templates
+            List<String> templates = new ArrayList<String>();
+            String templatesParam = filterConfig.getInitParameter(PATH_TEMPLATES_PARAM);
+            if (isNotEmpty(templatesParam)) {
+                String contextPath = getContextPath(filterConfig);
+                for (String template : templatesParam.split(",")) {
+                    template = template.trim();
+                    if (!template.isEmpty()) {
+                        templates.add(contextPath + template);
+                    }
+                }
+            }
+            boolean detectIds = Boolean.parseBoolean(filterConfig.getInitParameter(PATH_DETECT_IDS_PARAM));
+            PathTemplateMatcher templateMatcher = new PathTemplateMatcher(templates, detectIds);
+            if (!templateMatcher.isEmpty()) {
+                pathTemplates = templateMatcher;
+            }
             // Allow users to override the default bucket configuration
             String bucketsParam = filterConfig.getInitParameter(BUCKET_CONFIG_PARAM);
             if (isNotEmpty(bucketsParam)) {
-                String[] bucketParams = bucketsParam.split(",");
-                buckets = new double[bucketParams.length];
-
-                for (int i = 0; i < bucketParams.length; i++) {
-                    buckets[i] = Double.parseDouble(bucketParams[i]);
+                buckets = parseDoubles(bucketsParam);
+            }
+            // Allow users to record the latencies when no buckets are defined, as summaries or histograms
+            String exposition = trim(filterConfig.getInitParameter(LATENCY_EXPOSITION_PARAM));
+            if ("buckets".equalsIgnoreCase(exposition)) {
+                MonitorMetrics.INSTANCE.setLatencyWithoutBuckets(true);
+                MonitorMetrics.INSTANCE.setLatencyQuantiles();
+            } else {
+                if ("summary".equalsIgnoreCase(exposition)) {
+                    MonitorMetrics.INSTANCE.setLatencyWithoutBuckets(true);
+                } else if (isNotEmpty(exposition)) {
+                    DebugUtil.debug("Error: " + LATENCY_EXPOSITION_PARAM + " must be summary or buckets but got '" + exposition + "'.");
+                }
+                String quantilesParam = filterConfig.getInitParameter(LATENCY_QUANTILES_PARAM);
+                if (isNotEmpty(quantilesParam)) {
+                    MonitorMetrics.INSTANCE.setLatencyQuantiles(parseDoubles(quantilesParam));
+                }
+            }
+            String precisionBitsStr = filterConfig.getInitParameter(LATENCY_PRECISION_BITS_PARAM);
+            if (isNotEmpty(precisionBitsStr)) {
+                try {
+                    MonitorMetrics.INSTANCE.setLatencyPrecisionBits(Integer.parseInt(precisionBitsStr.trim()));
+                } catch (NumberFormatException e) {
+                    DebugUtil.debug("Error: " + LATENCY_PRECISION_BITS_PARAM + " must be an int value but got '" + precisionBitsStr + "'.");
+                }
+            }
+            String windowStr = filterConfig.getInitParameter(LATENCY_QUANTILES_WINDOW_PARAM);
+            if (isNotEmpty(windowStr)) {
+                String ageBucketsStr = filterConfig.getInitParameter(LATENCY_QUANTILES_AGE_BUCKETS_PARAM);
+                try {
+                    MonitorMetrics.INSTANCE.setLatencyQuantileWindow(Long.parseLong(windowStr.trim()),
+                            isNotEmpty(ageBucketsStr) ? Integer.parseInt(ageBucketsStr.trim())
+                                    : DEFAULT_LATENCY_QUANTILES_AGE_BUCKETS);
+                } catch (NumberFormatException e) {
+                    DebugUtil.debug("Error: " + LATENCY_QUANTILES_WINDOW_PARAM + " and " + LATENCY_QUANTILES_AGE_BUCKETS_PARAM
+                            + " must be int values but got '" + windowStr + "' and '" + ageBucketsStr + "'.");
                 }
             }
+            if (Boolean.parseBoolean(trim(filterConfig.getInitParameter(LATENCY_QUANTILES_WITH_BUCKETS_PARAM)))) {
+                MonitorMetrics.INSTANCE.setLatencyQuantilesWithBuckets(true);
+            }
+            // Allow users to record a sample of the requests
+            String sampleOneInStr = filterConfig.getInitParameter(SAMPLE_ONE_IN_PARAM);
+            if (isNotEmpty(sampleOneInStr)) {
+                try {
+                    MonitorMetrics.INSTANCE.setRequestSampling(Integer.parseInt(sampleOneInStr.trim()));
+                } catch (NumberFormatException e) {
+                    DebugUtil.debug("Error: " + SAMPLE_ONE_IN_PARAM + " must be an int value but got '" + sampleOneInStr + "'.");
+                }
+            }
+            String sampleBudgetStr = filterConfig.getInitParameter(SAMPLE_BUDGET_PARAM);
+            if (isNotEmpty(sampleBudgetStr)) {
+                try {
+                    MonitorMetrics.INSTANCE.setAdaptiveRequestSampling(Double.parseDouble(sampleBudgetStr.trim()));
+                } catch (NumberFormatException e) {
+                    DebugUtil.debug("Error: " + SAMPLE_BUDGET_PARAM + " must be a number but got '" + sampleBudgetStr + "'.");
+                }
+            }
+            String sampleSlowStr = filterConfig.getInitParameter(SAMPLE_SLOW_SECONDS_PARAM);
+            if (isNotEmpty(sampleSlowStr)) {
+                try {
+                    MonitorMetrics.INSTANCE.setSlowRequestSeconds(Double.parseDouble(sampleSlowStr.trim()));
+                } catch (NumberFormatException e) {
+                    DebugUtil.debug("Error: " + SAMPLE_SLOW_SECONDS_PARAM + " must be a number but got '" + sampleSlowStr + "'.");
+                }
+            }
+            // Allow users to time the overhead of the filter more or less often
+            String overheadSampleStr = filterConfig.getInitParameter(OVERHEAD_SAMPLE_ONE_IN_PARAM);
+            if (isNotEmpty(overheadSampleStr)) {
+                try {
+                    MonitorMetrics.INSTANCE.setOverheadSampling(Integer.parseInt(overheadSampleStr.trim()));
+                } catch (NumberFormatException e) {
+                    DebugUtil.debug("Error: " + OVERHEAD_SAMPLE_ONE_IN_PARAM + " must be an int value but got '" + overheadSampleStr + "'.");
+                }
+            }
+            // Allow users to bound the number of series of each metric
+            String maxSeriesStr = filterConfig.getInitParameter(MAX_SERIES_PARAM);
+            if (isNotEmpty(maxSeriesStr)) {
+                try {
+                    MonitorMetrics.INSTANCE.setMaxSeries(Integer.parseInt(maxSeriesStr.trim()));
+                } catch (NumberFormatException e) {
+                    DebugUtil.debug("Error: " + MAX_SERIES_PARAM + " must be an int value but got '" + maxSeriesStr + "'.");
+                }
+            }
+            // Allow users to take the response size from the declared Content-Length instead of counting the bytes
+            useDeclaredLength = CONTENT_LENGTH_SIZE_MODE.equalsIgnoreCase(trim(filterConfig.getInitParameter(SIZE_MODE_PARAM)));
+            // Allow users to disable the request size, which also leaves the request unwrapped in the declared length mode
+            String requestSizeStr = filterConfig.getInitParameter(REQUEST_SIZE_PARAM);
+            if (isNotEmpty(requestSizeStr)) {
+                countRequestSize = Boolean.parseBoolean(requestSizeStr.trim());
+                MonitorMetrics.INSTANCE.setRequestSizeRecorded(countRequestSize);
+            }
             // Allow users to define paths to be excluded from metrics collect
             String exclusionsParam = filterConfig.getInitParameter(EXCLUSIONS);
             if (isNotEmpty(exclusionsParam)) {
-                String[] arrayExclusions = exclusionsParam.split(",");
-                for (String string : arrayExclusions) {
-                    exclusions.add(string.trim());
+                List<String> rules = new ArrayList<String>();
+                for (String string : exclusionsParam.split(",")) {
+                    rules.add(string.trim());
+                }
+                PathExclusionMatcher exclusionMatcher = new PathExclusionMatcher(rules);
+                if (!exclusionMatcher.isEmpty()) {
+                    exclusions = exclusionMatcher;
                 }
             }
             // Allow users to enable/disable the JVM metrics export
@@ -124,7 +261,12 @@ public class MetricsCollectorFilter implements Filter {
                 Integer.valueOf(filterConfig.getInitParameter(FILTER_MAX_SIZE_PARAM)) : filter_max_size;
             filter_regex = filterConfig.getInitParameter(FILTER_REGEX_PARAM) != null ?
                 filterConfig.getInitParameter(FILTER_REGEX_PARAM) : DEFAULT_FILTER_REGEX;
+            filter_cache_size = filterConfig.getInitParameter(FILTER_CACHE_SIZE_PARAM) != null ?
+                Integer.valueOf(filterConfig.getInitParameter(FILTER_CACHE_SIZE_PARAM).trim()) : filter_cache_size;
         }
+        // an invalid regex fails the filter initialization instead of every errored request
+        errorMessageSanitizer = new ErrorMessageSanitizer(filter_regex, filter_max_size, filter_cache_size);
+        MonitorMetrics.INSTANCE.setErrorMessageCacheSize(filter_cache_size);
         String version = isNotEmpty(exportApplicationVersion) ? exportApplicationVersion : getApplicationVersionFromPropertiesFile();
         // Allow users to capture error messages
         errorMessageParam = filterConfig.getInitParameter(ERROR_MESSAGE_PARAM);
@@ -143,26 +285,65 @@ public class MetricsCollectorFilter implements Filter {
      */
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
-        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)
+                || request.getDispatcherType() == DispatcherType.ASYNC) {
+            // an asynchronous dispatch is collected by the listener registered on the initial one
             chain.doFilter(request, response);
             return;
         }
         final SimpleTimer timer = new SimpleTimer();
+        final SelfMetrics selfMetrics = MonitorMetrics.INSTANCE.selfMetrics;
+        // the overhead of the filter is timed on a sample of the requests only
+        final int overheadWeight = selfMetrics == null ? 0 : selfMetrics.sample();
+        final long filterStart = overheadWeight > 0 ? System.nanoTime() : 0;
         final HttpServletRequest httpRequest = (HttpServletRequest) request;
 
         // TODO parameterize whether or not to add the context path
         String path = httpRequest.getRequestURI();
-        path = substringMaxDepth(path, pathDepth);
 
         if (isExcludedPath(httpRequest, path)) {
             chain.doFilter(request, response);
         } else {
-            final CountingServletResponse counterResponse =
-                    new CountingServletResponse((HttpServletResponse) response);
+            if (pathTemplates != null) {
+                path = pathTemplates.normalize(path);
+            }
+            path = substringMaxDepth(path, pathDepth);
+            final HttpServletResponse monitoredResponse;
+            if (useDeclaredLength) {
+                // the size is read from the declared length, the container keeps its own response,
+                // e.g. to send files without copying them
+                monitoredResponse = (HttpServletResponse) response;
+            } else {
+                monitoredResponse = new CountingServletResponse((HttpServletResponse) response);
+            }
+            final HttpServletRequest monitoredRequest;
+            if (useDeclaredLength && !countRequestSize) {
+                // nothing to count on the request nor to carry into the asynchronous cycle
+                monitoredRequest = httpRequest;
+            } else {
+                monitoredRequest = new MonitoredServletRequest(httpRequest, monitoredResponse);
+            }
+            final LongAdder inFlight = MonitorMetrics.INSTANCE.inFlight(httpRequest.getMethod(), path);
+            if (inFlight != null) {
+                inFlight.increment();
+            }
+            final long chainStart = overheadWeight > 0 ? System.nanoTime() : 0;
             try {
-                chain.doFilter(httpRequest, counterResponse);
+                chain.doFilter(monitoredRequest, monitoredResponse);
             } finally {
-                collect(httpRequest, counterResponse, path, timer.elapsedSeconds());
+                final long chainEnd = overheadWeight > 0 ? System.nanoTime() : 0;
+                if (!addAsyncListener(monitoredRequest, monitoredResponse, path, timer, inFlight)) {
+                    end(inFlight);
+                    final long collectStart = overheadWeight > 0 ? System.nanoTime() : 0;
+                    collect(monitoredRequest, monitoredResponse, path, timer.elapsedSeconds(), false);
+                    if (overheadWeight > 0) {
+                        selfMetrics.observeCollect(System.nanoTime() - collectStart, overheadWeight);
+                    }
+                }
+                if (overheadWeight > 0) {
+                    // an asynchronous request is collected on completion, out of the filter
+                    selfMetrics.observeFilter(chainStart - filterStart + System.nanoTime() - chainEnd, overheadWeight);
+                }
             }
         }
     }
@@ -184,36 +365,89 @@ public class MetricsCollectorFilter implements Filter {
      * @return <code>true</code> if the path is configured to be excluded.
      */
     private boolean isExcludedPath(final HttpServletRequest httpRequest, String path) {
-        if (path.startsWith(httpRequest.getContextPath())) {
-            path = path.substring(httpRequest.getContextPath().length());
-        }
-        for (String exclusion : exclusions) {
-            if (path.startsWith(exclusion)) {
-                DebugUtil.debug("Excluded ", path);
-                return true;
-            }
+        if (exclusions != null && exclusions.isExcluded(path, httpRequest.getContextPath())) {
+            DebugUtil.debug("Excluded ", path);
+            return true;
         }
         return false;
     }
 
+    /**
+     * Defers the metrics collection of an asynchronous request to the end of its asynchronous cycle.
+     *
+     * @param httpRequest  request
+     * @param httpResponse response
+     * @param path         path
+     * @param timer        timer started when the request was received
+     * @param inFlight     the counter of the requests in flight of the route, <code>null</code> if none
+     * @return <code>false</code> if the request is not in asynchronous mode and must be collected right away
+     */
+    private boolean addAsyncListener(HttpServletRequest httpRequest, HttpServletResponse httpResponse,
+                                     String path, SimpleTimer timer, LongAdder inFlight) {
+        if (!httpRequest.isAsyncStarted()) {
+            return false;
+        }
+        try {
+            httpRequest.getAsyncContext().addListener(
+                    new CollectorAsyncListener(httpRequest, httpResponse, path, timer, inFlight));
+            return true;
+        } catch (IllegalStateException e) {
+            // the asynchronous cycle has already been completed
+            DebugUtil.debug("Could not listen to the asynchronous request: ", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Counts the end of a request on the counter of the requests in flight of its route.
+     *
+     * @param inFlight the counter, <code>null</code> if none
+     */
+    private static void end(LongAdder inFlight) {
+        if (inFlight != null) {
+            inFlight.decrement();
+        }
+    }
+
     /**
      * Collect metrics
      *
-     * @param httpRequest     request
-     * @param counterResponse response
-     * @param path            path
-     * @param elapsedSeconds  how long time did the request has executed
+     * @param httpRequest    request, counting the request size if it is a {@link MonitoredServletRequest}
+     * @param httpResponse   response, counting the response size if it is a {@link CountingServletResponse}
+     * @param path           path
+     * @param elapsedSeconds how long time did the request has executed
+     * @param timedOut       if the request asynchronous cycle has timed out
      */
-    private void collect(HttpServletRequest httpRequest, CountingServletResponse counterResponse, String path, double elapsedSeconds) {
+    private void collect(HttpServletRequest httpRequest, HttpServletResponse httpResponse, String path,
+                         double elapsedSeconds, boolean timedOut) {
     	final String method = httpRequest.getMethod();
-        final String status = Integer.toString(counterResponse.getStatus());
-        final boolean isError = isErrorStatus(counterResponse.getStatus());
-        final String errorMessage = getErrorMessage(httpRequest);
-        final long count = counterResponse.getByteCount();
+        final int statusCode = httpResponse.getStatus();
+        final String status = statusLabel(statusCode);
+        final boolean isError = timedOut || isErrorStatus(statusCode);
+        final String errorMessage = timedOut ? ASYNC_TIMEOUT_ERROR_MESSAGE : getErrorMessage(httpRequest);
+        final long count = httpResponse instanceof CountingServletResponse
+                ? ((CountingServletResponse) httpResponse).getByteCount()
+                : Math.max(0, CountingServletResponse.getDeclaredLength(httpResponse));
+        final long requestCount = countRequestSize && httpRequest instanceof MonitoredServletRequest
+                ? ((MonitoredServletRequest) httpRequest).getByteCount() : -1;
         final String scheme = httpRequest.getScheme();
         DebugUtil.debug(path, " ; bytes count = ", count);
-        MonitorMetrics.INSTANCE.collectTime(scheme, status, method, path, isError, errorMessage, elapsedSeconds);
-        MonitorMetrics.INSTANCE.collectSize(scheme, status, method, path, isError, errorMessage, count);
+        DebugUtil.debug(path, " ; request bytes count = ", requestCount);
+        MonitorMetrics.INSTANCE.collectRequest(scheme, status, method, path, isError, errorMessage, elapsedSeconds,
+                count, requestCount);
+    }
+
+    /**
+     * Returns the label value of a status code, reusing a pre-built {@link String} for the valid range.
+     *
+     * @param status HTTP status code
+     * @return status code as {@link String}
+     */
+    private static String statusLabel(int status) {
+        if (status >= 0 && status < STATUS_LABELS.length) {
+            return STATUS_LABELS[status];
+        }
+        return Integer.toString(status);
     }
 
     /**
@@ -242,24 +476,30 @@ public class MetricsCollectorFilter implements Filter {
         if (errorMessageParam == null) {
             return "";
         }
-        String errorMessage = (String) httpRequest.getAttribute(errorMessageParam);
-        String result = "";
-        if (errorMessage == null) {
-            return result;
-        }
+        // apply whitelist filter, the sanitized messages are cached
+        return errorMessageSanitizer.sanitize((String) httpRequest.getAttribute(errorMessageParam));
+    }
 
-        try {
-            // apply whitelist filter
-            result = errorMessage.replaceAll(filter_regex, "");
-            if (result.length() > filter_max_size) {
-                result = result.substring(0, filter_max_size);
-            }
-        } catch (Exception e) {
-            // avoid invalid regex or invalid matcher group index
-            result = "";
-            LOGGER.warning("Invalid regex: " + e.getMessage());
+    /**
+     * Parses a comma-separated list of {@code double} values.
+     *
+     * @param s comma-separated values
+     * @return the values
+     */
+    private double[] parseDoubles(String s) {
+        String[] params = s.split(",");
+        double[] values = new double[params.length];
+        for (int i = 0; i < params.length; i++) {
+            values[i] = Double.parseDouble(params[i].trim());
         }
-        return result;
+        return values;
+    }
+
+    /**
+     * Returns the trimmed {@link String}, or <code>null</code>
+     */
+    private String trim(String s) {
+        return s != null ? s.trim() : null;
     }
 
     /**
@@ -272,6 +512,18 @@ public class MetricsCollectorFilter implements Filter {
         return s != null && s.trim().length() != 0;
     }
 
+    /**
+     * Returns the context path of the web application the filter belongs to.
+     *
+     * @param filterConfig filter configuration
+     * @return the context path or empty string if it is not available
+     */
+    private String getContextPath(FilterConfig filterConfig) {
+        ServletContext servletContext = filterConfig.getServletContext();
+        String contextPath = servletContext != null ? servletContext.getContextPath() : null;
+        return contextPath != null ? contextPath : "";
+    }
+
     /**
      * Returns a substring of the <code>path</code> based on depth count of slash char "/".
      *
@@ -324,4 +576,59 @@ public class MetricsCollectorFilter implements Filter {
         }
     }
 
+    /**
+     * Collects the metrics of an asynchronous request once its asynchronous cycle is completed.
+     * The elapsed time is taken at the first of timeout, error or completion, and the metrics are collected exactly
+     * once, on completion, when the response status is final.
+     */
+    private final class CollectorAsyncListener implements AsyncListener {
+
+        private final HttpServletRequest httpRequest;
+        private final HttpServletResponse httpResponse;
+        private final String path;
+        private final SimpleTimer timer;
+        private final LongAdder inFlight;
+        private double elapsedSeconds = -1;
+        private boolean timedOut;
+
+        CollectorAsyncListener(HttpServletRequest httpRequest, HttpServletResponse httpResponse, String path,
+                               SimpleTimer timer, LongAdder inFlight) {
+            this.httpRequest = httpRequest;
+            this.httpResponse = httpResponse;
+            this.path = path;
+            this.timer = timer;
+            this.inFlight = inFlight;
+        }
+
+        @Override
+        public synchronized void onComplete(AsyncEvent event) {
+            stopTimer();
+            // the request stays in flight until its asynchronous cycle completes
+            end(inFlight);
+            collect(httpRequest, httpResponse, path, elapsedSeconds, timedOut);
+        }
+
+        @Override
+        public synchronized void onTimeout(AsyncEvent event) {
+            stopTimer();
+            timedOut = true;
+        }
+
+        @Override
+        public synchronized void onError(AsyncEvent event) {
+            stopTimer();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // keep listening when the application starts a new asynchronous cycle
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void stopTimer() {
+            if (elapsedSeconds < 0) {
+                elapsedSeconds = timer.elapsedSeconds();
+            }
+        }
+    }
 }
@@ -0,0 +1,120 @@
+package br.com.labbs.monitor.filter;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.ServletResponseWrapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * A {@link HttpServletRequest} that counts the bytes read from the request body, and keeps the monitored response in
+ * the asynchronous cycle.
+ *
+ * <p>{@link HttpServletRequest#startAsync()} initializes the {@link AsyncContext} with the original, unwrapped,
+ * request and response, so whatever the application writes from another thread would bypass the
+ * {@link CountingServletResponse}. This wrapper starts the cycle with itself and the counting response instead.
+ * When the application starts it with its own objects, the container's request and response reached by unwrapping
+ * are replaced by the wrappers standing for them, and wrappers of the monitored ones are kept since they write
+ * through the counting response. Any other response is not counted.
+ *
+ * <p>The request size is the number of bytes read through {@link #getInputStream()} or {@link #getReader()}. When
+ * the body is not read that way, e.g. never read or read by the container to parse form parameters, the request
+ * size is the {@code Content-Length} declared by the client.
+ */
+public class MonitoredServletRequest extends HttpServletRequestWrapper {
+
+    private final ServletResponse response;
+    private CountingServletInputStream input;
+    private CountingBufferedReader reader;
+
+    /**
+     * Creates an instance of {@link MonitoredServletRequest} encapsulating the {@link HttpServletRequest}
+     *
+     * @param request  request
+     * @param response the monitored response
+     */
+    MonitoredServletRequest(HttpServletRequest request, ServletResponse response) {
+        super(request);
+        this.response = response;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link HttpServletRequestWrapper#startAsync()}
+     */
+    @Override
+    public AsyncContext startAsync() {
+        return getRequest().startAsync(this, response);
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link HttpServletRequestWrapper#startAsync(ServletRequest, ServletResponse)}
+     */
+    @Override
+    public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+        ServletRequest asyncRequest = servletRequest == getRequest() ? this : servletRequest;
+        ServletResponse asyncResponse = servletResponse;
+        if (response instanceof ServletResponseWrapper
+                && servletResponse == ((ServletResponseWrapper) response).getResponse()) {
+            asyncResponse = response;
+        }
+        return getRequest().startAsync(asyncRequest, asyncResponse);
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link HttpServletRequestWrapper#getInputStream()}
+     */
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (input == null) {
+            input = new CountingServletInputStream(super.getInputStream());
+        }
+        return input;
+    }
+
+    /**
+     * {@inheritDoc}
+     * {@link HttpServletRequestWrapper#getReader()}
+     */
+    @Override
+    public BufferedReader getReader() throws IOException {
+        if (reader == null) {
+            BufferedReader containerReader = super.getReader();
+            // the encoding of the request defaults to ISO-8859-1
+            String characterEncoding = getCharacterEncoding();
+            reader = new CountingBufferedReader(containerReader,
+                    characterEncoding != null ? characterEncoding : "ISO-8859-1");
+        }
+        return reader;
+    }
+
+    /**
+     * Returns the size of the request body.
+     *
+     * @return the number of bytes read from the body, or the declared {@code Content-Length} if none were read or
+     * if the body was read to the end through the reader, whose count is an estimate
+     */
+    long getByteCount() {
+        long count = 0;
+        if (input != null) {
+            count = input.getByteCount();
+        } else if (reader != null) {
+            count = reader.isFinished() ? 0 : reader.getCount();
+        }
+        if (count > 0) {
+            return count;
+        }
+        long declaredLength = getContentLengthLong();
+        if (declaredLength < 0 && reader != null) {
+            return reader.getCount();
+        }
+        return Math.max(0, declaredLength);
+    }
+}
@@ -0,0 +1,174 @@
+package br.com.labbs.monitor.filter;
+
+import java.util.Collection;
+
+/**
+ * Decides whether a request path is excluded from the metrics collection.
+ *
+ * <p>Three kinds of rules are supported:
+ * <ul>
+ * <li>{@code /static}: prefix rule, excludes every path starting with it;</li>
+ * <li>{@code =/health}: exact rule, excludes only that path;</li>
+ * <li>{@code *.js}: suffix rule, excludes every path ending with it.</li>
+ * </ul>
+ * Prefix and exact rules are compiled into one character trie, walked forward from the end of the context path,
+ * and suffix rules into another one, walked backward from the end of the path. The decision takes at most one pass
+ * over the path and allocates nothing.
+ */
+final class PathExclusionMatcher {
+
+    private static final String EXACT_RULE_PREFIX = "=";
+    private static final String SUFFIX_RULE_PREFIX = "*";
+
+    private final Node prefixes = new Node();
+    private final Node suffixes = new Node();
+    private boolean hasPrefixes;
+    private boolean hasSuffixes;
+
+    /**
+     * Compiles the exclusion rules.
+     *
+     * @param rules exclusion rules, relative to the context path
+     */
+    PathExclusionMatcher(Collection<String> rules) {
+        for (String rule : rules) {
+            if (rule.isEmpty()) {
+                continue;
+            }
+            if (rule.startsWith(EXACT_RULE_PREFIX)) {
+                prefixes.add(rule, 1, false).exact = true;
+                hasPrefixes = true;
+            } else if (rule.startsWith(SUFFIX_RULE_PREFIX)) {
+                suffixes.add(rule, 1, true).prefix = true;
+                hasSuffixes = true;
+            } else {
+                prefixes.add(rule, 0, false).prefix = true;
+                hasPrefixes = true;
+            }
+        }
+    }
+
+    /**
+     * Checks whether there is any rule at all.
+     *
+     * @return <code>true</code> if no rule was defined
+     */
+    boolean isEmpty() {
+        return !hasPrefixes && !hasSuffixes;
+    }
+
+    /**
+     * Checks whether the path is excluded from the metrics collection.
+     *
+     * @param path        HTTP request path, including the context path
+     * @param contextPath context path of the request, ignored by the prefix and exact rules
+     * @return <code>true</code> if any rule matches the path
+     */
+    boolean isExcluded(String path, String contextPath) {
+        if (path == null) {
+            return false;
+        }
+        if (hasPrefixes) {
+            int from = contextPath != null && path.startsWith(contextPath) ? contextPath.length() : 0;
+            if (matchesPrefix(path, from)) {
+                return true;
+            }
+        }
+        return hasSuffixes && matchesSuffix(path);
+    }
+
+    private boolean matchesPrefix(String path, int from) {
+        Node node = prefixes;
+        int length = path.length();
+        for (int i = from; i < length; i++) {
+            if (node.prefix) {
+                return true;
+            }
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.prefix || node.exact;
+    }
+
+    private boolean matchesSuffix(String path) {
+        Node node = suffixes;
+        for (int i = path.length() - 1; i >= 0; i--) {
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                return false;
+            }
+            if (node.prefix) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A trie node. Children are kept in parallel arrays, sorted by character.
+     */
+    private static final class Node {
+
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        /* the path up to this node matches a prefix rule (or a suffix rule, on the reversed trie) */
+        private boolean prefix;
+        /* the path up to this node matches an exact rule */
+        private boolean exact;
+
+        Node child(char c) {
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char key = keys[mid];
+                if (key < c) {
+                    low = mid + 1;
+                } else if (key > c) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+
+        Node add(String rule, int from, boolean reversed) {
+            Node node = this;
+            int length = rule.length() - from;
+            for (int i = 0; i < length; i++) {
+                char c = reversed ? rule.charAt(rule.length() - 1 - i) : rule.charAt(from + i);
+                Node next = node.child(c);
+                if (next == null) {
+                    next = node.insert(c);
+                }
+                node = next;
+            }
+            return node;
+        }
+
+        private Node insert(char c) {
+            int index = 0;
+            while (index < keys.length && keys[index] < c) {
+                index++;
+            }
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            Node node = new Node();
+            newKeys[index] = c;
+            newChildren[index] = node;
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+    }
+}
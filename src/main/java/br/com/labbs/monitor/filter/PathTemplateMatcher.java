@@ -0,0 +1,349 @@
+package br.com.labbs.monitor.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Normalizes request paths into route templates, keeping the {@code addr} label cardinality bounded without
+ * losing the route granularity.
+ *
+ * <p>Configured templates such as {@code /users/{id}/orders/{id}} are compiled into a trie of path segments, where
+ * a <code>{...}</code> segment matches any single segment and literal segments take precedence over it. Matching
+ * hashes each segment in place, so it costs O(path length) and allocates nothing: the returned value is the
+ * template {@link String} built at compile time.
+ *
+ * <p>A literal segment falls back to the parameter segment of the same level when the rest of the path does not
+ * match below it. Instead of backtracking at match time, the fallbacks are resolved at compile time: the trie is
+ * turned into a deterministic one whose literal nodes also hold the templates of the parameter nodes they fall
+ * back to, so every segment of the path is looked up once.
+ *
+ * <p>When no template matches and identifier detection is enabled, numeric segments are replaced by
+ * {@code {id}}, UUID segments by {@code {uuid}} and long hexadecimal segments by {@code {hex}}.
+ */
+final class PathTemplateMatcher {
+
+    static final String ID_PLACEHOLDER = "{id}";
+    static final String UUID_PLACEHOLDER = "{uuid}";
+    static final String HEX_PLACEHOLDER = "{hex}";
+
+    private static final int MIN_HEX_LENGTH = 16;
+    private static final int UUID_LENGTH = 36;
+
+    private final Node root;
+    private final boolean detectIds;
+    private boolean hasTemplates;
+
+    /**
+     * Compiles the route templates.
+     *
+     * @param templates route templates, each one starting with a slash
+     * @param detectIds whether numeric, UUID and hexadecimal segments of unmatched paths must be replaced
+     */
+    PathTemplateMatcher(Collection<String> templates, boolean detectIds) {
+        this.detectIds = detectIds;
+        Node trie = new Node();
+        for (String template : templates) {
+            add(trie, template);
+        }
+        this.root = determinize(Collections.singletonList(trie), new HashMap<List<Node>, Node>());
+    }
+
+    /**
+     * Checks whether this matcher changes any path at all.
+     *
+     * @return <code>true</code> if there are no templates and identifier detection is disabled
+     */
+    boolean isEmpty() {
+        return !hasTemplates && !detectIds;
+    }
+
+    /**
+     * Returns the route template matching the path.
+     *
+     * @param path HTTP request path
+     * @return the matching template, the path with its identifiers replaced or the path itself
+     */
+    String normalize(String path) {
+        if (path == null) {
+            return null;
+        }
+        if (hasTemplates) {
+            int end = path.length();
+            if (end > 1 && path.charAt(end - 1) == '/') {
+                end--;
+            }
+            int start = end > 0 && path.charAt(0) == '/' ? 1 : 0;
+            String template = match(root, path, start, end);
+            if (template != null) {
+                return template;
+            }
+        }
+        return detectIds ? replaceIds(path) : path;
+    }
+
+    private void add(Node trie, String template) {
+        int end = template.length();
+        if (end > 1 && template.charAt(end - 1) == '/') {
+            end--;
+        }
+        Node node = trie;
+        int from = end > 0 && template.charAt(0) == '/' ? 1 : 0;
+        while (from < end) {
+            int segmentEnd = segmentEnd(template, from, end);
+            if (isParameter(template, from, segmentEnd)) {
+                if (node.parameter == null) {
+                    node.parameter = new Node();
+                }
+                node = node.parameter;
+            } else {
+                node = node.addLiteral(template.substring(from, segmentEnd));
+            }
+            from = segmentEnd + 1;
+        }
+        if (node.template == null) {
+            node.template = template;
+        }
+        hasTemplates = true;
+    }
+
+    private static String match(Node node, String path, int from, int end) {
+        while (from < end) {
+            int segmentEnd = segmentEnd(path, from, end);
+            Node next = node.literal(path, from, segmentEnd);
+            if (next == null && segmentEnd > from) {
+                next = node.parameter;
+            }
+            if (next == null) {
+                return null;
+            }
+            node = next;
+            from = segmentEnd + 1;
+        }
+        return node.template;
+    }
+
+    /**
+     * Builds the deterministic node matching what the given nodes match, the first of them taking precedence.
+     *
+     * <p>The literal child of a segment stands for the literal child of each node followed by its parameter child,
+     * and the parameter child stands for the parameter children only. The nodes built are shared by the sets of
+     * nodes they stand for, so a set is built once.
+     *
+     * @param nodes  the nodes of the trie, at the same depth, in order of precedence
+     * @param built  the nodes already built, by the nodes they stand for
+     * @return the deterministic node
+     */
+    private static Node determinize(List<Node> nodes, Map<List<Node>, Node> built) {
+        Node node = built.get(nodes);
+        if (node != null) {
+            return node;
+        }
+        node = new Node();
+        built.put(nodes, node);
+        List<Node> parameters = new ArrayList<Node>();
+        for (Node source : nodes) {
+            if (node.template == null) {
+                node.template = source.template;
+            }
+            if (source.parameter != null && !parameters.contains(source.parameter)) {
+                parameters.add(source.parameter);
+            }
+        }
+        for (Node source : nodes) {
+            if (source.segments == null) {
+                continue;
+            }
+            for (String segment : source.segments) {
+                if (segment == null || node.literal(segment, 0, segment.length()) != null) {
+                    continue;
+                }
+                List<Node> alternatives = new ArrayList<Node>();
+                for (Node alternative : nodes) {
+                    Node child = alternative.literal(segment, 0, segment.length());
+                    if (child != null && !alternatives.contains(child)) {
+                        alternatives.add(child);
+                    }
+                    // an empty segment matches no parameter
+                    if (alternative.parameter != null && !segment.isEmpty()
+                            && !alternatives.contains(alternative.parameter)) {
+                        alternatives.add(alternative.parameter);
+                    }
+                }
+                node.putLiteral(segment, determinize(alternatives, built));
+            }
+        }
+        if (!parameters.isEmpty()) {
+            node.parameter = determinize(parameters, built);
+        }
+        return node;
+    }
+
+    private static String replaceIds(String path) {
+        StringBuilder sb = null;
+        int length = path.length();
+        int from = 0;
+        while (from <= length) {
+            int segmentEnd = segmentEnd(path, from, length);
+            String placeholder = idPlaceholder(path, from, segmentEnd);
+            if (placeholder != null) {
+                if (sb == null) {
+                    sb = new StringBuilder(length);
+                    sb.append(path, 0, from);
+                }
+                sb.append(placeholder);
+            } else if (sb != null) {
+                sb.append(path, from, segmentEnd);
+            }
+            if (sb != null && segmentEnd < length) {
+                sb.append('/');
+            }
+            from = segmentEnd + 1;
+        }
+        return sb == null ? path : sb.toString();
+    }
+
+    /**
+     * Returns the placeholder of an identifier segment.
+     *
+     * @return the placeholder or <code>null</code> if the segment is not an identifier
+     */
+    static String idPlaceholder(String path, int from, int to) {
+        int length = to - from;
+        if (length == 0) {
+            return null;
+        }
+        boolean digits = true;
+        boolean hex = true;
+        for (int i = from; i < to && hex; i++) {
+            char c = path.charAt(i);
+            if (c < '0' || c > '9') {
+                digits = false;
+                hex = (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+            }
+        }
+        if (digits) {
+            return ID_PLACEHOLDER;
+        }
+        if (hex && length >= MIN_HEX_LENGTH) {
+            return HEX_PLACEHOLDER;
+        }
+        if (length == UUID_LENGTH && isUuid(path, from)) {
+            return UUID_PLACEHOLDER;
+        }
+        return null;
+    }
+
+    private static boolean isUuid(String path, int from) {
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = path.charAt(from + i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isParameter(String template, int from, int to) {
+        return to - from >= 2 && template.charAt(from) == '{' && template.charAt(to - 1) == '}';
+    }
+
+    private static int segmentEnd(String path, int from, int end) {
+        int i = path.indexOf('/', from);
+        return i < 0 || i > end ? end : i;
+    }
+
+    /**
+     * Same value as {@link String#hashCode()} of the segment, computed without extracting it.
+     */
+    private static int hash(String path, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + path.charAt(i);
+        }
+        return h;
+    }
+
+    /**
+     * A trie node. Literal children are kept in an open-addressing table indexed by the segment hash.
+     */
+    private static final class Node {
+
+        private String[] segments;
+        private int[] hashes;
+        private Node[] children;
+        private int size;
+        private Node parameter;
+        private String template;
+
+        Node literal(String path, int from, int to) {
+            if (segments == null) {
+                return null;
+            }
+            int h = hash(path, from, to);
+            int mask = segments.length - 1;
+            for (int i = spread(h) & mask; segments[i] != null; i = (i + 1) & mask) {
+                String segment = segments[i];
+                if (hashes[i] == h && segment.length() == to - from
+                        && path.regionMatches(from, segment, 0, to - from)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node addLiteral(String segment) {
+            Node existing = literal(segment, 0, segment.length());
+            if (existing != null) {
+                return existing;
+            }
+            Node node = new Node();
+            putLiteral(segment, node);
+            return node;
+        }
+
+        void putLiteral(String segment, Node child) {
+            if (segments == null) {
+                segments = new String[4];
+                hashes = new int[4];
+                children = new Node[4];
+            } else if ((size + 1) * 2 > segments.length) {
+                String[] oldSegments = segments;
+                int[] oldHashes = hashes;
+                Node[] oldChildren = children;
+                segments = new String[oldSegments.length * 2];
+                hashes = new int[segments.length];
+                children = new Node[segments.length];
+                for (int i = 0; i < oldSegments.length; i++) {
+                    if (oldSegments[i] != null) {
+                        insert(oldSegments[i], oldHashes[i], oldChildren[i]);
+                    }
+                }
+            }
+            insert(segment, segment.hashCode(), child);
+            size++;
+        }
+
+        private void insert(String segment, int hash, Node child) {
+            int mask = segments.length - 1;
+            int i = spread(hash) & mask;
+            while (segments[i] != null) {
+                i = (i + 1) & mask;
+            }
+            segments[i] = segment;
+            hashes[i] = hash;
+            children[i] = child;
+        }
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
+        }
+    }
+}
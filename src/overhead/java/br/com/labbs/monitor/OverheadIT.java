@@ -0,0 +1,412 @@
+package br.com.labbs.monitor;
+
+import br.com.labbs.monitor.exporter.MetricsServlet;
+import br.com.labbs.monitor.filter.MetricsCollectorFilter;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Measures the overhead of the monitor end to end, on an embedded Tomcat serving the same endpoints with and without
+ * {@link MetricsCollectorFilter}, and fails when it exceeds the configured thresholds.
+ *
+ * <p>The endpoints, a small JSON body, a large streamed body, an asynchronous request and an error, are mounted
+ * under {@code /off} and under {@code /on}, where the filter is mapped, on the same servlet instances and the same
+ * connector. After warm-up rounds, a local load generator runs pairs of rounds, one on each prefix, the prefix
+ * running first alternating from one pair to the next so that a drift of the machine weighs on both alike. The
+ * median of the throughput losses of the pairs and the medians of the p99 latencies are compared to the thresholds.
+ * The run-to-run noise is measured too, as the standard error of the median loss estimated from the median absolute
+ * deviation of the losses of the pairs. Pairs are added until it is at most {@code overhead.maxNoise}, and the gate
+ * fails when it is still larger after {@code overhead.maxRounds} pairs, rather than passing or failing at random on a
+ * machine too noisy to tell a regression from the noise. The scrape latency of {@link MetricsServlet} is then
+ * measured as the number of series grows. Everything runs on the loopback interface, and the results are logged.
+ *
+ * <p>Thresholds and load are read from system properties:
+ * <ul>
+ * <li>{@code overhead.threads}, the number of load generator threads, 8 by default;</li>
+ * <li>{@code overhead.roundMillis}, the duration of a round, 1000 by default, {@code overhead.warmupRounds}, the
+ * number of warm-up rounds per prefix, 10 by default, {@code overhead.rounds}, the min number of measured pairs of
+ * rounds, 20 by default, and {@code overhead.maxRounds}, their max number, 60 by default;</li>
+ * <li>{@code overhead.maxThroughputLoss}, the max ratio of throughput lost with the filter, 0.15 by default;</li>
+ * <li>{@code overhead.maxNoise}, the max standard error of the median throughput loss, 0.05 by default;</li>
+ * <li>{@code overhead.maxP99Ratio}, the max ratio between the p99 latencies with and without the filter, 1.25 by
+ * default, on top of which {@code overhead.p99SlackMillis}, 1 by default, absorbs the noise of sub-millisecond
+ * latencies;</li>
+ * <li>{@code overhead.maxScrapeMillis}, the max scrape latency at the largest number of series, 1000 by
+ * default.</li>
+ * </ul>
+ *
+ * <p>The overhead is measured first, before the scrape test fills the registry with series.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class OverheadIT {
+
+    private static final String[] ENDPOINTS = {"/json", "/stream", "/async", "/error"};
+    private static final int[] SERIES_COUNTS = {100, 1000, 10000};
+    private static final int STREAM_SIZE = 256 * 1024;
+    private static final String ERROR_ATTRIBUTE = "error-info";
+    private static final Logger LOGGER = Logger.getLogger(OverheadIT.class.getName());
+
+    private static final int THREADS = Integer.getInteger("overhead.threads", 8);
+    private static final long ROUND_MILLIS = Long.getLong("overhead.roundMillis", 1000L);
+    private static final int WARMUP_ROUNDS = Integer.getInteger("overhead.warmupRounds", 10);
+    private static final int ROUNDS = Integer.getInteger("overhead.rounds", 20);
+    private static final int MAX_ROUNDS = Math.max(ROUNDS, Integer.getInteger("overhead.maxRounds", 60));
+    private static final double MAX_THROUGHPUT_LOSS = doubleProperty("overhead.maxThroughputLoss", 0.15);
+    private static final double MAX_NOISE = doubleProperty("overhead.maxNoise", 0.05);
+    private static final double MAX_P99_RATIO = doubleProperty("overhead.maxP99Ratio", 1.25);
+    private static final double P99_SLACK_MILLIS = doubleProperty("overhead.p99SlackMillis", 1);
+    private static final double MAX_SCRAPE_MILLIS = doubleProperty("overhead.maxScrapeMillis", 1000);
+
+    private static Tomcat tomcat;
+    private static File baseDir;
+    private static String baseUrl;
+
+    @BeforeClass
+    public static void startContainer() throws LifecycleException, IOException {
+        System.setProperty("http.maxConnections", Integer.toString(THREADS * 2));
+        baseDir = Files.createTempDirectory("servlet-monitor-overhead").toFile();
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(baseDir.getAbsolutePath());
+        tomcat.setPort(0);
+        tomcat.getConnector().setProperty("maxKeepAliveRequests", "-1");
+        Context context = tomcat.addContext("", baseDir.getAbsolutePath());
+
+        addServlet(context, "json", new JsonServlet());
+        addServlet(context, "stream", new StreamServlet());
+        addServlet(context, "async", new AsyncServlet());
+        addServlet(context, "error", new ErrorServlet());
+        Tomcat.addServlet(context, "metrics", new MetricsServlet());
+        context.addServletMappingDecoded("/metrics", "metrics");
+        for (String endpoint : ENDPOINTS) {
+            context.addServletMappingDecoded("/off" + endpoint, endpoint.substring(1));
+            context.addServletMappingDecoded("/on" + endpoint, endpoint.substring(1));
+        }
+        context.addServletMappingDecoded("/on/series/*", "json");
+
+        FilterDef filterDef = new FilterDef();
+        filterDef.setFilterName("metrics");
+        filterDef.setFilter(new MetricsCollectorFilter());
+        filterDef.setAsyncSupported("true");
+        filterDef.addInitParameter("export-jvm-metrics", "false");
+        filterDef.addInitParameter("application-version", "overhead");
+        filterDef.addInitParameter("error-message", ERROR_ATTRIBUTE);
+        filterDef.addInitParameter("buckets", "0.005,0.01,0.025,0.05,0.1,0.25,0.5,1,2.5,5,10");
+        context.addFilterDef(filterDef);
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName("metrics");
+        filterMap.addURLPatternDecoded("/on/*");
+        context.addFilterMap(filterMap);
+
+        tomcat.start();
+        baseUrl = "http://127.0.0.1:" + tomcat.getConnector().getLocalPort();
+    }
+
+    @AfterClass
+    public static void stopContainer() throws LifecycleException {
+        if (tomcat != null) {
+            tomcat.stop();
+            tomcat.destroy();
+        }
+        MonitorMetrics.INSTANCE.cancelAllDependencyCheckers();
+    }
+
+    @Test
+    public void test_filter_overhead_stays_under_the_thresholds() throws Exception {
+        // warms both paths up, the JIT compiling the filter and the container alike
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runRound("/off");
+            runRound("/on");
+        }
+
+        double[] offThroughputs = new double[MAX_ROUNDS];
+        double[] onThroughputs = new double[MAX_ROUNDS];
+        double[] offP99s = new double[MAX_ROUNDS];
+        double[] onP99s = new double[MAX_ROUNDS];
+        double[] losses = new double[MAX_ROUNDS];
+        StringBuilder report = new StringBuilder(String.format("%n%-8s %14s %14s %12s %12s %8s%n", "pair",
+                "off req/s", "on req/s", "off p99 ms", "on p99 ms", "loss"));
+        int pairs = 0;
+        double noise = Double.POSITIVE_INFINITY;
+        while (pairs < ROUNDS || (noise > MAX_NOISE && pairs < MAX_ROUNDS)) {
+            Result off;
+            Result on;
+            if (pairs % 2 == 0) {
+                off = runRound("/off");
+                on = runRound("/on");
+            } else {
+                on = runRound("/on");
+                off = runRound("/off");
+            }
+            offThroughputs[pairs] = off.throughput;
+            onThroughputs[pairs] = on.throughput;
+            offP99s[pairs] = off.p99Millis;
+            onP99s[pairs] = on.p99Millis;
+            losses[pairs] = 1 - on.throughput / off.throughput;
+            report.append(String.format("%-8d %14.0f %14.0f %12.3f %12.3f %7.1f%%%n", pairs, off.throughput,
+                    on.throughput, off.p99Millis, on.p99Millis, losses[pairs] * 100));
+            pairs++;
+            // 1.4826 scales the deviation to a standard deviation, 1.2533 that to the standard error of a median
+            noise = 1.4826 * medianAbsoluteDeviation(Arrays.copyOf(losses, pairs)) * 1.2533 / Math.sqrt(pairs);
+        }
+        double loss = median(Arrays.copyOf(losses, pairs));
+        double offP99 = median(Arrays.copyOf(offP99s, pairs));
+        double onP99 = median(Arrays.copyOf(onP99s, pairs));
+        report.append(String.format("%-8s %14.0f %14.0f %12.3f %12.3f %7.1f%%%n", "median",
+                median(Arrays.copyOf(offThroughputs, pairs)), median(Arrays.copyOf(onThroughputs, pairs)), offP99,
+                onP99, loss * 100));
+        report.append(String.format("noise (standard error of the median loss) %.1f%%", noise * 100));
+        LOGGER.info(report.toString());
+
+        Assert.assertTrue(String.format("The median throughput loss is known within %.1f%%, more than %.1f%%: "
+                + "the machine is too noisy to measure the overhead, use more or longer rounds or fewer threads",
+                noise * 100, MAX_NOISE * 100), noise <= MAX_NOISE);
+        Assert.assertTrue(String.format("The filter costs %.1f%% of the throughput, more than %.1f%%",
+                loss * 100, MAX_THROUGHPUT_LOSS * 100), loss <= MAX_THROUGHPUT_LOSS);
+        double maxP99 = offP99 * MAX_P99_RATIO + P99_SLACK_MILLIS;
+        Assert.assertTrue(String.format("The p99 latency with the filter is %.3f ms, more than %.3f ms",
+                onP99, maxP99), onP99 <= maxP99);
+    }
+
+    @Test
+    public void test_scrape_latency_as_the_series_grow() throws IOException {
+        int created = 0;
+        double scrapeMillis = 0;
+        StringBuilder report = new StringBuilder(String.format("%n%-15s %10s %12s", "series", "scrape ms", "bytes"));
+        for (int series : SERIES_COUNTS) {
+            for (; created < series; created++) {
+                get(baseUrl + "/on/series/" + created);
+            }
+            long[] samples = new long[5];
+            int bytes = 0;
+            for (int i = 0; i < samples.length; i++) {
+                long start = System.nanoTime();
+                bytes = get(baseUrl + "/metrics");
+                samples[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(samples);
+            scrapeMillis = samples[samples.length / 2] / 1e6;
+            report.append(String.format("%n%-15d %10.3f %12d", series, scrapeMillis, bytes));
+        }
+        LOGGER.info(report.toString());
+        Assert.assertTrue(String.format("A scrape of %d series lasts %.3f ms, more than %.3f ms",
+                SERIES_COUNTS[SERIES_COUNTS.length - 1], scrapeMillis, MAX_SCRAPE_MILLIS),
+                scrapeMillis <= MAX_SCRAPE_MILLIS);
+    }
+
+    /**
+     * Runs the load generator threads on the endpoints under the prefix, each thread cycling through them.
+     */
+    private static Result runRound(final String prefix) throws InterruptedException {
+        final AtomicBoolean stop = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        final LatencyRecorder[] recorders = new LatencyRecorder[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final LatencyRecorder recorder = new LatencyRecorder();
+            final int offset = t;
+            recorders[t] = recorder;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = offset; !stop.get(); i++) {
+                            long start = System.nanoTime();
+                            get(baseUrl + prefix + ENDPOINTS[i % ENDPOINTS.length]);
+                            recorder.record(System.nanoTime() - start);
+                        }
+                    } catch (IOException e) {
+                        recorder.failure = e;
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "overhead-load-" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        long start = System.nanoTime();
+        Thread.sleep(ROUND_MILLIS);
+        stop.set(true);
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        LatencyRecorder all = new LatencyRecorder();
+        for (LatencyRecorder recorder : recorders) {
+            if (recorder.failure != null) {
+                throw new AssertionError("Request failed on " + prefix, recorder.failure);
+            }
+            all.addAll(recorder);
+        }
+        return new Result(all.count / seconds, all.percentile(0.99) / 1e6);
+    }
+
+    /**
+     * Sends a GET request and reads the whole body, so the connection is reused.
+     *
+     * @return the body size
+     */
+    private static int get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        int status = connection.getResponseCode();
+        InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        int size = 0;
+        if (body != null) {
+            byte[] buffer = new byte[8192];
+            try {
+                for (int n; (n = body.read(buffer)) != -1; ) {
+                    size += n;
+                }
+            } finally {
+                body.close();
+            }
+        }
+        return size;
+    }
+
+    private static void addServlet(Context context, String name, HttpServlet servlet) {
+        Wrapper wrapper = Tomcat.addServlet(context, name, servlet);
+        wrapper.setAsyncSupported(true);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    private static double medianAbsoluteDeviation(double[] values) {
+        double median = median(values);
+        double[] deviations = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            deviations[i] = Math.abs(values[i] - median);
+        }
+        return median(deviations);
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    private static final class Result {
+
+        final double throughput;
+        final double p99Millis;
+
+        Result(double throughput, double p99Millis) {
+            this.throughput = throughput;
+            this.p99Millis = p99Millis;
+        }
+    }
+
+    /**
+     * The latencies recorded by one load generator thread.
+     */
+    private static final class LatencyRecorder {
+
+        long[] latencies = new long[1 << 16];
+        int count;
+        volatile IOException failure;
+
+        void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        void addAll(LatencyRecorder other) {
+            for (int i = 0; i < other.count; i++) {
+                record(other.latencies[i]);
+            }
+        }
+
+        long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(quantile * count) - 1)];
+        }
+    }
+
+    private static final class JsonServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setContentType("application/json");
+            resp.setCharacterEncoding("UTF-8");
+            resp.getWriter().write("{\"id\":42,\"name\":\"servlet monitor\",\"tags\":[\"http\",\"metrics\"]}");
+        }
+    }
+
+    private static final class StreamServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.setContentType("application/octet-stream");
+            byte[] chunk = new byte[8192];
+            ServletOutputStream output = resp.getOutputStream();
+            for (int written = 0; written < STREAM_SIZE; written += chunk.length) {
+                output.write(chunk);
+            }
+        }
+    }
+
+    private static final class AsyncServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) {
+            final AsyncContext async = req.startAsync();
+            async.start(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        async.getResponse().setContentType("application/json");
+                        async.getResponse().getOutputStream()
+                                .write("{\"async\":true}".getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    } finally {
+                        async.complete();
+                    }
+                }
+            });
+        }
+    }
+
+    private static final class ErrorServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            req.setAttribute(ERROR_ATTRIBUTE, "Connection refused by 10.0.0.12:5432 after 3000ms");
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            resp.setContentType("application/json");
+            resp.getWriter().write("{\"error\":\"upstream unavailable\"}");
+        }
+    }
+}
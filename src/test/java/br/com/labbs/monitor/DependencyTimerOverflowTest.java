@@ -0,0 +1,45 @@
+package br.com.labbs.monitor;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the dependency timer once dependency_request_seconds reached its max number of series, over the
+ * {@link MonitorMetrics} instance, which is initialized once for the class.
+ */
+public class DependencyTimerOverflowTest {
+
+    private static final String[] DEPENDENCY_LABELS = {"name", "type", "status", "method", "addr", "isError",
+            "errorMessage"};
+
+    @BeforeClass
+    public static void init() {
+        MonitorMetrics.INSTANCE.setMaxSeries(1);
+        MonitorMetrics.INSTANCE.init(false, "test", null, 0.1, 1);
+    }
+
+    @Test
+    public void test_overflow_series_are_not_cached() {
+        DependencyTimer timer = MonitorMetrics.INSTANCE.dependencyTimer("api", "http", "GET", "/users");
+        timer.observe(System.nanoTime(), "200");
+
+        timer.observe(System.nanoTime(), "404");
+        timer.observe(System.nanoTime(), "404");
+
+        Assert.assertEquals(1, timer.successSeries.size());
+        Assert.assertTrue(timer.successSeries.containsKey("200"));
+        Assert.assertEquals(1, count("/users", "200"), 0);
+        Assert.assertNull(count("/users", "404"));
+        Assert.assertEquals(2, count(SeriesLimiter.OVERFLOW_ADDR, "404"), 0);
+        // each lookup of an overflowing series is counted again
+        Assert.assertEquals(2, MonitorMetrics.INSTANCE.collectorRegistry.getSampleValue(
+                "servlet_monitor_series_overflow_total", new String[]{"metric"},
+                new String[]{"dependency_request_seconds"}), 0);
+    }
+
+    private static Double count(String addr, String status) {
+        return MonitorMetrics.INSTANCE.collectorRegistry.getSampleValue("dependency_request_seconds_count",
+                DEPENDENCY_LABELS, new String[]{"api", "http", status, "GET", addr, "false", ""});
+    }
+}
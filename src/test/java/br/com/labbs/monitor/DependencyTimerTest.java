@@ -0,0 +1,161 @@
+package br.com.labbs.monitor;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Tests the dependency timer over the {@link MonitorMetrics} instance, which is initialized once for the class.
+ */
+public class DependencyTimerTest {
+
+    private static final String[] DEPENDENCY_LABELS = {"name", "type", "status", "method", "addr", "isError",
+            "errorMessage"};
+
+    private static final DependencyTimer early = MonitorMetrics.INSTANCE.dependencyTimer("db", "http", "GET",
+            "/early");
+
+    @BeforeClass
+    public static void init() {
+        // obtained and used before the instance is initialized
+        early.start().close();
+        early.observe(System.nanoTime(), "200");
+        MonitorMetrics.INSTANCE.init(false, "test", null, 0.1, 1);
+    }
+
+    @Test
+    public void test_handle_obtained_before_init_records_from_init_on() {
+        Assert.assertNull(count("db", "GET", "/early", "", "true", ""));
+        Assert.assertNull(count("db", "GET", "/early", "200", "false", ""));
+        Assert.assertTrue(early.successSeries.isEmpty());
+        Assert.assertTrue(early.errorSeries.isEmpty());
+
+        early.observe(System.nanoTime(), "200");
+        Assert.assertEquals(1, count("db", "GET", "/early", "200", "false", ""), 0);
+    }
+
+    @Test
+    public void test_sample_closed_without_outcome_is_an_error_without_status() {
+        DependencyTimer timer = MonitorMetrics.INSTANCE.dependencyTimer("api", "http", "GET", "/no-outcome");
+
+        timer.start().close();
+
+        Assert.assertEquals(1, count("api", "GET", "/no-outcome", "", "true", ""), 0);
+    }
+
+    @Test
+    public void test_sample_is_recorded_once() {
+        DependencyTimer timer = MonitorMetrics.INSTANCE.dependencyTimer("api", "http", "GET", "/closed-twice");
+
+        DependencyTimer.Sample sample = timer.start();
+        sample.success("200");
+        sample.close();
+        sample.close();
+
+        Assert.assertEquals(1, count("api", "GET", "/closed-twice", "200", "false", ""), 0);
+    }
+
+    @Test
+    public void test_time_records_the_exception_message_and_rethrows() {
+        DependencyTimer timer = MonitorMetrics.INSTANCE.dependencyTimer("api", "http", "GET", "/throws");
+        final IllegalStateException thrown = new IllegalStateException("connection refused");
+
+        try {
+            timer.time(new DependencyTimer.TimedCall<Object>() {
+                @Override
+                public Object call(DependencyTimer.Sample sample) {
+                    throw thrown;
+                }
+            });
+            Assert.fail("the exception must be rethrown");
+        } catch (Exception e) {
+            Assert.assertSame(thrown, e);
+        }
+
+        Assert.assertEquals(1, count("api", "GET", "/throws", "", "true", "connection refused"), 0);
+    }
+
+    @Test
+    public void test_time_records_the_exception_class_without_message() {
+        DependencyTimer timer = MonitorMetrics.INSTANCE.dependencyTimer("api", "http", "GET", "/throws-no-message");
+
+        try {
+            timer.time(new DependencyTimer.TimedCall<Object>() {
+                @Override
+                public Object call(DependencyTimer.Sample sample) throws IOException {
+                    throw new IOException();
+                }
+            });
+            Assert.fail("the exception must be rethrown");
+        } catch (Exception e) {
+            Assert.assertTrue(e instanceof IOException);
+        }
+
+        Assert.assertEquals(1, count("api", "GET", "/throws-no-message", "", "true", "IOException"), 0);
+    }
+
+    @Test
+    public void test_time_keeps_the_outcome_set_before_throwing() {
+        DependencyTimer timer = MonitorMetrics.INSTANCE.dependencyTimer("api", "http", "GET", "/throws-after-error");
+
+        try {
+            timer.time(new DependencyTimer.TimedCall<Object>() {
+                @Override
+                public Object call(DependencyTimer.Sample sample) throws IOException {
+                    sample.error("503", "unavailable");
+                    throw new IOException("read timed out");
+                }
+            });
+            Assert.fail("the exception must be rethrown");
+        } catch (Exception e) {
+            Assert.assertTrue(e instanceof IOException);
+        }
+
+        Assert.assertEquals(1, count("api", "GET", "/throws-after-error", "503", "true", "unavailable"), 0);
+    }
+
+    @Test
+    public void test_success_series_are_cached_per_status() {
+        DependencyTimer timer = MonitorMetrics.INSTANCE.dependencyTimer("api", "http", "POST", "/cached");
+
+        timer.observe(System.nanoTime(), "200");
+        DependencySeries ok = timer.successSeries.get("200");
+        timer.observe(System.nanoTime(), "200");
+        timer.observe(System.nanoTime(), "201");
+        timer.observeError(System.nanoTime(), "500", "boom");
+
+        Assert.assertSame(ok, timer.successSeries.get("200"));
+        Assert.assertEquals(2, timer.successSeries.size());
+        Assert.assertFalse(timer.successSeries.containsKey("500"));
+        Assert.assertEquals(2, count("api", "POST", "/cached", "200", "false", ""), 0);
+        Assert.assertEquals(1, count("api", "POST", "/cached", "201", "false", ""), 0);
+        Assert.assertEquals(1, count("api", "POST", "/cached", "500", "true", "boom"), 0);
+    }
+
+    @Test
+    public void test_error_series_are_cached_per_status_and_message() {
+        DependencyTimer timer = MonitorMetrics.INSTANCE.dependencyTimer("api", "http", "PUT", "/cached-errors");
+
+        timer.observeError(System.nanoTime(), "500", "boom");
+        DependencySeries boom = timer.errorSeries.get("500").get("boom");
+        timer.observeError(System.nanoTime(), "500", "boom");
+        timer.observeError(System.nanoTime(), "500", null);
+        timer.observeError(System.nanoTime(), "503", "boom");
+
+        Assert.assertSame(boom, timer.errorSeries.get("500").get("boom"));
+        Assert.assertEquals(2, timer.errorSeries.get("500").size());
+        Assert.assertEquals(1, timer.errorSeries.get("503").size());
+        Assert.assertNotSame(boom, timer.errorSeries.get("503").get("boom"));
+        Assert.assertEquals(2, count("api", "PUT", "/cached-errors", "500", "true", "boom"), 0);
+        Assert.assertEquals(1, count("api", "PUT", "/cached-errors", "500", "true", ""), 0);
+        Assert.assertEquals(1, count("api", "PUT", "/cached-errors", "503", "true", "boom"), 0);
+    }
+
+    private static Double count(String name, String method, String addr, String status, String isError,
+                                String errorMessage) {
+        return MonitorMetrics.INSTANCE.collectorRegistry.getSampleValue("dependency_request_seconds_count",
+                DEPENDENCY_LABELS, new String[]{name, "http", status, method, addr, isError, errorMessage});
+    }
+}
@@ -0,0 +1,46 @@
+package br.com.labbs.monitor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ErrorMessageSanitizerTest {
+
+    @Test
+    public void test_removes_the_matches_and_truncates() {
+        ErrorMessageSanitizer sanitizer = new ErrorMessageSanitizer("[^A-zÀ-ú .,]+", 10, 4);
+
+        Assert.assertEquals("User  not ", sanitizer.sanitize("User 42 not found"));
+        Assert.assertEquals("", sanitizer.sanitize(null));
+        Assert.assertEquals("", sanitizer.sanitize(""));
+    }
+
+    @Test
+    public void test_cached_messages_are_returned_as_sanitized() {
+        ErrorMessageSanitizer sanitizer = new ErrorMessageSanitizer("\\d+", 50, 2);
+
+        String first = sanitizer.sanitize("timeout after 30s");
+        Assert.assertSame(first, sanitizer.sanitize("timeout after 30s"));
+        for (int i = 0; i < 100; i++) {
+            // evicts the least recently used messages
+            Assert.assertEquals("error ", sanitizer.sanitize("error " + i));
+        }
+        Assert.assertEquals("timeout after s", sanitizer.sanitize("timeout after 30s"));
+    }
+
+    @Test
+    public void test_messages_are_sanitized_without_cache() {
+        ErrorMessageSanitizer sanitizer = new ErrorMessageSanitizer("x", 50, 0);
+        StringBuilder longMessage = new StringBuilder();
+        for (int i = 0; i < ErrorMessageSanitizer.MAX_CACHED_LENGTH; i++) {
+            longMessage.append("ax");
+        }
+
+        Assert.assertEquals("ab", sanitizer.sanitize("axbx"));
+        Assert.assertEquals(50, new ErrorMessageSanitizer("x", 50, 8).sanitize(longMessage.toString()).length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalid_regex_is_rejected() {
+        new ErrorMessageSanitizer("[unclosed", 50, 8);
+    }
+}
@@ -0,0 +1,67 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class InFlightRequestsTest {
+
+    private CollectorRegistry registry;
+    private Counter overflow;
+
+    @Before
+    public void setUp() {
+        registry = new CollectorRegistry();
+        overflow = Counter.build().name("overflow").help("help").register(registry);
+    }
+
+    @Test
+    public void test_same_route_resolves_the_same_counter() {
+        InFlightRequests inFlight = register(0);
+        LongAdder first = inFlight.get("GET", "/a");
+        Assert.assertSame(first, inFlight.get(new String("GET"), "/a"));
+        Assert.assertNotSame(first, inFlight.get("POST", "/a"));
+        Assert.assertNotSame(first, inFlight.get("GET", "/b"));
+    }
+
+    @Test
+    public void test_counts_the_requests_in_flight() {
+        InFlightRequests inFlight = register(0);
+        inFlight.get("GET", "/a").increment();
+        inFlight.get("GET", "/a").increment();
+        inFlight.get("POST", "/a").increment();
+        inFlight.get("GET", "/a").decrement();
+
+        Assert.assertEquals(1, value("/a", "GET"), 0);
+        Assert.assertEquals(1, value("/a", "POST"), 0);
+    }
+
+    @Test
+    public void test_routes_beyond_the_limit_are_counted_on_the_overflow_series() {
+        InFlightRequests inFlight = register(1);
+        inFlight.get("GET", "/a").increment();
+        inFlight.get("GET", "/b").increment();
+        inFlight.get("POST", "/a").increment();
+
+        Assert.assertEquals(1, value("/a", "GET"), 0);
+        Assert.assertNull(registry.getSampleValue("requests_in_flight", new String[]{"addr", "method"},
+                new String[]{"/b", "GET"}));
+        Assert.assertEquals(1, value(SeriesLimiter.OVERFLOW_ADDR, "GET"), 0);
+        Assert.assertEquals(1, value(SeriesLimiter.OVERFLOW_ADDR, "POST"), 0);
+        Assert.assertEquals(2, overflow.get(), 0);
+    }
+
+    private InFlightRequests register(int maxSeries) {
+        return new InFlightRequests("requests_in_flight", "help", new SeriesLimiter(maxSeries, overflow.labels()))
+                .register(registry);
+    }
+
+    private double value(String addr, String method) {
+        return registry.getSampleValue("requests_in_flight", new String[]{"addr", "method"},
+                new String[]{addr, method});
+    }
+}
@@ -0,0 +1,165 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.CollectorRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class LogLinearHistogramTest {
+
+    private CollectorRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new CollectorRegistry();
+    }
+
+    @Test
+    public void test_quantiles_are_within_the_relative_error() {
+        LogLinearHistogram histogram = LogLinearHistogram.build("latency", "help").labelNames("addr")
+                .precisionBits(4).quantiles(0.5, 0.99).register(registry);
+        LogLinearHistogram.Child child = histogram.labels("/a");
+        for (int i = 1; i <= 10000; i++) {
+            child.observe(i / 1000.0);
+        }
+
+        double maxError = Math.scalb(1.0, -5);
+        double median = registry.getSampleValue("latency", new String[]{"addr", "quantile"}, new String[]{"/a", "0.5"});
+        double p99 = registry.getSampleValue("latency", new String[]{"addr", "quantile"}, new String[]{"/a", "0.99"});
+        Assert.assertEquals(5.0, median, 5.0 * maxError);
+        Assert.assertEquals(9.9, p99, 9.9 * maxError);
+        Assert.assertEquals(10000.0, registry.getSampleValue("latency_count", new String[]{"addr"}, new String[]{"/a"}), 0.0);
+        Assert.assertEquals(50005.0, registry.getSampleValue("latency_sum", new String[]{"addr"}, new String[]{"/a"}), 1e-6);
+    }
+
+    @Test
+    public void test_values_out_of_range_are_clamped() {
+        LogLinearHistogram histogram = LogLinearHistogram.build("latency", "help").quantiles(0.0, 1.0).register(registry);
+        histogram.observe(0);
+        histogram.observe(1e9);
+
+        double min = registry.getSampleValue("latency", new String[]{"quantile"}, new String[]{"0.0"});
+        double max = registry.getSampleValue("latency", new String[]{"quantile"}, new String[]{"1.0"});
+        Assert.assertTrue(min < 1e-6);
+        Assert.assertTrue(max > 4000);
+    }
+
+    @Test
+    public void test_derived_buckets_are_exact_octave_counts() {
+        LogLinearHistogram histogram = LogLinearHistogram.build("latency", "help").labelNames("addr")
+                .bucketRange(0.5, 4).register(registry);
+        histogram.labels("/a").observe(0.3);
+        histogram.labels("/a").observe(0.6);
+        histogram.labels("/a").observe(0.7);
+        histogram.labels("/b").observe(3);
+
+        String[] names = {"addr", "le"};
+        Assert.assertEquals(1.0, registry.getSampleValue("latency_bucket", names, new String[]{"/a", "0.5"}), 0.0);
+        Assert.assertEquals(3.0, registry.getSampleValue("latency_bucket", names, new String[]{"/a", "1.0"}), 0.0);
+        Assert.assertEquals(3.0, registry.getSampleValue("latency_bucket", names, new String[]{"/a", "4.0"}), 0.0);
+        Assert.assertEquals(0.0, registry.getSampleValue("latency_bucket", names, new String[]{"/b", "0.5"}), 0.0);
+        Assert.assertEquals(1.0, registry.getSampleValue("latency_bucket", names, new String[]{"/b", "+Inf"}), 0.0);
+        Assert.assertNull(registry.getSampleValue("latency_bucket", names, new String[]{"/a", "0.25"}));
+    }
+
+    @Test
+    public void test_value_equal_to_a_bound_is_counted_in_the_bucket_it_ends() {
+        LogLinearHistogram histogram = LogLinearHistogram.build("latency", "help").bucketRange(0.5, 4)
+                .register(registry);
+        histogram.observe(0.5);
+        histogram.observe(1);
+        histogram.observe(Math.nextUp(1.0));
+        histogram.observe(4);
+
+        String[] names = {"le"};
+        Assert.assertEquals(1.0, registry.getSampleValue("latency_bucket", names, new String[]{"0.5"}), 0.0);
+        Assert.assertEquals(2.0, registry.getSampleValue("latency_bucket", names, new String[]{"1.0"}), 0.0);
+        Assert.assertEquals(3.0, registry.getSampleValue("latency_bucket", names, new String[]{"2.0"}), 0.0);
+        Assert.assertEquals(4.0, registry.getSampleValue("latency_bucket", names, new String[]{"4.0"}), 0.0);
+    }
+
+    @Test
+    public void test_sub_bucket_bound_is_inclusive() {
+        LogLinearHistogram histogram = LogLinearHistogram.build("latency", "help").precisionBits(2).quantiles(0.0, 1.0)
+                .register(registry);
+        // 1.25 ends the first sub-bucket of [1, 2), whose middle is 1.125
+        histogram.observe(1.25);
+        histogram.observe(Math.nextUp(1.25));
+
+        Assert.assertEquals(1.125, registry.getSampleValue("latency", new String[]{"quantile"}, new String[]{"0.0"}),
+                0.0);
+        Assert.assertEquals(1.375, registry.getSampleValue("latency", new String[]{"quantile"}, new String[]{"1.0"}),
+                0.0);
+    }
+
+    @Test
+    public void test_bucket_boundaries_do_not_change_with_the_observed_values() {
+        LogLinearHistogram histogram = LogLinearHistogram.build("latency", "help").bucketRange(0.001, 10)
+                .register(registry);
+        histogram.observe(0.3);
+        int buckets = registry.metricFamilySamples().nextElement().samples.size();
+
+        histogram.observe(0.00001);
+        histogram.observe(100);
+
+        Assert.assertEquals(buckets, registry.metricFamilySamples().nextElement().samples.size());
+        String[] names = {"le"};
+        // the bounds are rounded up to powers of two
+        Assert.assertEquals(1.0, registry.getSampleValue("latency_bucket", names, new String[]{"0.001953125"}), 0.0);
+        Assert.assertEquals(2.0, registry.getSampleValue("latency_bucket", names, new String[]{"16.0"}), 0.0);
+        Assert.assertEquals(3.0, registry.getSampleValue("latency_bucket", names, new String[]{"+Inf"}), 0.0);
+        Assert.assertNull(registry.getSampleValue("latency_bucket", names, new String[]{"32.0"}));
+    }
+
+    @Test
+    public void test_weighted_observations_scale_the_count_and_sum() {
+        LogLinearHistogram histogram = LogLinearHistogram.build("latency", "help").quantiles(0.5).register(registry);
+        histogram.labels().observe(0.2, 10);
+        histogram.labels().observe(0.4);
+
+        Assert.assertEquals(11.0, registry.getSampleValue("latency_count"), 0.0);
+        Assert.assertEquals(2.4, registry.getSampleValue("latency_sum"), 1e-9);
+        Assert.assertEquals(0.2, registry.getSampleValue("latency", new String[]{"quantile"}, new String[]{"0.5"}),
+                0.2 * Math.scalb(1.0, -5));
+    }
+
+    @Test
+    public void test_windowed_quantiles_forget_the_old_values() {
+        long start = System.nanoTime();
+        LogLinearHistogram.Child child = new LogLinearHistogram.Child(4, TimeUnit.SECONDS.toNanos(10), 2);
+        child.observeAt(8, start);
+        Assert.assertEquals(8.0, child.get(start).quantile(0.5), 8.0 * Math.scalb(1.0, -5));
+
+        long later = start + TimeUnit.SECONDS.toNanos(12);
+        child.observeAt(0.001, later);
+        LogLinearHistogram.Child.Value value = child.get(later);
+        Assert.assertEquals(0.001, value.quantile(1.0), 0.001 * Math.scalb(1.0, -5));
+        // the count and the sum remain cumulative
+        Assert.assertEquals(2, value.count);
+        Assert.assertEquals(8.001, value.sum, 1e-9);
+    }
+
+    @Test
+    public void test_windowed_quantiles_merge_the_age_buckets() {
+        long start = System.nanoTime();
+        LogLinearHistogram.Child child = new LogLinearHistogram.Child(4, TimeUnit.SECONDS.toNanos(10), 5);
+        child.observeAt(1, start);
+        child.observeAt(2, start + TimeUnit.SECONDS.toNanos(3));
+        child.observeAt(3, start + TimeUnit.SECONDS.toNanos(9));
+
+        LogLinearHistogram.Child.Value value = child.get(start + TimeUnit.SECONDS.toNanos(9));
+        Assert.assertEquals(1.0, value.quantile(0.0), 1.0 * Math.scalb(1.0, -5));
+        Assert.assertEquals(3.0, value.quantile(1.0), 3.0 * Math.scalb(1.0, -5));
+        // the first age bucket is reused once the window slid past it
+        value = child.get(start + TimeUnit.SECONDS.toNanos(11));
+        Assert.assertEquals(2.0, value.quantile(0.0), 2.0 * Math.scalb(1.0, -5));
+        Assert.assertEquals(3, value.count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_window_must_be_positive() {
+        LogLinearHistogram.build("latency", "help").window(0, 5);
+    }
+}
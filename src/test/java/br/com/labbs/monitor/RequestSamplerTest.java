@@ -0,0 +1,63 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.CollectorRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class RequestSamplerTest {
+
+    @Test
+    public void test_sampled_weights_add_up_to_the_requests() {
+        RequestSampler sampler = RequestSampler.fixed("sample_rate", "help", 10, 1);
+        long total = 0;
+        int recorded = 0;
+        for (int i = 0; i < 100000; i++) {
+            int weight = sampler.weight(false, 0.01);
+            total += weight;
+            if (weight > 0) {
+                Assert.assertEquals(10, weight);
+                recorded++;
+            }
+        }
+        Assert.assertEquals(100000, total, 5000);
+        Assert.assertEquals(10000, recorded, 500);
+    }
+
+    @Test
+    public void test_errors_and_slow_requests_are_always_recorded() {
+        RequestSampler sampler = RequestSampler.fixed("sample_rate", "help", 1000, 0.5);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(1, sampler.weight(true, 0.01));
+            Assert.assertEquals(1, sampler.weight(false, 0.5));
+        }
+    }
+
+    @Test
+    public void test_adaptive_rate_follows_the_budget() {
+        RequestSampler sampler = RequestSampler.adaptive("sample_rate", "help", 100, 1);
+        long start = System.nanoTime();
+        // 10000 requests per second recorded at 1 in 1
+        for (int i = 1; i <= 10000; i++) {
+            sampler.recorded(1, start + i * TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        Assert.assertEquals(100, sampler.getOneIn());
+
+        // the traffic stops, the next recording stands for a low rate
+        sampler.recorded(100, start + TimeUnit.SECONDS.toNanos(10));
+        Assert.assertEquals(1, sampler.getOneIn());
+    }
+
+    @Test
+    public void test_exposes_the_sample_rate() {
+        CollectorRegistry registry = new CollectorRegistry();
+        RequestSampler.fixed("sample_rate", "help", 4, 1).register(registry);
+        Assert.assertEquals(0.25, registry.getSampleValue("sample_rate"), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_rate_must_be_positive() {
+        RequestSampler.fixed("sample_rate", "help", 0, 1);
+    }
+}
@@ -0,0 +1,104 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestSeriesCacheTest {
+
+    private CollectorRegistry registry;
+    private Counter responseSize;
+    private WeightedHistogram requestSeconds;
+    private Counter overflow;
+    private RequestSeriesCache cache;
+
+    @Before
+    public void setUp() {
+        registry = new CollectorRegistry();
+        requestSeconds = WeightedHistogram.build().name("request_seconds").help("help")
+                .labelNames("type", "status", "method", "addr", "isError", "errorMessage").buckets(0.1, 1)
+                .register(registry);
+        responseSize = Counter.build().name("response_size_bytes").help("help")
+                .labelNames("type", "status", "method", "addr", "isError", "errorMessage").register(registry);
+        overflow = Counter.build().name("overflow").help("help").register(registry);
+        cache = new RequestSeriesCache(requestSeconds, null, responseSize, new SeriesLimiter(0, overflow.labels()));
+    }
+
+    @Test
+    public void test_same_labels_resolve_the_same_series() {
+        RequestSeries first = cache.get("http", "200", "GET", "/a", false, "");
+        RequestSeries second = cache.get("http", new String("200"), "GET", "/a", false, "");
+        Assert.assertSame(first, second);
+    }
+
+    @Test
+    public void test_different_labels_resolve_different_series() {
+        RequestSeries ok = cache.get("http", "200", "GET", "/a", false, "");
+        Assert.assertNotSame(ok, cache.get("http", "500", "GET", "/a", true, ""));
+        Assert.assertNotSame(ok, cache.get("http", "200", "POST", "/a", false, ""));
+        Assert.assertNotSame(ok, cache.get("http", "200", "GET", "/b", false, ""));
+        Assert.assertNotSame(ok, cache.get("https", "200", "GET", "/a", false, ""));
+    }
+
+    @Test
+    public void test_error_messages_resolve_their_own_series() {
+        RequestSeries[] series = new RequestSeries[1000];
+        for (int i = 0; i < series.length; i++) {
+            series[i] = cache.get("http", "500", "GET", "/a", true, "error " + i);
+        }
+        RequestSeries withoutMessage = cache.get("http", "500", "GET", "/a", true, "");
+        for (int i = 0; i < series.length; i++) {
+            Assert.assertSame(series[i], cache.get("http", "500", "GET", "/a", true, "error " + i));
+            Assert.assertNotSame(withoutMessage, series[i]);
+            Assert.assertNotSame(series[i], cache.get("http", "502", "GET", "/a", true, "error " + i));
+        }
+        Assert.assertSame(withoutMessage, cache.get("http", "500", "GET", "/a", true, ""));
+    }
+
+    @Test
+    public void test_series_records_on_the_labelled_children() {
+        RequestSeries series = cache.get("http", "404", "GET", "/a", true, "not found");
+        series.observe(0.5);
+        series.inc(10);
+        series.inc(5);
+
+        String[] names = {"type", "status", "method", "addr", "isError", "errorMessage"};
+        String[] values = {"http", "404", "GET", "/a", "true", "not found"};
+        Assert.assertEquals(1.0, registry.getSampleValue("request_seconds_count", names, values), 0.0);
+        Assert.assertEquals(0.5, registry.getSampleValue("request_seconds_sum", names, values), 0.0);
+        Assert.assertEquals(15.0, registry.getSampleValue("response_size_bytes", names, values), 0.0);
+    }
+
+    @Test
+    public void test_series_beyond_the_limit_are_folded_into_overflow() {
+        cache = new RequestSeriesCache(requestSeconds, null, responseSize, new SeriesLimiter(2, overflow.labels()));
+        cache.get("http", "200", "GET", "/a", false, "").inc(1);
+        cache.get("http", "200", "GET", "/b", false, "").inc(1);
+        cache.get("http", "500", "GET", "/a", true, "boom").inc(1);
+        cache.get("http", "500", "GET", "/c", true, "boom").inc(1);
+        cache.get("http", "200", "GET", "/a", false, "").inc(1);
+
+        String[] names = {"type", "status", "method", "addr", "isError", "errorMessage"};
+        Assert.assertEquals(2.0, registry.getSampleValue("response_size_bytes", names,
+                new String[]{"http", "200", "GET", "/a", "false", ""}), 0.0);
+        Assert.assertEquals(2.0, registry.getSampleValue("response_size_bytes", names,
+                new String[]{"http", "500", "GET", "__overflow__", "true", ""}), 0.0);
+        Assert.assertNull(registry.getSampleValue("response_size_bytes", names,
+                new String[]{"http", "500", "GET", "/c", "true", "boom"}));
+        Assert.assertEquals(2.0, registry.getSampleValue("overflow"), 0.0);
+    }
+
+    @Test
+    public void test_sampled_request_folded_into_overflow_counts_its_weight() {
+        cache = new RequestSeriesCache(requestSeconds, null, responseSize, new SeriesLimiter(1, overflow.labels()));
+        cache.get("http", "200", "GET", "/a", false, "").inc(1, 100);
+        cache.get("http", "200", "GET", "/b", false, "").inc(1, 100);
+
+        String[] names = {"type", "status", "method", "addr", "isError", "errorMessage"};
+        Assert.assertEquals(100.0, registry.getSampleValue("response_size_bytes", names,
+                new String[]{"http", "200", "GET", "__overflow__", "false", ""}), 0.0);
+        Assert.assertEquals(100.0, registry.getSampleValue("overflow"), 0.0);
+    }
+}
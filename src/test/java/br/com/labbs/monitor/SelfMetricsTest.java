@@ -0,0 +1,54 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.GaugeMetricFamily;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class SelfMetricsTest {
+
+    @Test
+    public void test_sampling_can_be_disabled() {
+        Assert.assertEquals(1, new SelfMetrics(1).sample());
+        Assert.assertEquals(0, new SelfMetrics(0).sample());
+    }
+
+    @Test
+    public void test_timed_requests_stand_for_the_sampled_ones() {
+        CollectorRegistry registry = new CollectorRegistry();
+        SelfMetrics selfMetrics = new SelfMetrics(100).register(registry);
+        selfMetrics.observeFilter(2000, 100);
+        selfMetrics.observeCollect(1000, 100);
+
+        Assert.assertEquals(100, registry.getSampleValue("servlet_monitor_filter_seconds_count"), 0);
+        Assert.assertEquals(2e-4, registry.getSampleValue("servlet_monitor_filter_seconds_sum"), 1e-12);
+        Assert.assertEquals(1e-4, registry.getSampleValue("servlet_monitor_collect_seconds_sum"), 1e-12);
+    }
+
+    @Test
+    public void test_exposes_the_last_scrape() {
+        CollectorRegistry registry = new CollectorRegistry();
+        SelfMetrics selfMetrics = new SelfMetrics(100).register(registry);
+        selfMetrics.observeScrape(5000000, 1024, series("request_seconds", 42));
+        selfMetrics.observeScrape(5000000, 1024, series("request_seconds", 43));
+
+        selfMetrics.observeScrapeWrite(2000000);
+
+        Assert.assertEquals(2, registry.getSampleValue("servlet_monitor_scrape_seconds_count"), 0);
+        Assert.assertEquals(0.002, registry.getSampleValue("servlet_monitor_scrape_write_seconds_sum"), 1e-12);
+        Assert.assertEquals(2048, registry.getSampleValue("servlet_monitor_scrape_bytes_total"), 0);
+        Assert.assertEquals(43, registry.getSampleValue("servlet_monitor_series", new String[]{"family"},
+                new String[]{"request_seconds"}), 0);
+    }
+
+    private static SelfMetrics.SeriesCounts series(final String family, final long count) {
+        return new SelfMetrics.SeriesCounts() {
+            @Override
+            public void addTo(GaugeMetricFamily gauge) {
+                gauge.addMetric(Collections.singletonList(family), count);
+            }
+        };
+    }
+}
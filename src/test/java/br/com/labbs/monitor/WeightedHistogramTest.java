@@ -0,0 +1,67 @@
+package br.com.labbs.monitor;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Histogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+public class WeightedHistogramTest {
+
+    @Test
+    public void test_exposed_as_the_client_library_histogram() {
+        CollectorRegistry expected = new CollectorRegistry();
+        Histogram.Child histogram = Histogram.build("latency", "help").labelNames("addr").buckets(0.1, 1)
+                .register(expected).labels("/a");
+        CollectorRegistry actual = new CollectorRegistry();
+        WeightedHistogram.Child weighted = WeightedHistogram.build("latency", "help").labelNames("addr")
+                .buckets(0.1, 1).register(actual).labels("/a");
+        for (double value : new double[]{0.05, 0.1, 0.5, 1, 3}) {
+            histogram.observe(value);
+            weighted.observe(value);
+        }
+
+        Assert.assertEquals(samples(expected), samples(actual));
+    }
+
+    @Test
+    public void test_weighted_observation_counts_as_many_observations() {
+        CollectorRegistry registry = new CollectorRegistry();
+        WeightedHistogram histogram = WeightedHistogram.build("latency", "help").buckets(0.1, 1).register(registry);
+        histogram.labels().observe(0.5, 1 << 20);
+        histogram.observe(0.05);
+
+        Assert.assertEquals(1, registry.getSampleValue("latency_bucket", new String[]{"le"}, new String[]{"0.1"}), 0);
+        Assert.assertEquals((1 << 20) + 1, registry.getSampleValue("latency_bucket", new String[]{"le"},
+                new String[]{"1.0"}), 0);
+        Assert.assertEquals((1 << 20) + 1, registry.getSampleValue("latency_bucket", new String[]{"le"},
+                new String[]{"+Inf"}), 0);
+        Assert.assertEquals((1 << 20) + 1, registry.getSampleValue("latency_count"), 0);
+        Assert.assertEquals(0.5 * (1 << 20) + 0.05, registry.getSampleValue("latency_sum"), 1e-9);
+    }
+
+    @Test
+    public void test_merged_histogram_is_added_to_the_same_series() {
+        CollectorRegistry registry = new CollectorRegistry();
+        Histogram merged = Histogram.build("latency", "help").labelNames("addr").buckets(0.1, 1).create();
+        WeightedHistogram histogram = WeightedHistogram.build("latency", "help").labelNames("addr").buckets(0.1, 1)
+                .merging(merged).register(registry);
+        histogram.labels("/a").observe(0.5, 10);
+        merged.labels("/a").observe(0.05);
+        merged.labels("/b").observe(3);
+
+        String[] addr = {"addr"};
+        Assert.assertEquals(11, registry.getSampleValue("latency_count", addr, new String[]{"/a"}), 0);
+        Assert.assertEquals(5.05, registry.getSampleValue("latency_sum", addr, new String[]{"/a"}), 1e-9);
+        Assert.assertEquals(1, registry.getSampleValue("latency_bucket", new String[]{"addr", "le"},
+                new String[]{"/a", "0.1"}), 0);
+        Assert.assertEquals(1, registry.getSampleValue("latency_count", addr, new String[]{"/b"}), 0);
+    }
+
+    private static List<Collector.MetricFamilySamples> samples(CollectorRegistry registry) {
+        return Collections.list(registry.metricFamilySamples());
+    }
+}
@@ -0,0 +1,202 @@
+package br.com.labbs.monitor.dependency;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DependencyCheckerExecutorTest {
+
+    private final DependencyCheckerExecutor executor = new DependencyCheckerExecutor(2, 0);
+    private final BlockingQueue<Object[]> results = new LinkedBlockingQueue<Object[]>();
+    private final DependencyCheckListener listener = new DependencyCheckListener() {
+        @Override
+        public void onCheck(String dependencyName, DependencyState state, double elapsedSeconds, Throwable cause) {
+            results.add(new Object[]{dependencyName, state, elapsedSeconds, cause});
+        }
+    };
+
+    @After
+    public void tearDown() {
+        executor.cancelTasks();
+    }
+
+    @Test
+    public void test_checks_keep_running_after_an_exception() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        executor.schedule(checker("db", new Check() {
+            @Override
+            public DependencyState run() {
+                if (runs.incrementAndGet() == 1) {
+                    throw new IllegalStateException("connection refused");
+                }
+                return DependencyState.UP;
+            }
+        }), 10, 1000, listener);
+
+        Object[] first = next();
+        Assert.assertEquals("db", first[0]);
+        Assert.assertEquals(DependencyState.DOWN, first[1]);
+        Assert.assertTrue(first[3] instanceof IllegalStateException);
+        Object[] second = next();
+        Assert.assertEquals(DependencyState.UP, second[1]);
+        Assert.assertNull(second[3]);
+    }
+
+    @Test
+    public void test_a_check_lasting_more_than_the_timeout_is_interrupted_and_reported_down()
+            throws InterruptedException {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        executor.schedule(checker("slow", new Check() {
+            @Override
+            public DependencyState run() {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return DependencyState.UP;
+            }
+        }), 1000, 50, listener);
+
+        Object[] result = next();
+        Assert.assertEquals(DependencyState.DOWN, result[1]);
+        Assert.assertEquals(0.05, (Double) result[2], 0);
+        Assert.assertTrue(result[3] instanceof TimeoutException);
+        Assert.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        // the interrupted check completing late is not reported
+        Assert.assertNull(results.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void test_the_timeout_counts_from_the_start_of_the_check() throws InterruptedException {
+        DependencyCheckerExecutor singleWorker = new DependencyCheckerExecutor(1, 0);
+        try {
+            final AtomicInteger runs = new AtomicInteger();
+            singleWorker.schedule(checker("busy", new Check() {
+                @Override
+                public DependencyState run() {
+                    if (runs.incrementAndGet() == 1) {
+                        try {
+                            Thread.sleep(300);
+                        } catch (InterruptedException e) {
+                            return DependencyState.DOWN;
+                        }
+                    }
+                    return DependencyState.UP;
+                }
+            }), 1, 5000, listener);
+            // waits for the worker longer than its timeout
+            singleWorker.schedule(checker("queued", new Check() {
+                @Override
+                public DependencyState run() {
+                    return DependencyState.UP;
+                }
+            }), 1, 100, listener);
+
+            Object[] result = next();
+            while (!"queued".equals(result[0])) {
+                result = next();
+            }
+            Assert.assertEquals(DependencyState.UP, result[1]);
+            Assert.assertNull(result[3]);
+            Assert.assertTrue((Double) result[2] < 0.1);
+        } finally {
+            singleWorker.cancelTasks();
+        }
+    }
+
+    @Test
+    public void test_a_stuck_check_is_not_run_again() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.schedule(checker("stuck", new Check() {
+            @Override
+            public DependencyState run() {
+                runs.incrementAndGet();
+                while (true) {
+                    try {
+                        release.await();
+                        return DependencyState.UP;
+                    } catch (InterruptedException e) {
+                        // ignores the interruption
+                    }
+                }
+            }
+        }), 10, 20, listener);
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(DependencyState.DOWN, next()[1]);
+        }
+        Assert.assertEquals(1, runs.get());
+        release.countDown();
+    }
+
+    @Test
+    public void test_async_checks_are_reported_on_completion() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        final CompletableFuture<DependencyState> pending = new CompletableFuture<DependencyState>();
+        executor.schedule(new AsyncDependencyChecker() {
+            @Override
+            public CompletionStage<DependencyState> check() {
+                switch (runs.incrementAndGet()) {
+                    case 1:
+                        CompletableFuture<DependencyState> failed = new CompletableFuture<DependencyState>();
+                        failed.completeExceptionally(new IllegalStateException("unreachable"));
+                        return failed;
+                    case 2:
+                        return pending;
+                    default:
+                        return CompletableFuture.completedFuture(DependencyState.UP);
+                }
+            }
+
+            @Override
+            public String getDependencyName() {
+                return "api";
+            }
+        }, 10, 50, listener);
+
+        Object[] failed = next();
+        Assert.assertEquals("api", failed[0]);
+        Assert.assertEquals(DependencyState.DOWN, failed[1]);
+        Assert.assertTrue(failed[3] instanceof IllegalStateException);
+        Object[] timedOut = next();
+        Assert.assertEquals(DependencyState.DOWN, timedOut[1]);
+        Assert.assertTrue(timedOut[3] instanceof TimeoutException);
+        Assert.assertTrue(pending.isCancelled());
+        Assert.assertEquals(DependencyState.UP, next()[1]);
+    }
+
+    private Object[] next() throws InterruptedException {
+        Object[] result = results.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull("no check result", result);
+        return result;
+    }
+
+    private interface Check {
+        DependencyState run();
+    }
+
+    private static DependencyChecker checker(final String name, final Check check) {
+        return new DependencyChecker() {
+            @Override
+            public DependencyState run() {
+                return check.run();
+            }
+
+            @Override
+            public String getDependencyName() {
+                return name;
+            }
+        };
+    }
+}
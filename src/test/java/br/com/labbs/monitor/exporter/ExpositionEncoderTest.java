@@ -0,0 +1,145 @@
+package br.com.labbs.monitor.exporter;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.GaugeMetricFamily;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.Summary;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class ExpositionEncoderTest {
+
+    @Test
+    public void test_text_format_matches_the_client_library() throws IOException {
+        CollectorRegistry registry = new CollectorRegistry();
+        Counter.build("requests", "with \\ and \"quotes\"\nin help").labelNames("path", "method").register(registry)
+                .labels("/us\"ers\\\n", "GET").inc(3);
+        Gauge.build("temperature", "a help").register(registry).set(-12.75);
+        Histogram.build("latency", "a help").labelNames("addr").buckets(0.1, 1).register(registry)
+                .labels("/é😀").observe(0.3);
+        Summary.build("size", "a help").quantile(0.5, 0.01).register(registry).observe(1.5E-7);
+
+        StringWriter expected = new StringWriter();
+        TextFormat.write004(expected, registry.metricFamilySamples());
+
+        ExpositionEncoder encoder = new ExpositionEncoder();
+        Assert.assertEquals(expected.toString(), encode(encoder, registry, 32, false));
+        // the second scrape goes through the cached prefixes
+        Assert.assertEquals(expected.toString(), encode(encoder, registry, 8192, false));
+    }
+
+    @Test
+    public void test_values_are_formatted_as_go_floats() throws IOException {
+        double[] values = {0, -0.0, 1, -42, 9007199254740992D, 1e300, 0.1, -2.5E-9, Double.NaN,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Long.MIN_VALUE};
+        for (double value : values) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ExpositionEncoder.Sink sink = new ExpositionEncoder.Sink(bytes, new byte[32]);
+            ExpositionEncoder.writeDouble(sink, value);
+            sink.flush();
+            String formatted = new String(bytes.toByteArray(), StandardCharsets.US_ASCII);
+            Assert.assertEquals(value, Double.parseDouble(formatted.replace("Inf", "Infinity")), 0);
+            if (Math.abs(value) < 1e7 || Double.isNaN(value) || Double.isInfinite(value)) {
+                Assert.assertEquals(Collector.doubleToGoString(value), formatted);
+            }
+        }
+    }
+
+    @Test
+    public void test_open_metrics_counters_carry_total_without_created() throws IOException {
+        CollectorRegistry registry = new CollectorRegistry();
+        Counter.build("jobs_total", "a help").register(registry).inc();
+
+        String body = encode(new ExpositionEncoder(), registry, 8192, true);
+
+        Assert.assertEquals("# TYPE jobs counter\n# HELP jobs a help\njobs_total 1.0\n# EOF\n", body);
+    }
+
+    @Test
+    public void test_both_formats_are_written_from_the_same_cache() throws IOException {
+        CollectorRegistry registry = new CollectorRegistry();
+        Counter.build("requests", "a \"help\"").labelNames("path", "method").register(registry)
+                .labels("/users", "GET").inc();
+        Histogram.build("latency", "a help").buckets(1).register(registry).observe(0.5);
+        StringWriter expected = new StringWriter();
+        TextFormat.write004(expected, registry.metricFamilySamples());
+
+        ExpositionEncoder encoder = new ExpositionEncoder();
+        Assert.assertEquals(expected.toString(), encode(encoder, registry, 8192, false));
+        String latency = "# TYPE latency histogram\n"
+                + "# HELP latency a help\n"
+                + "latency_bucket{le=\"1.0\"} 1.0\n"
+                + "latency_bucket{le=\"+Inf\"} 1.0\n"
+                + "latency_count 1.0\n"
+                + "latency_sum 0.5\n";
+        String requests = "# TYPE requests counter\n"
+                + "# HELP requests a \\\"help\\\"\n"
+                + "requests_total{path=\"/users\",method=\"GET\"} 1.0\n";
+        String openMetrics = encode(encoder, registry, 8192, true);
+        // the registry does not order its collectors
+        Assert.assertTrue(openMetrics.equals(latency + requests + "# EOF\n")
+                || openMetrics.equals(requests + latency + "# EOF\n"));
+        Assert.assertEquals(expected.toString(), encode(encoder, registry, 8192, false));
+    }
+
+    @Test
+    public void test_series_are_counted_per_family() throws IOException {
+        CollectorRegistry registry = new CollectorRegistry();
+        Gauge gauge = Gauge.build("g", "a help").labelNames("l").register(registry);
+        gauge.labels("a").set(1);
+        gauge.labels("b").set(2);
+        Histogram histogram = Histogram.build("h", "a help").labelNames("l").buckets(0.1, 1).register(registry);
+        histogram.labels("a").observe(0.5);
+        ExpositionEncoder encoder = new ExpositionEncoder();
+        encode(encoder, registry, 8192, false);
+
+        Assert.assertEquals(Arrays.asList(series("g", 2), series("h", 1)), series(encoder));
+
+        registry.unregister(histogram);
+        gauge.labels("c").set(3);
+        encode(encoder, registry, 8192, true);
+
+        Assert.assertEquals(Collections.singletonList(series("g", 3)), series(encoder));
+    }
+
+    private static List<Collector.MetricFamilySamples.Sample> series(ExpositionEncoder encoder) {
+        GaugeMetricFamily gauge = new GaugeMetricFamily("servlet_monitor_series", "help",
+                Collections.singletonList("family"));
+        encoder.addTo(gauge);
+        List<Collector.MetricFamilySamples.Sample> samples =
+                new ArrayList<Collector.MetricFamilySamples.Sample>(gauge.samples);
+        Collections.sort(samples, new Comparator<Collector.MetricFamilySamples.Sample>() {
+            @Override
+            public int compare(Collector.MetricFamilySamples.Sample a, Collector.MetricFamilySamples.Sample b) {
+                return a.labelValues.get(0).compareTo(b.labelValues.get(0));
+            }
+        });
+        return samples;
+    }
+
+    private static Collector.MetricFamilySamples.Sample series(String family, double count) {
+        return new Collector.MetricFamilySamples.Sample("servlet_monitor_series",
+                Collections.singletonList("family"), Collections.singletonList(family), count);
+    }
+
+    private static String encode(ExpositionEncoder encoder, CollectorRegistry registry, int bufferSize,
+                                 boolean openMetrics) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        encoder.write(bytes, new byte[bufferSize], registry.metricFamilySamples(), openMetrics);
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
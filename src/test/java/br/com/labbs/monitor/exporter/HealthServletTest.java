@@ -0,0 +1,109 @@
+package br.com.labbs.monitor.exporter;
+
+import br.com.labbs.monitor.MonitorMetrics;
+import br.com.labbs.monitor.dependency.DependencyHealthRegistry;
+import br.com.labbs.monitor.dependency.DependencyState;
+import jakarta.servlet.ServletConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+public class HealthServletTest {
+
+    private final DependencyHealthRegistry registry = MonitorMetrics.INSTANCE.getDependencyHealth();
+
+    @Test
+    public void test_ready_when_the_critical_dependencies_are_up() throws IOException, ServletException {
+        registry.onCheck("health-db", DependencyState.UP, 0.01, null);
+        registry.onCheck("health-cache", DependencyState.DOWN, 0.01, null);
+
+        HealthServlet servlet = new HealthServlet();
+        servlet.init(config("critical-dependencies", "health-db", "max-age", null));
+        HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
+        String body = probe(servlet, resp);
+
+        Mockito.verify(resp).setStatus(HttpServletResponse.SC_OK);
+        Assert.assertThat(body, CoreMatchers.startsWith("{\"status\":\"UP\""));
+        Assert.assertThat(body, CoreMatchers.containsString(
+                "{\"name\":\"health-cache\",\"state\":\"DOWN\",\"ageMillis\":"));
+        Assert.assertThat(body, CoreMatchers.containsString("\"stale\":false,\"critical\":false}"));
+    }
+
+    @Test
+    public void test_unavailable_when_a_critical_dependency_is_down_unknown_or_stale()
+            throws IOException, ServletException, InterruptedException {
+        registry.onCheck("health-queue", DependencyState.DOWN, 0.01, null);
+        HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
+        HealthServlet servlet = new HealthServlet();
+        servlet.init(config("critical-dependencies", "health-queue", "max-age", null));
+        probe(servlet, resp);
+        Mockito.verify(resp).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+
+        registry.register("health-search");
+        resp = Mockito.mock(HttpServletResponse.class);
+        servlet = new HealthServlet();
+        servlet.init(config("critical-dependencies", "health-search", "max-age", null));
+        Assert.assertThat(probe(servlet, resp), CoreMatchers.containsString(
+                "{\"name\":\"health-search\",\"state\":\"UNKNOWN\",\"stale\":false,\"critical\":true}"));
+        Mockito.verify(resp).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+
+        registry.onCheck("health-api", DependencyState.UP, 0.01, null);
+        Thread.sleep(5);
+        resp = Mockito.mock(HttpServletResponse.class);
+        servlet = new HealthServlet();
+        servlet.init(config("critical-dependencies", "health-api", "max-age", "0"));
+        Assert.assertThat(probe(servlet, resp), CoreMatchers.containsString("\"stale\":true,\"critical\":true}"));
+        Mockito.verify(resp).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    public void test_a_critical_dependency_without_checker_is_down() throws IOException, ServletException {
+        HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
+        HealthServlet servlet = new HealthServlet();
+        servlet.init(config("critical-dependencies", "health-missing", "max-age", "1000"));
+
+        Assert.assertThat(probe(servlet, resp), CoreMatchers.containsString(
+                "{\"name\":\"health-missing\",\"state\":\"UNKNOWN\",\"stale\":false,\"critical\":true}"));
+        Mockito.verify(resp).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    @Test
+    public void test_unchecked_state_counts_a_dependency_not_checked_yet_as_up() throws IOException, ServletException {
+        registry.register("health-starting");
+        HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
+        HealthServlet servlet = new HealthServlet();
+        servlet.init(config("critical-dependencies", "health-starting", "unchecked-state", "up"));
+
+        Assert.assertThat(probe(servlet, resp), CoreMatchers.containsString(
+                "{\"name\":\"health-starting\",\"state\":\"UNKNOWN\",\"stale\":false,\"critical\":true}"));
+        Mockito.verify(resp).setStatus(HttpServletResponse.SC_OK);
+
+        resp = Mockito.mock(HttpServletResponse.class);
+        servlet = new HealthServlet();
+        servlet.init(config("critical-dependencies", "health-starting,health-unregistered", "unchecked-state", "UP"));
+        probe(servlet, resp);
+        Mockito.verify(resp).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    private static String probe(HealthServlet servlet, HttpServletResponse resp) throws IOException {
+        StringWriter body = new StringWriter();
+        Mockito.when(resp.getWriter()).thenReturn(new PrintWriter(body));
+        servlet.doGet(Mockito.mock(HttpServletRequest.class), resp);
+        return body.toString();
+    }
+
+    private static ServletConfig config(String name, String value, String otherName, String otherValue) {
+        final ServletConfig config = Mockito.mock(ServletConfig.class);
+        Mockito.when(config.getInitParameter(name)).thenReturn(value);
+        Mockito.when(config.getInitParameter(otherName)).thenReturn(otherValue);
+        return config;
+    }
+}
@@ -0,0 +1,72 @@
+package br.com.labbs.monitor.exporter;
+
+import br.com.labbs.monitor.MonitorMetrics;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+
+/**
+ * Tests the scrapes recorded on the servlet_monitor_scrape_* metrics, over the {@link MonitorMetrics} instance,
+ * which is initialized once for the class.
+ */
+public class MetricsServletSelfMetricsTest {
+
+    @BeforeClass
+    public static void init() {
+        MonitorMetrics.INSTANCE.init(false, "test", null, 0.1, 1);
+    }
+
+    @Test
+    public void test_streamed_scrape_times_the_render_without_the_writes() throws IOException {
+        final HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
+        final HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(resp.getOutputStream()).thenReturn(new SlowOutputStream());
+
+        new MetricsServlet().doGet(req, resp);
+
+        Assert.assertEquals(1, value("servlet_monitor_scrape_seconds_count"), 0);
+        Assert.assertTrue(value("servlet_monitor_scrape_seconds_sum") < 0.2);
+        Assert.assertEquals(1, value("servlet_monitor_scrape_write_seconds_count"), 0);
+        Assert.assertTrue(value("servlet_monitor_scrape_write_seconds_sum") >= 0.2);
+    }
+
+    private static Double value(String name) {
+        return MonitorMetrics.INSTANCE.collectorRegistry.getSampleValue(name);
+    }
+
+    /**
+     * The output stream of a slow scraper, each write taking 200 ms.
+     */
+    private static class SlowOutputStream extends ServletOutputStream {
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
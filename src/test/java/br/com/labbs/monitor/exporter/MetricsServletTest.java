@@ -1,7 +1,14 @@
 package br.com.labbs.monitor.exporter;
 
 import br.com.labbs.monitor.MonitorMetrics;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
 import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import jakarta.servlet.ServletConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.hamcrest.CoreMatchers;
@@ -11,9 +18,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 
 public class MetricsServletTest {
 
@@ -35,16 +44,7 @@ public class MetricsServletTest {
         Gauge.build("b", "a help").register(MonitorMetrics.INSTANCE.collectorRegistry);
         Gauge.build("c", "a help").register(MonitorMetrics.INSTANCE.collectorRegistry);
 
-        final HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
-        final HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
-        final StringWriter stringWriter = new StringWriter();
-        final PrintWriter writer = new PrintWriter(stringWriter);
-
-        Mockito.when(resp.getWriter()).thenReturn(writer);
-
-        metricsServlet.doGet(req, resp);
-
-        final String respBody = stringWriter.toString();
+        final String respBody = scrape(metricsServlet);
 
         Assert.assertThat(respBody, CoreMatchers.containsString("a 0.0"));
         Assert.assertThat(respBody, CoreMatchers.containsString("b 0.0"));
@@ -55,29 +55,32 @@ public class MetricsServletTest {
     public void test_writer_is_closed_normally() throws IOException {
         final HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
         final HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
-        final PrintWriter writer = Mockito.mock(PrintWriter.class);
-        Mockito.when(resp.getWriter()).thenReturn(writer);
+        final BytesOutputStream output = new BytesOutputStream();
+        Mockito.when(resp.getOutputStream()).thenReturn(output);
         Gauge.build("a", "a help").register(MonitorMetrics.INSTANCE.collectorRegistry);
 
         metricsServlet.doGet(req, resp);
-        Mockito.verify(writer).close();
+        Assert.assertTrue(output.closed);
     }
 
     @Test
     public void test_writer_is_closed_on_exception() throws IOException {
         final HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
         final HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
-        final PrintWriter writer = Mockito.mock(PrintWriter.class);
-        Mockito.when(resp.getWriter()).thenReturn(writer);
-        Mockito.doThrow(new RuntimeException()).when(writer).write(Mockito.anyChar());
-        Mockito.doThrow(new RuntimeException()).when(writer).write(Mockito.anyInt());
+        final BytesOutputStream output = new BytesOutputStream() {
+            @Override
+            public void write(byte[] b, int off, int len) {
+                throw new RuntimeException();
+            }
+        };
+        Mockito.when(resp.getOutputStream()).thenReturn(output);
         Gauge.build("a", "a help").register(MonitorMetrics.INSTANCE.collectorRegistry);
 
         try {
             metricsServlet.doGet(req, resp);
             Assert.fail("Exception expected");
         } catch (Exception e) {
-            Mockito.verify(writer).close();
+            Assert.assertTrue(output.closed);
         }
     }
 
@@ -89,22 +92,174 @@ public class MetricsServletTest {
 
         final HttpServletRequest reqGet = Mockito.mock(HttpServletRequest.class);
         final HttpServletResponse respGet = Mockito.mock(HttpServletResponse.class);
-        final StringWriter stringWriterGet = new StringWriter();
-        final PrintWriter writerGet = new PrintWriter(stringWriterGet);
-        Mockito.when(respGet.getWriter()).thenReturn(writerGet);
+        final BytesOutputStream outputGet = new BytesOutputStream();
+        Mockito.when(respGet.getOutputStream()).thenReturn(outputGet);
         metricsServlet.doGet(reqGet, respGet);
 
-        final String contentGet = stringWriterGet.toString();
-
         final HttpServletRequest reqPost = Mockito.mock(HttpServletRequest.class);
         final HttpServletResponse respPost = Mockito.mock(HttpServletResponse.class);
-        final StringWriter stringWriterPost = new StringWriter();
-        final PrintWriter writerPost = new PrintWriter(stringWriterPost);
-        Mockito.when(respPost.getWriter()).thenReturn(writerPost);
+        final BytesOutputStream outputPost = new BytesOutputStream();
+        Mockito.when(respPost.getOutputStream()).thenReturn(outputPost);
         metricsServlet.doPost(reqPost, respPost);
 
-        final String contentPost = stringWriterPost.toString();
+        Assert.assertEquals(outputGet.toString(), outputPost.toString());
+    }
+
+    @Test
+    public void test_exposition_is_gzipped_when_accepted() throws IOException {
+        Gauge.build("a", "a help").labelNames("l").register(MonitorMetrics.INSTANCE.collectorRegistry)
+                .labels("\u00e9\u20ac\ud83d\ude00").set(1);
+        final HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
+        final HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
+        final BytesOutputStream output = new BytesOutputStream();
+        Mockito.when(req.getHeader("Accept-Encoding")).thenReturn("deflate, gzip;q=0.8");
+        Mockito.when(resp.getOutputStream()).thenReturn(output);
+
+        metricsServlet.doGet(req, resp);
+
+        Mockito.verify(resp).setHeader("Content-Encoding", "gzip");
+        final GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(output.bytes.toByteArray()));
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[1024];
+        for (int n; (n = gunzip.read(chunk)) != -1; ) {
+            body.write(chunk, 0, n);
+        }
+        Assert.assertThat(new String(body.toByteArray(), StandardCharsets.UTF_8),
+                CoreMatchers.containsString("a{l=\"\u00e9\u20ac\ud83d\ude00\",} 1.0"));
+        Assert.assertTrue(output.closed);
+    }
+
+    @Test
+    public void test_gzip_negotiation() {
+        Assert.assertTrue(MetricsServlet.acceptsGzip("gzip"));
+        Assert.assertTrue(MetricsServlet.acceptsGzip("br, GZIP ; q=0.5"));
+        Assert.assertFalse(MetricsServlet.acceptsGzip(null));
+        Assert.assertFalse(MetricsServlet.acceptsGzip("identity, deflate"));
+        Assert.assertFalse(MetricsServlet.acceptsGzip("gzip;q=0"));
+        Assert.assertFalse(MetricsServlet.acceptsGzip("gzip;q=0.000"));
+    }
+
+    @Test
+    public void test_open_metrics_is_served_when_preferred() throws IOException {
+        Counter.build("requests", "a help").labelNames("l").register(MonitorMetrics.INSTANCE.collectorRegistry)
+                .labels("x").inc();
+        Histogram.build("latency", "a help").buckets(1).register(MonitorMetrics.INSTANCE.collectorRegistry);
+        final HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
+        final HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
+        final BytesOutputStream output = new BytesOutputStream();
+        Mockito.when(req.getHeader("Accept")).thenReturn(
+                "application/openmetrics-text; version=0.0.1,text/plain;version=0.0.4;q=0.5,*/*;q=0.1");
+        Mockito.when(resp.getOutputStream()).thenReturn(output);
+
+        metricsServlet.doGet(req, resp);
+        final String body = output.toString();
+
+        Mockito.verify(resp).setContentType(ExpositionEncoder.OPEN_METRICS_CONTENT_TYPE);
+        Assert.assertThat(body, CoreMatchers.containsString("# TYPE requests counter\n"));
+        Assert.assertThat(body, CoreMatchers.containsString("requests_total{l=\"x\"} 1.0\n"));
+        Assert.assertThat(body, CoreMatchers.containsString("latency_bucket{le=\"+Inf\"} 0.0\n"));
+        Assert.assertThat(body, CoreMatchers.not(CoreMatchers.containsString("_created")));
+        Assert.assertTrue(body.endsWith("# EOF\n"));
+    }
+
+    @Test
+    public void test_format_negotiation() {
+        Assert.assertTrue(MetricsServlet.prefersOpenMetrics("application/openmetrics-text;version=1.0.0"));
+        Assert.assertTrue(MetricsServlet.prefersOpenMetrics(
+                "application/openmetrics-text;version=1.0.0;q=0.5,text/plain;version=0.0.4;q=0.3,*/*;q=0.2"));
+        Assert.assertFalse(MetricsServlet.prefersOpenMetrics(null));
+        Assert.assertFalse(MetricsServlet.prefersOpenMetrics("text/plain;version=0.0.4"));
+        Assert.assertFalse(MetricsServlet.prefersOpenMetrics("text/plain,application/openmetrics-text;q=0.9"));
+        Assert.assertFalse(MetricsServlet.prefersOpenMetrics("application/openmetrics-text;q=0"));
+    }
+
+    @Test
+    public void test_shared_render_is_reused_within_the_ttl() throws IOException, ServletException {
+        final MetricsServlet cachingServlet = new MetricsServlet();
+        cachingServlet.init(config("cache-ttl", "60000"));
+        Gauge.build("a", "a help").register(MonitorMetrics.INSTANCE.collectorRegistry);
+
+        final String first = scrape(cachingServlet);
+        Gauge.build("b", "a help").register(MonitorMetrics.INSTANCE.collectorRegistry);
+        final String second = scrape(cachingServlet);
+
+        Assert.assertThat(first, CoreMatchers.containsString("a 0.0"));
+        Assert.assertEquals(first, second);
+    }
+
+    @Test
+    public void test_shared_render_is_refreshed_after_the_ttl() throws IOException, ServletException {
+        final MetricsServlet cachingServlet = new MetricsServlet();
+        cachingServlet.init(config("cache-ttl", "0"));
+        Gauge.build("a", "a help").register(MonitorMetrics.INSTANCE.collectorRegistry);
+
+        scrape(cachingServlet);
+        Gauge.build("b", "a help").register(MonitorMetrics.INSTANCE.collectorRegistry);
+
+        Assert.assertThat(scrape(cachingServlet), CoreMatchers.containsString("b 0.0"));
+    }
+
+    @Test
+    public void test_scrapes_beyond_the_limit_are_rejected() throws IOException, ServletException {
+        final MetricsServlet limitedServlet = new MetricsServlet();
+        limitedServlet.init(config("max-concurrent-scrapes", "1"));
+        final HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
+        final HttpServletResponse blockedResp = Mockito.mock(HttpServletResponse.class);
+        final HttpServletResponse rejectedResp = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(blockedResp.getOutputStream()).thenAnswer(invocation -> {
+            // a second scrape arrives while the first one is still writing
+            limitedServlet.doGet(req, rejectedResp);
+            return new BytesOutputStream();
+        });
+
+        limitedServlet.doGet(req, blockedResp);
+
+        Mockito.verify(rejectedResp).sendError(Mockito.eq(HttpServletResponse.SC_SERVICE_UNAVAILABLE), Mockito.anyString());
+        Mockito.verify(blockedResp, Mockito.never()).sendError(Mockito.anyInt(), Mockito.anyString());
+    }
+
+    private static ServletConfig config(String name, String value) {
+        final ServletConfig config = Mockito.mock(ServletConfig.class);
+        Mockito.when(config.getInitParameter(name)).thenReturn(value);
+        return config;
+    }
 
-        Assert.assertEquals(contentGet, contentPost);
+    private static String scrape(MetricsServlet servlet) throws IOException {
+        final HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
+        final HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
+        final BytesOutputStream output = new BytesOutputStream();
+        Mockito.when(resp.getOutputStream()).thenReturn(output);
+        servlet.doGet(req, resp);
+        return output.toString();
+    }
+
+    private static class BytesOutputStream extends ServletOutputStream {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        boolean closed;
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+
+        @Override
+        public void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
     }
 }
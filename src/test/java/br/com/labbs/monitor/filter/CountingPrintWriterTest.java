@@ -0,0 +1,92 @@
+package br.com.labbs.monitor.filter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+
+public class CountingPrintWriterTest {
+
+    private static final String TEXT = "plain ascii, açúcar, € and 😀 emoji";
+
+    @Test
+    public void test_counts_the_bytes_of_the_response_encoding() {
+        for (String encoding : new String[]{"UTF-8", "ISO-8859-1", "UTF-16", "Shift_JIS"}) {
+            assertCount(encoding);
+        }
+    }
+
+    @Test
+    public void test_counts_only_the_written_ranges() {
+        StringWriter out = new StringWriter();
+        CountingPrintWriter writer = new CountingPrintWriter(new PrintWriter(out), "UTF-8");
+
+        writer.write(TEXT, 6, 10);
+        writer.write(TEXT.toCharArray(), 13, 7);
+        writer.append(TEXT, 0, 5);
+        writer.flush();
+
+        Assert.assertEquals(out.toString().getBytes(Charset.forName("UTF-8")).length, writer.getCount());
+    }
+
+    @Test
+    public void test_counts_surrogate_pairs_split_between_writes() {
+        StringWriter out = new StringWriter();
+        CountingPrintWriter writer = new CountingPrintWriter(new PrintWriter(out), "UTF-8");
+        String emoji = "😀";
+
+        writer.write(emoji.charAt(0));
+        writer.write(emoji.charAt(1));
+        writer.print('\uD83D');
+        writer.print('x');
+
+        // the pair, then the replacement of the unpaired high surrogate and x
+        Assert.assertEquals(4 + 1 + 1, writer.getCount());
+    }
+
+    @Test
+    public void test_counts_primitives() {
+        StringWriter out = new StringWriter();
+        CountingPrintWriter writer = new CountingPrintWriter(new PrintWriter(out), "UTF-8");
+
+        writer.print(0);
+        writer.print(-7);
+        writer.print(Integer.MIN_VALUE);
+        writer.print(Long.MAX_VALUE);
+        writer.print(Long.MIN_VALUE);
+        writer.print(1000000000000000000L);
+        writer.print(true);
+        writer.print(false);
+        writer.print(0.25);
+        writer.print(0.0);
+        writer.print(-0.0);
+        writer.print(-9999999.0);
+        writer.print(1e7);
+        writer.print(Double.NaN);
+        writer.print(Double.NEGATIVE_INFINITY);
+        writer.print(3f);
+        writer.print(-0.5f);
+        writer.println(Float.POSITIVE_INFINITY);
+        writer.println(-12.0);
+        writer.println(42);
+        writer.printf("%s=%d", "é", 12);
+        writer.flush();
+
+        Assert.assertEquals(out.toString().getBytes(Charset.forName("UTF-8")).length, writer.getCount());
+    }
+
+    private static void assertCount(String encoding) {
+        StringWriter out = new StringWriter();
+        CountingPrintWriter writer = new CountingPrintWriter(new PrintWriter(out), encoding);
+
+        writer.write(TEXT);
+        writer.println(TEXT.toCharArray());
+        writer.print(123456L);
+        writer.append('ç');
+        writer.flush();
+
+        Assert.assertEquals(encoding, out.toString().getBytes(Charset.forName(encoding)).length, writer.getCount());
+    }
+}
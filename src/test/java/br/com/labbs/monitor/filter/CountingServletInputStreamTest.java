@@ -0,0 +1,60 @@
+package br.com.labbs.monitor.filter;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class CountingServletInputStreamTest {
+
+    @Test
+    public void test_bulk_reads_are_delegated_in_one_call() throws IOException {
+        ServletInputStream delegate = Mockito.mock(ServletInputStream.class);
+        byte[] bytes = new byte[100];
+        Mockito.when(delegate.read(bytes, 10, 50)).thenReturn(50);
+        Mockito.when(delegate.read(bytes, 0, 100)).thenReturn(-1);
+        Mockito.when(delegate.readLine(bytes, 0, 100)).thenReturn(20);
+        Mockito.when(delegate.read()).thenReturn((int) 'x');
+        CountingServletInputStream input = new CountingServletInputStream(delegate);
+
+        Assert.assertEquals(50, input.read(bytes, 10, 50));
+        Assert.assertEquals(-1, input.read(bytes));
+        Assert.assertEquals(20, input.readLine(bytes, 0, 100));
+        Assert.assertEquals('x', input.read());
+
+        Mockito.verify(delegate).read(bytes, 10, 50);
+        Mockito.verify(delegate).read(bytes, 0, 100);
+        Mockito.verify(delegate).readLine(bytes, 0, 100);
+        Mockito.verify(delegate).read();
+        Mockito.verifyNoMoreInteractions(delegate);
+        Assert.assertEquals(71, input.getByteCount());
+    }
+
+    @Test
+    public void test_byte_buffer_and_read_all_reads_are_counted() throws IOException {
+        ServletInputStream delegate = Mockito.mock(ServletInputStream.class);
+        Mockito.when(delegate.read(Mockito.any(ByteBuffer.class))).thenReturn(30);
+        Mockito.when(delegate.readAllBytes()).thenReturn(new byte[12]);
+        CountingServletInputStream input = new CountingServletInputStream(delegate);
+
+        input.read(ByteBuffer.allocate(64));
+        input.readAllBytes();
+
+        Assert.assertEquals(42, input.getByteCount());
+    }
+
+    @Test
+    public void test_read_listener_is_registered_on_the_container_stream() {
+        ServletInputStream delegate = Mockito.mock(ServletInputStream.class);
+        ReadListener listener = Mockito.mock(ReadListener.class);
+        CountingServletInputStream input = new CountingServletInputStream(delegate);
+
+        input.setReadListener(listener);
+
+        Mockito.verify(delegate).setReadListener(listener);
+    }
+}
@@ -0,0 +1,47 @@
+package br.com.labbs.monitor.filter;
+
+import jakarta.servlet.ServletOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class CountingServletOutputStreamTest {
+
+    @Test
+    public void test_bulk_writes_are_delegated_in_one_call() throws IOException {
+        ServletOutputStream delegate = Mockito.mock(ServletOutputStream.class);
+        CountingServletOutputStream output = new CountingServletOutputStream(delegate);
+        byte[] bytes = new byte[100];
+
+        output.write(bytes, 10, 50);
+        output.write(bytes);
+        output.write('x');
+
+        Mockito.verify(delegate).write(bytes, 10, 50);
+        Mockito.verify(delegate).write(bytes, 0, 100);
+        Mockito.verify(delegate).write('x');
+        Mockito.verifyNoMoreInteractions(delegate);
+        Assert.assertEquals(151, output.getByteCount());
+    }
+
+    @Test
+    public void test_byte_buffer_writes_count_the_consumed_bytes() throws IOException {
+        ServletOutputStream delegate = Mockito.mock(ServletOutputStream.class);
+        Mockito.doAnswer(invocation -> {
+            // a non-blocking write consuming only part of the buffer
+            ByteBuffer buffer = invocation.getArgument(0);
+            buffer.position(buffer.position() + 30);
+            return null;
+        }).when(delegate).write(Mockito.any(ByteBuffer.class));
+        CountingServletOutputStream output = new CountingServletOutputStream(delegate);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+
+        output.write(buffer);
+
+        Mockito.verify(delegate).write(buffer);
+        Assert.assertEquals(30, output.getByteCount());
+    }
+}
@@ -0,0 +1,41 @@
+package br.com.labbs.monitor.filter;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+
+public class CountingServletResponseTest {
+
+    @Test
+    public void test_declared_length_header_is_parsed() {
+        HttpServletResponse raw = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(raw.getHeader("Content-Length")).thenReturn(" 5000000000 ");
+
+        Assert.assertEquals(5000000000L, CountingServletResponse.getDeclaredLength(raw));
+    }
+
+    @Test
+    public void test_missing_or_invalid_declared_length_is_unknown() {
+        HttpServletResponse raw = Mockito.mock(HttpServletResponse.class);
+        Assert.assertEquals(-1, CountingServletResponse.getDeclaredLength(raw));
+
+        Mockito.when(raw.getHeader("Content-Length")).thenReturn("chunked");
+        Assert.assertEquals(-1, CountingServletResponse.getDeclaredLength(raw));
+    }
+
+    @Test
+    public void test_bytes_are_counted_by_default() throws IOException {
+        HttpServletResponse raw = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(raw.getOutputStream()).thenReturn(Mockito.mock(ServletOutputStream.class));
+        CountingServletResponse response = new CountingServletResponse(raw);
+
+        response.setContentLength(100);
+        response.getOutputStream().write(new byte[10]);
+
+        Assert.assertEquals(10, response.getByteCount());
+    }
+}
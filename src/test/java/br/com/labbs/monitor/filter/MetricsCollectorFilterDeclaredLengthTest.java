@@ -0,0 +1,100 @@
+package br.com.labbs.monitor.filter;
+
+import br.com.labbs.monitor.MonitorMetrics;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests the filter taking the response size from the declared length while recording the request size, over the
+ * {@link MonitorMetrics} instance, which is initialized once for the class.
+ */
+public class MetricsCollectorFilterDeclaredLengthTest {
+
+    private static final String[] REQUEST_LABELS = {"type", "status", "method", "addr", "isError", "errorMessage"};
+
+    private static final MetricsCollectorFilter filter = new MetricsCollectorFilter();
+
+    @BeforeClass
+    public static void init() {
+        FilterConfig config = Mockito.mock(FilterConfig.class);
+        Mockito.when(config.getInitParameter("buckets")).thenReturn("0.1,1");
+        Mockito.when(config.getInitParameter("export-jvm-metrics")).thenReturn("false");
+        Mockito.when(config.getInitParameter("size-mode")).thenReturn("content-length");
+        filter.init(config);
+    }
+
+    @Test
+    public void test_chain_gets_the_container_response() throws IOException, ServletException {
+        HttpServletRequest request = request("/download");
+        HttpServletResponse response = response();
+        FilterChain chain = Mockito.mock(FilterChain.class);
+
+        filter.doFilter(request, response, chain);
+
+        ArgumentCaptor<ServletRequest> chainRequest = ArgumentCaptor.forClass(ServletRequest.class);
+        Mockito.verify(chain).doFilter(chainRequest.capture(), Mockito.same(response));
+        Assert.assertTrue(chainRequest.getValue() instanceof MonitoredServletRequest);
+        Assert.assertEquals(0, value("request_size_bytes", "/download"), 0);
+    }
+
+    @Test
+    public void test_length_declared_with_set_content_length_long_is_recorded() throws IOException, ServletException {
+        HttpServletRequest request = request("/large");
+        HttpServletResponse response = response();
+        FilterChain chain = new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                response.setContentLengthLong(5000000000L);
+            }
+        };
+
+        filter.doFilter(request, response, chain);
+
+        Assert.assertEquals(5000000000L, value("response_size_bytes", "/large"), 0);
+    }
+
+    private static HttpServletRequest request(String path) {
+        HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getRequestURI()).thenReturn(path);
+        Mockito.when(request.getMethod()).thenReturn("GET");
+        Mockito.when(request.getScheme()).thenReturn("http");
+        Mockito.when(request.getContextPath()).thenReturn("");
+        Mockito.when(request.getContentLengthLong()).thenReturn(-1L);
+        Mockito.when(request.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        return request;
+    }
+
+    /**
+     * A response reporting the length declared with {@code setContentLengthLong} through its header, as containers do.
+     */
+    private static HttpServletResponse response() {
+        HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+        final AtomicReference<String> contentLength = new AtomicReference<>();
+        Mockito.when(response.getStatus()).thenReturn(200);
+        Mockito.doAnswer(invocation -> {
+            contentLength.set(String.valueOf((long) invocation.getArgument(0)));
+            return null;
+        }).when(response).setContentLengthLong(Mockito.anyLong());
+        Mockito.when(response.getHeader("Content-Length")).thenAnswer(invocation -> contentLength.get());
+        return response;
+    }
+
+    private static Double value(String name, String addr) {
+        return MonitorMetrics.INSTANCE.collectorRegistry.getSampleValue(name, REQUEST_LABELS,
+                new String[]{"http", "200", "GET", addr, "false", ""});
+    }
+}
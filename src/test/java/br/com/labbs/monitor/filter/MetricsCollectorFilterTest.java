@@ -0,0 +1,156 @@
+package br.com.labbs.monitor.filter;
+
+import br.com.labbs.monitor.MonitorMetrics;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+
+/**
+ * Tests the filter over the {@link MonitorMetrics} instance, which is initialized once for the class.
+ */
+public class MetricsCollectorFilterTest {
+
+    private static final String[] REQUEST_LABELS = {"type", "status", "method", "addr", "isError", "errorMessage"};
+    private static final FilterChain CHAIN = new FilterChain() {
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response) {
+        }
+    };
+
+    private static final MetricsCollectorFilter filter = new MetricsCollectorFilter();
+
+    @BeforeClass
+    public static void init() {
+        FilterConfig config = Mockito.mock(FilterConfig.class);
+        Mockito.when(config.getInitParameter("buckets")).thenReturn("0.1,1");
+        Mockito.when(config.getInitParameter("export-jvm-metrics")).thenReturn("false");
+        filter.init(config);
+    }
+
+    @Test
+    public void test_async_request_is_collected_once_on_completion() throws IOException, ServletException {
+        HttpServletRequest request = request("/async/complete", DispatcherType.REQUEST);
+        startAsync(request);
+
+        filter.doFilter(request, response(200), CHAIN);
+        AsyncListener listener = listener(request);
+        Assert.assertNull(count("/async/complete", "200", "false", ""));
+
+        listener.onComplete(Mockito.mock(AsyncEvent.class));
+        Assert.assertEquals(1, count("/async/complete", "200", "false", ""), 0);
+    }
+
+    @Test
+    public void test_async_timeout_is_recorded_as_an_error() throws IOException, ServletException {
+        HttpServletRequest request = request("/async/timeout", DispatcherType.REQUEST);
+        startAsync(request);
+
+        filter.doFilter(request, response(200), CHAIN);
+        AsyncListener listener = listener(request);
+        listener.onTimeout(Mockito.mock(AsyncEvent.class));
+        Assert.assertNull(count("/async/timeout", "200", "true", "async timeout"));
+
+        listener.onComplete(Mockito.mock(AsyncEvent.class));
+        Assert.assertEquals(1, count("/async/timeout", "200", "true", "async timeout"), 0);
+    }
+
+    @Test
+    public void test_async_dispatch_is_not_collected_again() throws IOException, ServletException {
+        HttpServletRequest request = request("/async/dispatch", DispatcherType.REQUEST);
+        startAsync(request);
+        HttpServletResponse response = response(200);
+        filter.doFilter(request, response, CHAIN);
+        AsyncListener listener = listener(request);
+
+        HttpServletRequest dispatched = request("/async/dispatch", DispatcherType.ASYNC);
+        FilterChain chain = Mockito.mock(FilterChain.class);
+        filter.doFilter(dispatched, response, chain);
+        // the dispatch goes through unwrapped, without listener nor collect
+        Mockito.verify(chain).doFilter(dispatched, response);
+        Mockito.verify(dispatched, Mockito.never()).getAsyncContext();
+        Assert.assertNull(count("/async/dispatch", "200", "false", ""));
+        Assert.assertEquals(1, inFlight("/async/dispatch"), 0);
+
+        listener.onComplete(Mockito.mock(AsyncEvent.class));
+        Assert.assertEquals(1, count("/async/dispatch", "200", "false", ""), 0);
+    }
+
+    @Test
+    public void test_async_request_stays_in_flight_until_completion() throws IOException, ServletException {
+        HttpServletRequest request = request("/async/in-flight", DispatcherType.REQUEST);
+        startAsync(request);
+
+        filter.doFilter(request, response(200), CHAIN);
+        Assert.assertEquals(1, inFlight("/async/in-flight"), 0);
+
+        listener(request).onComplete(Mockito.mock(AsyncEvent.class));
+        Assert.assertEquals(0, inFlight("/async/in-flight"), 0);
+    }
+
+    @Test
+    public void test_sync_request_is_collected_right_away() throws IOException, ServletException {
+        HttpServletRequest request = request("/sync", DispatcherType.REQUEST);
+
+        filter.doFilter(request, response(500), CHAIN);
+
+        Assert.assertEquals(1, count("/sync", "500", "true", ""), 0);
+        Assert.assertEquals(0, inFlight("/sync"), 0);
+    }
+
+    private static HttpServletRequest request(String path, DispatcherType dispatcherType) {
+        HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getRequestURI()).thenReturn(path);
+        Mockito.when(request.getMethod()).thenReturn("GET");
+        Mockito.when(request.getScheme()).thenReturn("http");
+        Mockito.when(request.getContextPath()).thenReturn("");
+        Mockito.when(request.getContentLengthLong()).thenReturn(-1L);
+        Mockito.when(request.getDispatcherType()).thenReturn(dispatcherType);
+        return request;
+    }
+
+    private static HttpServletResponse response(int status) {
+        HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(response.getStatus()).thenReturn(status);
+        return response;
+    }
+
+    /**
+     * Puts the request in asynchronous mode, as if the application had started its asynchronous cycle.
+     */
+    private static void startAsync(HttpServletRequest request) {
+        AsyncContext asyncContext = Mockito.mock(AsyncContext.class);
+        Mockito.when(request.isAsyncStarted()).thenReturn(true);
+        Mockito.when(request.getAsyncContext()).thenReturn(asyncContext);
+    }
+
+    private static AsyncListener listener(HttpServletRequest request) {
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        Mockito.verify(request.getAsyncContext()).addListener(listener.capture());
+        return listener.getValue();
+    }
+
+    private static Double count(String addr, String status, String isError, String errorMessage) {
+        return MonitorMetrics.INSTANCE.collectorRegistry.getSampleValue("request_seconds_count", REQUEST_LABELS,
+                new String[]{"http", status, "GET", addr, isError, errorMessage});
+    }
+
+    private static Double inFlight(String addr) {
+        return MonitorMetrics.INSTANCE.collectorRegistry.getSampleValue("requests_in_flight",
+                new String[]{"addr", "method"}, new String[]{addr, "GET"});
+    }
+}
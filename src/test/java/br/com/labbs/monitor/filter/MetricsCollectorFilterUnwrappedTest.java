@@ -0,0 +1,107 @@
+package br.com.labbs.monitor.filter;
+
+import br.com.labbs.monitor.MonitorMetrics;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+
+/**
+ * Tests the filter taking the response size from the declared length without recording the request size, over the
+ * {@link MonitorMetrics} instance, which is initialized once for the class.
+ */
+public class MetricsCollectorFilterUnwrappedTest {
+
+    private static final String[] REQUEST_LABELS = {"type", "status", "method", "addr", "isError", "errorMessage"};
+
+    private static final MetricsCollectorFilter filter = new MetricsCollectorFilter();
+
+    @BeforeClass
+    public static void init() {
+        FilterConfig config = Mockito.mock(FilterConfig.class);
+        Mockito.when(config.getInitParameter("buckets")).thenReturn("0.1,1");
+        Mockito.when(config.getInitParameter("export-jvm-metrics")).thenReturn("false");
+        Mockito.when(config.getInitParameter("size-mode")).thenReturn("content-length");
+        Mockito.when(config.getInitParameter("request-size")).thenReturn("false");
+        filter.init(config);
+    }
+
+    @Test
+    public void test_chain_gets_the_container_request_and_response() throws IOException, ServletException {
+        HttpServletRequest request = request("/download");
+        HttpServletResponse response = response("1048576");
+        FilterChain chain = Mockito.mock(FilterChain.class);
+
+        filter.doFilter(request, response, chain);
+
+        Mockito.verify(chain).doFilter(request, response);
+        Assert.assertEquals(1, value("request_seconds_count", "/download"), 0);
+        Assert.assertEquals(1048576, value("response_size_bytes", "/download"), 0);
+        Assert.assertNull(value("request_size_bytes", "/download"));
+    }
+
+    @Test
+    public void test_undeclared_length_is_recorded_as_zero() throws IOException, ServletException {
+        HttpServletRequest request = request("/chunked");
+        HttpServletResponse response = response(null);
+        FilterChain chain = Mockito.mock(FilterChain.class);
+
+        filter.doFilter(request, response, chain);
+
+        Mockito.verify(chain).doFilter(request, response);
+        Assert.assertEquals(0, value("response_size_bytes", "/chunked"), 0);
+    }
+
+    @Test
+    public void test_async_request_is_collected_on_completion() throws IOException, ServletException {
+        HttpServletRequest request = request("/async/download");
+        AsyncContext asyncContext = Mockito.mock(AsyncContext.class);
+        Mockito.when(request.isAsyncStarted()).thenReturn(true);
+        Mockito.when(request.getAsyncContext()).thenReturn(asyncContext);
+        HttpServletResponse response = response("42");
+        FilterChain chain = Mockito.mock(FilterChain.class);
+
+        filter.doFilter(request, response, chain);
+        Mockito.verify(chain).doFilter(request, response);
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        Mockito.verify(asyncContext).addListener(listener.capture());
+        Assert.assertNull(value("response_size_bytes", "/async/download"));
+
+        listener.getValue().onComplete(Mockito.mock(AsyncEvent.class));
+        Assert.assertEquals(42, value("response_size_bytes", "/async/download"), 0);
+    }
+
+    private static HttpServletRequest request(String path) {
+        HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getRequestURI()).thenReturn(path);
+        Mockito.when(request.getMethod()).thenReturn("GET");
+        Mockito.when(request.getScheme()).thenReturn("http");
+        Mockito.when(request.getContextPath()).thenReturn("");
+        Mockito.when(request.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+        return request;
+    }
+
+    private static HttpServletResponse response(String contentLength) {
+        HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(response.getStatus()).thenReturn(200);
+        Mockito.when(response.getHeader("Content-Length")).thenReturn(contentLength);
+        return response;
+    }
+
+    private static Double value(String name, String addr) {
+        return MonitorMetrics.INSTANCE.collectorRegistry.getSampleValue(name, REQUEST_LABELS,
+                new String[]{"http", "200", "GET", addr, "false", ""});
+    }
+}
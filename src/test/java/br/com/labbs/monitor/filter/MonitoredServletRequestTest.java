@@ -0,0 +1,77 @@
+package br.com.labbs.monitor.filter;
+
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+public class MonitoredServletRequestTest {
+
+    @Test
+    public void test_declared_length_is_used_when_the_body_is_not_read() throws IOException {
+        HttpServletRequest raw = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(raw.getContentLengthLong()).thenReturn(1234L);
+        Mockito.when(raw.getInputStream()).thenReturn(Mockito.mock(ServletInputStream.class));
+        MonitoredServletRequest request = new MonitoredServletRequest(raw, Mockito.mock(HttpServletResponse.class));
+
+        Assert.assertEquals(1234, request.getByteCount());
+        request.getInputStream();
+        Assert.assertEquals(1234, request.getByteCount());
+
+        Mockito.when(raw.getContentLengthLong()).thenReturn(-1L);
+        Assert.assertEquals(0, request.getByteCount());
+    }
+
+    @Test
+    public void test_reader_counts_the_encoded_bytes() throws IOException {
+        HttpServletRequest raw = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(raw.getContentLengthLong()).thenReturn(-1L);
+        Mockito.when(raw.getCharacterEncoding()).thenReturn("UTF-8");
+        Mockito.when(raw.getReader()).thenReturn(new BufferedReader(new StringReader("héllo\nwörld")));
+        MonitoredServletRequest request = new MonitoredServletRequest(raw, Mockito.mock(HttpServletResponse.class));
+
+        BufferedReader reader = request.getReader();
+        Assert.assertEquals("héllo", reader.readLine());
+        Assert.assertEquals(7, request.getByteCount());
+        char[] chars = new char[16];
+        Assert.assertEquals(5, reader.read(chars, 0, chars.length));
+        Assert.assertEquals(-1, reader.read(chars, 0, chars.length));
+        Assert.assertEquals(13, request.getByteCount());
+    }
+
+    @Test
+    public void test_reader_read_to_the_end_takes_the_declared_length() throws IOException {
+        HttpServletRequest raw = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(raw.getContentLengthLong()).thenReturn(12L);
+        Mockito.when(raw.getReader()).thenReturn(new BufferedReader(new StringReader("line\r\nline\r\n")));
+        MonitoredServletRequest request = new MonitoredServletRequest(raw, Mockito.mock(HttpServletResponse.class));
+
+        BufferedReader reader = request.getReader();
+        while (reader.readLine() != null) {
+            // the CRLF terminators are counted as LF until the end is reached
+        }
+        Assert.assertEquals(12, request.getByteCount());
+    }
+
+    @Test
+    public void test_async_cycle_started_with_the_container_objects_keeps_the_wrappers() {
+        HttpServletRequest raw = Mockito.mock(HttpServletRequest.class);
+        HttpServletResponse rawResponse = Mockito.mock(HttpServletResponse.class);
+        CountingServletResponse response = new CountingServletResponse(rawResponse);
+        MonitoredServletRequest request = new MonitoredServletRequest(raw, response);
+
+        request.startAsync(raw, rawResponse);
+        Mockito.verify(raw).startAsync(request, response);
+
+        HttpServletResponseWrapper applicationResponse = new HttpServletResponseWrapper(response);
+        request.startAsync(request, applicationResponse);
+        Mockito.verify(raw).startAsync(request, applicationResponse);
+    }
+}
@@ -0,0 +1,42 @@
+package br.com.labbs.monitor.filter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class PathExclusionMatcherTest {
+
+    private final PathExclusionMatcher matcher = new PathExclusionMatcher(Arrays.asList(
+            "/metrics", "/static/", "=/health", "*.js", "*.png"));
+
+    @Test
+    public void test_prefix_rules_exclude_paths_starting_with_them() {
+        Assert.assertTrue(matcher.isExcluded("/metrics", ""));
+        Assert.assertTrue(matcher.isExcluded("/metrics/jvm", ""));
+        Assert.assertTrue(matcher.isExcluded("/static/css/app.css", ""));
+        Assert.assertFalse(matcher.isExcluded("/static", ""));
+        Assert.assertFalse(matcher.isExcluded("/api/metrics", ""));
+    }
+
+    @Test
+    public void test_exact_rules_exclude_only_the_same_path() {
+        Assert.assertTrue(matcher.isExcluded("/health", ""));
+        Assert.assertFalse(matcher.isExcluded("/health/db", ""));
+        Assert.assertFalse(matcher.isExcluded("/heal", ""));
+    }
+
+    @Test
+    public void test_suffix_rules_exclude_paths_ending_with_them() {
+        Assert.assertTrue(matcher.isExcluded("/app/main.js", ""));
+        Assert.assertTrue(matcher.isExcluded("/img/logo.png", "/app"));
+        Assert.assertFalse(matcher.isExcluded("/app/main.json", ""));
+    }
+
+    @Test
+    public void test_prefix_and_exact_rules_are_relative_to_the_context_path() {
+        Assert.assertTrue(matcher.isExcluded("/shop/metrics", "/shop"));
+        Assert.assertTrue(matcher.isExcluded("/shop/health", "/shop"));
+        Assert.assertFalse(matcher.isExcluded("/shop/health", ""));
+    }
+}
@@ -0,0 +1,89 @@
+package br.com.labbs.monitor.filter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PathTemplateMatcherTest {
+
+    private final PathTemplateMatcher matcher = new PathTemplateMatcher(Arrays.asList(
+            "/users/{id}/orders/{id}",
+            "/users/{id}",
+            "/users/me",
+            "/users/me/settings",
+            "/"), false);
+
+    @Test
+    public void test_parameter_segments_match_any_segment() {
+        Assert.assertEquals("/users/{id}/orders/{id}", matcher.normalize("/users/123/orders/456"));
+        Assert.assertEquals("/users/{id}", matcher.normalize("/users/abc"));
+        Assert.assertEquals("/users/{id}", matcher.normalize("/users/abc/"));
+    }
+
+    @Test
+    public void test_literal_segments_take_precedence() {
+        Assert.assertEquals("/users/me", matcher.normalize("/users/me"));
+        Assert.assertEquals("/users/me/settings", matcher.normalize("/users/me/settings"));
+        Assert.assertEquals("/users/{id}/orders/{id}", matcher.normalize("/users/me/orders/1"));
+    }
+
+    @Test
+    public void test_unmatched_path_is_returned_unchanged() {
+        String path = "/users/123/payments";
+        Assert.assertSame(path, matcher.normalize(path));
+        Assert.assertEquals("/", matcher.normalize("/"));
+        Assert.assertEquals("/users", matcher.normalize("/users"));
+    }
+
+    @Test
+    public void test_identifiers_are_detected_when_enabled() {
+        PathTemplateMatcher detecting = new PathTemplateMatcher(Collections.<String>emptyList(), true);
+        Assert.assertEquals("/users/{id}/orders/{id}", detecting.normalize("/users/123/orders/456"));
+        Assert.assertEquals("/files/{uuid}", detecting.normalize("/files/123e4567-e89b-12d3-a456-426614174000"));
+        Assert.assertEquals("/blobs/{hex}/raw", detecting.normalize("/blobs/deadbeefcafebabe0123/raw"));
+        Assert.assertEquals("/v1/users/", detecting.normalize("/v1/users/"));
+        Assert.assertEquals("/{id}/", detecting.normalize("/42/"));
+    }
+
+    @Test
+    public void test_templates_win_over_identifier_detection() {
+        PathTemplateMatcher detecting = new PathTemplateMatcher(Collections.singletonList("/items/{sku}"), true);
+        Assert.assertEquals("/items/{sku}", detecting.normalize("/items/42"));
+        Assert.assertEquals("/carts/{id}", detecting.normalize("/carts/42"));
+    }
+
+    @Test(timeout = 5000)
+    public void test_deep_ambiguous_templates_fall_back_level_by_level() {
+        int depth = 24;
+        List<String> templates = new ArrayList<String>();
+        templates.add(path(depth, -1, "a", "") + "/end");
+        templates.add(path(depth, -1, "{p}", "") + "/end");
+        templates.add(path(depth, -1, "a", ""));
+        for (int i = 0; i < depth; i++) {
+            templates.add(path(depth, i, "a", "{p}") + "/tail");
+        }
+        PathTemplateMatcher deep = new PathTemplateMatcher(templates, false);
+
+        Assert.assertEquals(path(depth, -1, "a", ""), deep.normalize(path(depth, -1, "a", "")));
+        Assert.assertEquals(path(depth, -1, "a", "") + "/end", deep.normalize(path(depth, -1, "a", "") + "/end"));
+        Assert.assertEquals(path(depth, -1, "{p}", "") + "/end", deep.normalize(path(depth, 3, "a", "b") + "/end"));
+        // the literal segments win level by level, so the deepest parameter does
+        Assert.assertEquals(path(depth, depth - 1, "a", "{p}") + "/tail",
+                deep.normalize(path(depth, -1, "a", "") + "/tail"));
+        Assert.assertEquals(path(depth, 3, "a", "{p}") + "/tail", deep.normalize(path(depth, 3, "a", "b") + "/tail"));
+        String unmatched = path(depth, 3, "a", "b").replace("/a/a/a/b/a/", "/a/a/a/b/b/") + "/tail";
+        Assert.assertSame(unmatched, deep.normalize(unmatched));
+    }
+
+    private static String path(int depth, int other, String segment, String otherSegment) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append('/').append(i == other ? otherSegment : segment);
+        }
+        return sb.toString();
+    }
+}